@@ -0,0 +1,35 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: BulkOperationException
+ *
+ * Description: Raised through {@link com.phantomartist.azure.cosmosdb.results.OnError} when a single
+ * document in a bulk operation fails. The remainder of the bulk operation carries on regardless, so
+ * one of these is reported per failed document.
+ */
+public class BulkOperationException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient Object document;
+
+    /**
+     * Constructor
+     *
+     * @param document the document (or {@link DocumentKey} for deletes) that failed
+     * @param cause the underlying error
+     */
+    public BulkOperationException( final Object document, final Throwable cause ) {
+        super( "Bulk operation failed for document: " + cause.getMessage(), cause );
+        this.document = document;
+    }
+
+    /**
+     * Get the document that failed.
+     *
+     * @return Object the document (or {@link DocumentKey} for deletes) as it was passed to the bulk operation
+     */
+    public Object getDocument() {
+        return document;
+    }
+}
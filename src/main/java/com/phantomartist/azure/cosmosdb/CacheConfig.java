@@ -0,0 +1,135 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: CacheConfig
+ *
+ * Description: Configures the client-side read-through document cache.
+ *
+ * When enabled (see {@link ClientOptions#setCache(CacheConfig)}), point reads and query results are
+ * served from memory until their time-to-live expires. Writes made through a {@link Statement} on
+ * the same client invalidate the affected entries. Writes made by other clients or processes are not
+ * seen until the entry expires, so only cache data that can tolerate that staleness.
+ */
+public class CacheConfig {
+
+    private int maxEntries = 10000;
+    private long maxBytes;
+    private long ttlMillis = TimeUnit.SECONDS.toMillis( 60 );
+    private boolean isCachingQueries = true;
+    private int maxQueryResultSize = 1000;
+    private boolean isRevalidatingExpired = true;
+
+    /**
+     * Set the maximum number of entries (documents or query results) to hold.
+     * The least recently used entry is evicted first. (Default is 10,000).
+     *
+     * @param maxEntries the max entries, must be at least 1
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setMaxEntries( final int maxEntries ) {
+        if ( maxEntries < 1 ) {
+            throw new IllegalArgumentException( "Max entries must be at least 1" );
+        }
+        this.maxEntries = maxEntries;
+        return this;
+    }
+
+    /**
+     * Set the approximate maximum heap the cache may use, estimated from the size of the cached JSON.
+     * The least recently used entry is evicted first. (Default is 0, meaning only the entry count is bounded).
+     *
+     * @param maxBytes the max bytes, or 0 for no limit
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setMaxBytes( final long maxBytes ) {
+        if ( maxBytes < 0 ) {
+            throw new IllegalArgumentException( "Max bytes cannot be negative" );
+        }
+        this.maxBytes = maxBytes;
+        return this;
+    }
+
+    /**
+     * Set how long an entry may be served from the cache. (Default is 60 seconds).
+     *
+     * @param ttl the time to live, must be positive
+     * @param unit the unit of ttl
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setTtl( final long ttl, final TimeUnit unit ) {
+        if ( ttl <= 0 ) {
+            throw new IllegalArgumentException( "TTL must be positive" );
+        }
+        this.ttlMillis = unit.toMillis( ttl );
+        return this;
+    }
+
+    /**
+     * Set whether query results are cached as well as point reads. (Default is true).
+     *
+     * @param isCachingQueries if true, query results are cached
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setCachingQueries( final boolean isCachingQueries ) {
+        this.isCachingQueries = isCachingQueries;
+        return this;
+    }
+
+    /**
+     * Set the largest query result, in documents, that will be cached. Larger results are
+     * always read from the database. (Default is 1000).
+     *
+     * @param maxQueryResultSize the max number of documents in a cached query result
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setMaxQueryResultSize( final int maxQueryResultSize ) {
+        this.maxQueryResultSize = maxQueryResultSize;
+        return this;
+    }
+
+    /**
+     * Set whether expired documents are revalidated rather than re-read. (Default is true).
+     * If set, an expired document is kept and the next read of it sends its ETag in an If-None-Match 
+     * condition. If the document has not changed, the database answers 304 Not Modified without 
+     * sending the document and the cached copy is served again for another time-to-live.
+     *
+     * @param isRevalidatingExpired if true, expired documents are revalidated
+     *
+     * @return CacheConfig this config
+     */
+    public CacheConfig setRevalidatingExpired( final boolean isRevalidatingExpired ) {
+        this.isRevalidatingExpired = isRevalidatingExpired;
+        return this;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public boolean isCachingQueries() {
+        return isCachingQueries;
+    }
+
+    public int getMaxQueryResultSize() {
+        return maxQueryResultSize;
+    }
+
+    public boolean isRevalidatingExpired() {
+        return isRevalidatingExpired;
+    }
+}
@@ -0,0 +1,92 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: CacheStats
+ *
+ * Description: Point-in-time snapshot of the client-side document cache counters
+ */
+public final class CacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final long expirations;
+    private final long invalidations;
+    private final long revalidations;
+    private final int size;
+    private final long bytes;
+
+    /**
+     * Constructor
+     *
+     * @param hits lookups served from the cache
+     * @param misses lookups that went to the database
+     * @param evictions entries removed to stay within the size bounds
+     * @param expirations entries removed because their time-to-live expired
+     * @param invalidations entries removed because of a write
+     * @param revalidations expired entries the database confirmed were unchanged
+     * @param size the number of entries currently held
+     * @param bytes the estimated heap used by the entries currently held
+     */
+    public CacheStats( final long hits, final long misses, final long evictions, final long expirations, final long invalidations, final long revalidations, final int size, final long bytes ) {
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.expirations = expirations;
+        this.invalidations = invalidations;
+        this.revalidations = revalidations;
+        this.size = size;
+        this.bytes = bytes;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getExpirations() {
+        return expirations;
+    }
+
+    public long getInvalidations() {
+        return invalidations;
+    }
+
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the proportion of lookups served from the cache
+     *
+     * @return double the hit rate between 0 and 1
+     */
+    public double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[hits=" + hits + ", misses=" + misses + ", evictions=" + evictions + ", expirations=" + expirations
+            + ", invalidations=" + invalidations + ", revalidations=" + revalidations + ", size=" + size + ", bytes=" + bytes + "]";
+    }
+}
@@ -0,0 +1,187 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: ClientOptions
+ *
+ * Description: Optional settings for a client built by {@link DBClientBuilder#getCosmosDBAsyncClient(String, String, ClientOptions)}.
+ *
+ * Unset options take the same defaults as {@link DBClientBuilder#getDefaultCosmosDBAsyncClient(String, String)}.
+ */
+public class ClientOptions {
+
+    private int maxRetryAttemptsOnThrottledRequests = 9; // These are the MS Azure defaults
+    private int maxRetryWaitTimeInSeconds = 30;
+    private boolean isClientSideThrottleRetries;
+    private CacheConfig cache;
+    private long timeoutMillis = TimeUnit.MINUTES.toMillis( 60 );
+    private MetricsListener metricsListener;
+    private int maxTrackedQueries;
+    private RateLimitConfig rateLimit;
+    private SchedulerConfig scheduler;
+
+    /**
+     * Set how many times to retry if the client detects a throttling response. (Default is 9).
+     *
+     * @param maxRetryAttemptsOnThrottledRequests the max retry attempts
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setMaxRetryAttemptsOnThrottledRequests( final int maxRetryAttemptsOnThrottledRequests ) {
+        this.maxRetryAttemptsOnThrottledRequests = maxRetryAttemptsOnThrottledRequests;
+        return this;
+    }
+
+    /**
+     * Set the max cumulative wait time allowed for all retry requests before raising an error. (Default is 30).
+     *
+     * @param maxRetryWaitTimeInSeconds the max wait time
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setMaxRetryWaitTimeInSeconds( final int maxRetryWaitTimeInSeconds ) {
+        this.maxRetryWaitTimeInSeconds = maxRetryWaitTimeInSeconds;
+        return this;
+    }
+
+    /**
+     * Retry throttled requests (HTTP 429) in this library rather than in the Azure client. The same limits apply 
+     * (see {@link #setMaxRetryAttemptsOnThrottledRequests(int)} and {@link #setMaxRetryWaitTimeInSeconds(int)}), and a 
+     * query carries on from the page it was throttled on, but the library sees every throttle as it happens. In 
+     * particular, bulk operations with adaptive concurrency (see {@link Statement#setAdaptiveConcurrency(boolean)}) 
+     * shrink their window at the first throttle, instead of only once the Azure client has spent up to 
+     * {@link #setMaxRetryWaitTimeInSeconds(int)} retrying it out of sight. Recommended for clients used for bulk 
+     * operations. Always the case with an adaptive rate limit (see {@link RateLimitConfig#setAdaptive(boolean)}). 
+     * (Default is false).
+     *
+     * @param isClientSideThrottleRetries if true, throttled requests are retried by this library
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setClientSideThrottleRetries( final boolean isClientSideThrottleRetries ) {
+        this.isClientSideThrottleRetries = isClientSideThrottleRetries;
+        return this;
+    }
+
+    /**
+     * Enable the client-side read-through document cache. (Default is no cache).
+     *
+     * @param cache the cache configuration, or null to disable caching
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setCache( final CacheConfig cache ) {
+        this.cache = cache;
+        return this;
+    }
+
+    /**
+     * Set how long a blocking call (see {@link Query#setBlocking(boolean)} and {@link Statement#setBlocking(boolean)}) 
+     * waits for its result. Individual queries and statements can override this. (Default is 60 minutes).
+     *
+     * @param timeout the timeout, must be positive
+     * @param unit the unit of timeout
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setTimeout( final long timeout, final TimeUnit unit ) {
+        if ( timeout <= 0 ) {
+            throw new IllegalArgumentException( "Timeout must be positive" );
+        }
+        this.timeoutMillis = unit.toMillis( timeout );
+        return this;
+    }
+
+    /**
+     * Register a listener for the latency, RU charge and outcome of every operation. (Default is none).
+     * To feed several listeners, register one that passes each call on to the others.
+     *
+     * @param metricsListener the listener, or null for none
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setMetricsListener( final MetricsListener metricsListener ) {
+        this.metricsListener = metricsListener;
+        return this;
+    }
+
+    /**
+     * Track RU, latency and document counts per query shape, for {@link DBClient#getTopQueries(int, QueryStats.Order)}. 
+     * Queries differing only in their values share a shape. Once the limit is reached, further shapes are counted 
+     * together. (Default is 0, not tracked).
+     *
+     * @param maxTrackedQueries the most query shapes to track individually, or 0 to not track queries
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setMaxTrackedQueries( final int maxTrackedQueries ) {
+        if ( maxTrackedQueries < 0 ) {
+            throw new IllegalArgumentException( "Max tracked queries cannot be negative" );
+        }
+        this.maxTrackedQueries = maxTrackedQueries;
+        return this;
+    }
+
+    /**
+     * Pace requests to stay within a RU/s budget, rather than relying only on retries once the database 
+     * throttles them. (Default is no pacing).
+     *
+     * @param rateLimit the rate limit configuration, or null to disable pacing
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setRateLimit( final RateLimitConfig rateLimit ) {
+        this.rateLimit = rateLimit;
+        return this;
+    }
+
+    /**
+     * Schedule operations in {@link Lane}s, each with its own limit on requests in flight, so that background 
+     * and bulk work cannot crowd out interactive requests on the same client. (Default is no scheduling).
+     *
+     * @param scheduler the scheduler configuration, or null to disable scheduling
+     *
+     * @return ClientOptions these options
+     */
+    public ClientOptions setScheduler( final SchedulerConfig scheduler ) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public int getMaxRetryAttemptsOnThrottledRequests() {
+        return maxRetryAttemptsOnThrottledRequests;
+    }
+
+    public int getMaxRetryWaitTimeInSeconds() {
+        return maxRetryWaitTimeInSeconds;
+    }
+
+    public boolean isClientSideThrottleRetries() {
+        return isClientSideThrottleRetries;
+    }
+
+    public CacheConfig getCache() {
+        return cache;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    public int getMaxTrackedQueries() {
+        return maxTrackedQueries;
+    }
+
+    public RateLimitConfig getRateLimit() {
+        return rateLimit;
+    }
+
+    public SchedulerConfig getScheduler() {
+        return scheduler;
+    }
+}
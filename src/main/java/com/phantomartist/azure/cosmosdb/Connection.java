@@ -1,5 +1,12 @@
 package com.phantomartist.azure.cosmosdb;
 
+import java.util.List;
+
+import com.phantomartist.azure.cosmosdb.results.OnComplete;
+import com.phantomartist.azure.cosmosdb.results.OnError;
+import com.phantomartist.azure.cosmosdb.results.OnPage;
+import com.phantomartist.azure.cosmosdb.results.OnResult;
+
 /**
  * Title: Connection
  *
@@ -23,11 +30,114 @@ public interface Connection {
      */
     Query generateQuery( final String query );
     
+    /**
+     * Prepare an immutable query template that can be shared between threads and executed many times.
+     * 
+     * @param query the query
+     * @param paramNames the names of the parameters the query uses, e.g. "@id"
+     * 
+     * @return PreparedQuery the template
+     * 
+     * @throws IllegalArgumentException if a parameter name does not start with '@' or is repeated
+     */
+    PreparedQuery prepareQuery( final String query, final String... paramNames );
+    
     /**
      * Generate a Statement to perform a CREATE/UPDATE/DELETE operation.
-     * (Reads are handled by {@link #generateQuery(String)})
+     * (Reads are handled by {@link #read(String, String)} and {@link #generateQuery(String)})
      * 
      * @return Statement the executable statement that can be run asynchronously or in blocking mode
      */
     Statement generateStatement();
+    
+    /**
+     * Read a single document by id and partition key, blocking until it arrives.
+     * 
+     * This is a point read that goes straight to the document rather than through the query 
+     * engine, so it is the cheapest way to fetch a document whose id is known.
+     * 
+     * @param id the id of the document
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * 
+     * @return Document the document, or null if it does not exist
+     * 
+     * @throws DBTimeoutException if the read times out
+     * @throws RuntimeException if the read fails
+     */
+    Document read( final String id, final String partitionKey );
+    
+    /**
+     * Read a single document by id and partition key asynchronously.
+     * 
+     * This is a point read that goes straight to the document rather than through the query 
+     * engine, so it is the cheapest way to fetch a document whose id is known.
+     * 
+     * @param id the id of the document
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * @param onResult what to do when the document arrives - the result is <code>null</code> if the document does not exist
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void read( final String id, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Revalidate a document the caller already holds, blocking until the answer arrives.
+     * 
+     * The document's ETag is sent in an If-None-Match condition, so if the document is unchanged 
+     * the database answers 304 Not Modified without sending it again and the same instance is returned.
+     * 
+     * @param current the version of the document the caller already has
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * 
+     * @return Document current if unchanged, the new version if changed, or null if it has been deleted
+     * 
+     * @throws DBTimeoutException if the read times out
+     * @throws RuntimeException if the read fails
+     */
+    Document readIfModified( final Document current, final String partitionKey );
+    
+    /**
+     * Revalidate a document the caller already holds asynchronously.
+     * 
+     * The document's ETag is sent in an If-None-Match condition, so if the document is unchanged 
+     * the database answers 304 Not Modified without sending it again and the same instance is returned.
+     * 
+     * @param current the version of the document the caller already has
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * @param onResult what to do when the answer arrives - current if unchanged, the new version if changed, or <code>null</code> if deleted
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void readIfModified( final Document current, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Read many documents by id and partition key, blocking until they all arrive.
+     * 
+     * Keys are grouped by partition key. Each group is fetched with either a few parallel point 
+     * reads or a single <code>IN (...)</code> query, and groups are fetched concurrently up to a fixed 
+     * limit. Documents that do not exist are omitted from the results.
+     * 
+     * @param keys the keys of the documents
+     * 
+     * @return List of the documents found, in no particular order
+     * 
+     * @throws DBTimeoutException if the reads time out
+     * @throws RuntimeException if any read fails
+     */
+    List<Document> readMany( final List<DocumentKey> keys );
+    
+    /**
+     * Read many documents by id and partition key asynchronously.
+     * 
+     * Keys are grouped by partition key. Each group is fetched with either a few parallel point 
+     * reads or a single <code>IN (...)</code> query, and groups are fetched concurrently up to a fixed 
+     * limit. Each group of documents is delivered to onPage as it arrives, in no particular order.
+     * Documents that do not exist are omitted from the results.
+     * 
+     * @param keys the keys of the documents
+     * @param onPage what to do when a group of documents arrives
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when all documents have arrived
+     */
+    void readMany( final List<DocumentKey> keys, final OnPage onPage, final OnError onError, final OnComplete onComplete );
 }
@@ -1,5 +1,7 @@
 package com.phantomartist.azure.cosmosdb;
 
+import java.util.List;
+
 /**
  * Title: CosmosDBClient
  *
@@ -33,6 +35,29 @@ public interface DBClient extends AutoCloseable {
      */
     Connection getConnection( final String db, final String collection );
     
+    /**
+     * Get a snapshot of the client-side document cache counters.
+     * 
+     * @return CacheStats the cache stats, or null if caching is not enabled for this client
+     */
+    CacheStats getCacheStats();
+    
+    /**
+     * Get the query shapes that cost the most, e.g. to find which queries are using up the provisioned 
+     * throughput. Queries are only tracked if enabled with {@link ClientOptions#setMaxTrackedQueries(int)}.
+     * 
+     * @param n the most query shapes to return
+     * @param order what to rank the query shapes by, highest first
+     * 
+     * @return List of the stats of up to n query shapes, empty if queries are not tracked for this client
+     */
+    List<QueryStats> getTopQueries( final int n, final QueryStats.Order order );
+    
+    /**
+     * Discard the query statistics gathered so far, to start a new measurement period.
+     */
+    void resetQueryStats();
+    
     /**
      * Close the client and release resources.
      */
@@ -38,4 +38,19 @@ public interface DBClientBuilder {
         final String masterKey, 
         final int maxRetryAttemptsOnThrottledRequests, 
         final int maxRetryWaitTimeInSeconds );
+    
+    /**
+     * Returns a CosmosDBAsyncClient configured with the given options, such as throttling limits 
+     * and client-side caching.
+     * 
+     * @param endpoint the endpoint of the CosmosDB service (e.g. https://mycosmosdb.documents.azure.com)
+     * @param masterKey the master key used to access the store
+     * @param options the client options
+     * 
+     * @return CosmosDBAsyncClient the client
+     */
+    DBClient getCosmosDBAsyncClient( 
+        final String endpoint, 
+        final String masterKey, 
+        final ClientOptions options );
 }
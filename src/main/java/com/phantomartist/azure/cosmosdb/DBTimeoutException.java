@@ -0,0 +1,36 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: DBTimeoutException
+ *
+ * Description: Raised through {@link com.phantomartist.azure.cosmosdb.results.OnError} (or thrown by a
+ * blocking call) when a query or statement does not finish within its timeout. By the time this is
+ * raised the operation has been cancelled, so no further pages are fetched and no further writes are sent.
+ * Writes already sent to the service when the timeout expired may still have been applied.
+ */
+public class DBTimeoutException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long timeoutMillis;
+
+    /**
+     * Constructor
+     *
+     * @param operation description of the operation that timed out
+     * @param timeoutMillis the timeout that expired, in milliseconds
+     */
+    public DBTimeoutException( final String operation, final long timeoutMillis ) {
+        super( "Timed out after [" + timeoutMillis + "ms] during " + operation );
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Get the timeout that expired.
+     *
+     * @return long the timeout in milliseconds
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
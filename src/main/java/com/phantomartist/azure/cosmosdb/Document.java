@@ -21,6 +21,53 @@ public interface Document {
      */
     String getSelfLink();
     
+    /**
+     * Get the entity tag (_etag) of this version of the document. The ETag changes whenever 
+     * the document is written, so it can be used for conditional reads and writes.
+     * 
+     * @return String the ETag
+     */
+    String getETag();
+    
+    /**
+     * Get a string field without converting the whole document.
+     * 
+     * The path names a top-level field, or a nested field with dots, e.g. "address.city". The field is 
+     * looked up in the document as the client parsed it, without producing or parsing any JSON text. 
+     * Numbers and booleans are returned as their text.
+     * 
+     * @param path the path of the field
+     * 
+     * @return String the value, or null if the field is missing or null
+     * 
+     * @throws IllegalArgumentException if the field is an object or array
+     */
+    String getString( String path );
+    
+    /**
+     * Get a whole number field without converting the whole document. 
+     * See {@link #getString(String)} for how the field is found. Strings are parsed.
+     * 
+     * @param path the path of the field
+     * 
+     * @return Long the value, or null if the field is missing or null
+     * 
+     * @throws IllegalArgumentException if the field is not a number
+     */
+    Long getLong( String path );
+    
+    /**
+     * Get a decimal number field without converting the whole document. 
+     * See {@link #getString(String)} for how the field is found. Strings are parsed.
+     * 
+     * @param path the path of the field
+     * 
+     * @return Double the value, or null if the field is missing or null
+     * 
+     * @throws IllegalArgumentException if the field is not a number
+     */
+    Double getDouble( String path );
+    
     /**
      * Convert the Document to a JSON array.
      * 
@@ -31,11 +78,23 @@ public interface Document {
     /**
      * Convert the Document to an object of type T
      * 
+     * Properties of the document with no matching field in c are ignored.
+     * 
      * @param <T> the type of the object.
-     * @param c   the class of the object, either a POJO class or JSONObject. If c is a POJO class, it must be a member
+     * @param c   the class of the object, e.g. a POJO class or Map. If c is a POJO class, it must be a member
      *            (and not an anonymous or local) and a static one.
      *            
      * @return the object of type T
      */
     <T extends Object> T toObject( Class<T> c );
+    
+    /**
+     * Convert the Document to an object of type T using a mapper.
+     * 
+     * @param <T> the type of the object.
+     * @param mapper the mapper
+     * 
+     * @return the object of type T
+     */
+    <T extends Object> T toObject( DocumentMapper<T> mapper );
 }
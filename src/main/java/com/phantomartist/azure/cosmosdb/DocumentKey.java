@@ -0,0 +1,80 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.Objects;
+
+/**
+ * Title: DocumentKey
+ *
+ * Description: Identifies a single document within a collection by its id and partition key.
+ *
+ * This is all that is required to address a document directly, without first selecting it
+ * to obtain its self-link.
+ */
+public final class DocumentKey {
+
+    private final String id;
+    private final String partitionKey;
+
+    /**
+     * Constructor
+     *
+     * @param id the id of the document
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     */
+    public DocumentKey( final String id, final String partitionKey ) {
+        if ( id == null ) {
+            throw new IllegalArgumentException( "Id cannot be null" );
+        }
+        this.id = id;
+        this.partitionKey = partitionKey;
+    }
+
+    /**
+     * Get the id of the document
+     *
+     * @return String the id
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Get the partition key of the document
+     *
+     * @return String the partition key (null if the collection is not partitioned)
+     */
+    public String getPartitionKey() {
+        return partitionKey;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals( final Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof DocumentKey ) ) {
+            return false;
+        }
+        DocumentKey other = (DocumentKey) o;
+        return id.equals( other.id ) && Objects.equals( partitionKey, other.partitionKey );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return 31 * id.hashCode() + Objects.hashCode( partitionKey );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[id=" + id + ", partitionKey=" + partitionKey + "]";
+    }
+}
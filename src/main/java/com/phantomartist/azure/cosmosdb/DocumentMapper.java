@@ -0,0 +1,22 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: DocumentMapper
+ *
+ * Description: Converts a Document to an object of type T.
+ *
+ * Use with {@link Document#toObject(DocumentMapper)} or {@link Query#executeForResultSet(DocumentMapper)}
+ * to control how results are decoded, e.g. to bind only the fields a caller needs. Implementations must 
+ * be thread-safe, as one mapper is typically shared by every query that returns T.
+ */
+public interface DocumentMapper<T> {
+
+    /**
+     * Convert a document.
+     * 
+     * @param doc the document
+     * 
+     * @return T the converted document
+     */
+    T map( Document doc );
+}
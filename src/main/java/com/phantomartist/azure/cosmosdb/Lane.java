@@ -0,0 +1,17 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: Lane
+ *
+ * Description: The lanes that operations of one client are scheduled in, so that batch work sharing the
+ * client cannot crowd out user-facing requests. See {@link SchedulerConfig}.
+ */
+public enum Lane {
+
+    /** User-facing queries, reads and single writes, which go first. (Default for all but bulk operations). */
+    INTERACTIVE,
+    /** Work that can wait, e.g. reports or housekeeping queries. */
+    BACKGROUND,
+    /** Bulk writes and deletes. (Default for {@link Statement#multiUpsert} and {@link Statement#multiDelete}). */
+    BULK
+}
@@ -0,0 +1,22 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: MetricsListener
+ *
+ * Description: Receives the cost and outcome of every operation a client performs against the database.
+ * Register one with {@link ClientOptions#setMetricsListener(MetricsListener)}.
+ *
+ * The listener is called once per operation, when it completes or fails, on the client's I/O threads and
+ * possibly from several threads at once. It must be thread-safe and quick: record the figures and return.
+ * Exceptions thrown by the listener are logged and otherwise ignored. When no listener is registered,
+ * operations are not measured at all.
+ */
+public interface MetricsListener {
+
+    /**
+     * Called when an operation completes or fails.
+     *
+     * @param metrics the figures for the operation
+     */
+    void onOperation( final OperationMetrics metrics );
+}
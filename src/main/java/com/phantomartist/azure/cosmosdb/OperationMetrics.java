@@ -0,0 +1,99 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: OperationMetrics
+ *
+ * Description: The figures for one completed operation, as passed to a {@link MetricsListener}.
+ *
+ * Bulk operations are reported once for the whole batch, with one item per document written and one
+ * retry per throttled write. Results served from the client-side cache are not reported.
+ */
+public final class OperationMetrics {
+
+    private final OperationType type;
+    private final String collectionLink;
+    private final long latencyNanos;
+    private final double requestCharge;
+    private final long itemCount;
+    private final int pageCount;
+    private final int retries;
+    private final int statusCode;
+    private final boolean isSuccess;
+
+    /**
+     * Constructor
+     *
+     * @param type the type of operation
+     * @param collectionLink the collection operated on
+     * @param latencyNanos the time from start to completion, in nanoseconds
+     * @param requestCharge the RU charged
+     * @param itemCount the number of documents returned or written
+     * @param pageCount the number of pages read (0 for operations that are not paged)
+     * @param retries the number of retries made by this library (those made inside the document client are not visible)
+     * @param statusCode the HTTP status code of the last response, or -1 if the failure did not come from the service
+     * @param isSuccess true if the operation completed, false if it failed
+     */
+    public OperationMetrics( final OperationType type, final String collectionLink, final long latencyNanos, final double requestCharge,
+            final long itemCount, final int pageCount, final int retries, final int statusCode, final boolean isSuccess ) {
+        this.type = type;
+        this.collectionLink = collectionLink;
+        this.latencyNanos = latencyNanos;
+        this.requestCharge = requestCharge;
+        this.itemCount = itemCount;
+        this.pageCount = pageCount;
+        this.retries = retries;
+        this.statusCode = statusCode;
+        this.isSuccess = isSuccess;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public String getCollectionLink() {
+        return collectionLink;
+    }
+
+    public long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    public long getLatency( final TimeUnit unit ) {
+        return unit.convert( latencyNanos, TimeUnit.NANOSECONDS );
+    }
+
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    public int getRetries() {
+        return retries;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public boolean isSuccess() {
+        return isSuccess;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[type=" + type + ", collection=" + collectionLink + ", latencyNanos=" + latencyNanos + ", requestCharge=" + requestCharge
+            + ", items=" + itemCount + ", pages=" + pageCount + ", retries=" + retries + ", status=" + statusCode + ", success=" + isSuccess + "]";
+    }
+}
@@ -0,0 +1,98 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: OperationStats
+ *
+ * Description: Point-in-time snapshot of the aggregated metrics for one type of operation.
+ * Latency percentiles are accurate to within about 3%.
+ */
+public final class OperationStats {
+
+    private final long count;
+    private final long failures;
+    private final double p50Millis;
+    private final double p99Millis;
+    private final double p999Millis;
+    private final double maxMillis;
+    private final double requestCharge;
+    private final double requestChargePerSecond;
+    private final long items;
+    private final long retries;
+
+    /**
+     * Constructor
+     *
+     * @param count the number of operations
+     * @param failures the number of operations that failed
+     * @param p50Millis the median latency in milliseconds
+     * @param p99Millis the 99th percentile latency in milliseconds
+     * @param p999Millis the 99.9th percentile latency in milliseconds
+     * @param maxMillis the highest latency in milliseconds
+     * @param requestCharge the total RU charged
+     * @param requestChargePerSecond the RU charged per second over the period measured
+     * @param items the total number of documents returned or written
+     * @param retries the total number of retries
+     */
+    public OperationStats( final long count, final long failures, final double p50Millis, final double p99Millis, final double p999Millis, final double maxMillis,
+            final double requestCharge, final double requestChargePerSecond, final long items, final long retries ) {
+        this.count = count;
+        this.failures = failures;
+        this.p50Millis = p50Millis;
+        this.p99Millis = p99Millis;
+        this.p999Millis = p999Millis;
+        this.maxMillis = maxMillis;
+        this.requestCharge = requestCharge;
+        this.requestChargePerSecond = requestChargePerSecond;
+        this.items = items;
+        this.retries = retries;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public double getP50Millis() {
+        return p50Millis;
+    }
+
+    public double getP99Millis() {
+        return p99Millis;
+    }
+
+    public double getP999Millis() {
+        return p999Millis;
+    }
+
+    public double getMaxMillis() {
+        return maxMillis;
+    }
+
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+
+    public double getRequestChargePerSecond() {
+        return requestChargePerSecond;
+    }
+
+    public long getItems() {
+        return items;
+    }
+
+    public long getRetries() {
+        return retries;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[count=" + count + ", failures=" + failures + ", p50=" + p50Millis + "ms, p99=" + p99Millis + "ms, p999=" + p999Millis
+            + "ms, max=" + maxMillis + "ms, ru=" + requestCharge + ", ru/s=" + requestChargePerSecond + ", items=" + items + ", retries=" + retries + "]";
+    }
+}
@@ -0,0 +1,19 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: OperationType
+ *
+ * Description: The kinds of operation reported to a {@link MetricsListener}
+ */
+public enum OperationType {
+
+    QUERY,
+    READ,
+    READ_MANY,
+    UPSERT,
+    REPLACE,
+    READ_MODIFY_WRITE,
+    DELETE,
+    BULK_UPSERT,
+    BULK_DELETE
+}
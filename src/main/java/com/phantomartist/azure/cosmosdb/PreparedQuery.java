@@ -0,0 +1,52 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.List;
+
+/**
+ * Title: PreparedQuery
+ *
+ * Description: Immutable query template built once from SQL text and parameter names.
+ *
+ * Unlike a {@link Query}, a PreparedQuery is thread-safe and can be shared, e.g. one per endpoint of a 
+ * service, for the life of its {@link Connection}. The SQL is validated and normalised once when the 
+ * template is prepared rather than on every execution. Each execution calls {@link #bind(Object...)} 
+ * to get its own Query with the parameter values filled in.
+ */
+public interface PreparedQuery {
+
+    /**
+     * Get the SQL text of the query
+     * 
+     * @return String the SQL
+     */
+    String getSql();
+    
+    /**
+     * Get the names of the parameters, in the order values are bound
+     * 
+     * @return List of parameter names
+     */
+    List<String> getParamNames();
+    
+    /**
+     * Get a copy of this template whose queries have a different default page size. 
+     * See {@link Query#setMaxResultsPageSize(int)}.
+     * 
+     * @param maxFetchResults the max results to fetch in a page
+     * 
+     * @return PreparedQuery the new template
+     */
+    PreparedQuery withMaxResultsPageSize( final int maxFetchResults );
+    
+    /**
+     * Bind parameter values to create a query for one execution. The query is not shared, so it 
+     * can be configured further (blocking, partition key etc.) before it is executed.
+     * 
+     * @param values the parameter values, in the same order as the parameter names
+     * 
+     * @return Query the query, ready to execute
+     * 
+     * @throws IllegalArgumentException if the number of values does not match the number of parameters
+     */
+    Query bind( final Object... values );
+}
@@ -1,8 +1,17 @@
 package com.phantomartist.azure.cosmosdb;
 
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
+
 import com.phantomartist.azure.cosmosdb.results.OnComplete;
 import com.phantomartist.azure.cosmosdb.results.OnError;
 import com.phantomartist.azure.cosmosdb.results.OnPage;
+import com.phantomartist.azure.cosmosdb.results.OnResumablePage;
 
 /**
  * Title: CosmosDBQuery
@@ -21,6 +30,18 @@ public interface Query {
      */
     Query setBlocking( final boolean isBlocking );
     
+    /**
+     * Set how long the query may take, overriding the client default (see {@link ClientOptions#setTimeout(long, TimeUnit)}).
+     * The timeout runs from the start of the query to its last page, whichever way the results are consumed, so for 
+     * {@link #iterator()}, {@link #stream()} and {@link #publisher()} it includes the time the consumer spends between pages.
+     * 
+     * @param timeout the timeout, must be positive
+     * @param unit the unit of timeout
+     * 
+     * @return Query this query
+     */
+    Query setTimeout( final long timeout, final TimeUnit unit );
+    
     /**
      * Setting this parameter will limit the number of results returned
      * in a single page of results.
@@ -47,6 +68,70 @@ public interface Query {
      */
     Query setPartitionKey( final String partitionKey );
     
+    /**
+     * Resume the query from a continuation token, as passed to {@link OnResumablePage}, rather than 
+     * from the start. The query text, parameters, partition key and page size must be the same as 
+     * the query that issued the token. Resumed queries are never served from the client-side cache.
+     * 
+     * @param continuation the continuation token, or null to start from the beginning
+     * 
+     * @return Query this query
+     */
+    Query setContinuation( final String continuation );
+    
+    /**
+     * Stop the query after a number of pages, e.g. to serve one page of a paged API. The rest of 
+     * the result is not read. (Default is 0, meaning all pages are read).
+     * 
+     * @param maxPages the maximum number of pages to read, or 0 for no limit
+     * 
+     * @return Query this query
+     */
+    Query setMaxPages( final int maxPages );
+    
+    /**
+     * Set the number of partitions a cross-partition query reads concurrently. (Default is 0, meaning 
+     * partitions are read one after another). Has no effect when a partition key is set.
+     * 
+     * @param maxDegreeOfParallelism the number of partitions to read concurrently
+     * 
+     * @return Query this query
+     */
+    Query setMaxDegreeOfParallelism( final int maxDegreeOfParallelism );
+    
+    /**
+     * Set the maximum number of documents a parallel cross-partition query buffers ahead of the caller.
+     * Larger buffers keep partitions busy while earlier pages are processed, at the cost of memory.
+     * (Default is 0, meaning the client decides).
+     * 
+     * @param maxBufferedItemCount the maximum number of documents to buffer
+     * 
+     * @return Query this query
+     */
+    Query setMaxBufferedItemCount( final int maxBufferedItemCount );
+    
+    /**
+     * Set the adaptive parallelism flag. (Default is false).
+     * If set, a cross-partition query reads as many partitions concurrently as the collection has, 
+     * capped at {@link #setMaxDegreeOfParallelism(int)} if that is set. The partition count is looked up 
+     * on first use and remembered per collection for the life of the client.
+     * 
+     * @param isAdaptive if true, parallelism follows the partition count of the collection
+     * 
+     * @return Query this query
+     */
+    Query setAdaptiveParallelism( final boolean isAdaptive );
+    
+    /**
+     * Set the lane the query is scheduled in, see {@link ClientOptions#setScheduler(SchedulerConfig)}.
+     * (Default is {@link Lane#INTERACTIVE}).
+     * 
+     * @param lane the lane, e.g. {@link Lane#BACKGROUND} for reports that can wait
+     * 
+     * @return Query this query
+     */
+    Query setLane( final Lane lane );
+    
     /**
      * Add a param name/value pair to the query
      * 
@@ -97,4 +182,94 @@ public interface Query {
      * @param onComplete what to do when operation completes
      */
     void execute( final OnPage onPage, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Execute query, passing each page with the continuation token that resumes the query after it.
+     * 
+     * If {@link #setBlocking(boolean)} is true, this method will block until completion.
+     * 
+     * @param onPage what to do when a page of results arrives
+     * @param onError what to do when an error occurs
+     * @param onComplete what to do when operation completes
+     */
+    void execute( final OnResumablePage onPage, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Execute query and block until the whole result has been read, regardless of {@link #setBlocking(boolean)}.
+     * 
+     * Documents are converted to T, JSON or Maps lazily: a document is only converted to a view when that 
+     * element of the view is first requested, and the conversion is remembered. 
+     * 
+     * @param <T> the type of the results
+     * @param type the class to convert results to, either a POJO class or Map
+     * 
+     * @return ResultSet the result set
+     * 
+     * @throws RuntimeException if the query fails or times out
+     */
+    <T> ResultSet<T> executeForResultSet( final Class<T> type );
+    
+    /**
+     * Execute query and block until the whole result has been read, regardless of {@link #setBlocking(boolean)}.
+     * Behaves as {@link #executeForResultSet(Class)}, but results are converted with the given mapper.
+     * 
+     * @param <T> the type of the results
+     * @param mapper the mapper to convert results with
+     * 
+     * @return ResultSet the result set
+     * 
+     * @throws RuntimeException if the query fails or times out
+     */
+    <T> ResultSet<T> executeForResultSet( final DocumentMapper<T> mapper );
+    
+    /**
+     * Execute query, returning a future of all the results rather than taking callbacks. 
+     * Never blocks, regardless of {@link #setBlocking(boolean)}, so futures from several queries 
+     * can be composed (e.g. with CompletableFuture.allOf) without a thread waiting on each.
+     * 
+     * @return CompletableFuture of every matching document, completed exceptionally if the query fails
+     */
+    CompletableFuture<List<Document>> executeAsync();
+    
+    /**
+     * Execute the query and iterate over the results, pulling pages from the database on demand.
+     * 
+     * The query starts on the first call to hasNext() or next(). Each page (see {@link #setMaxResultsPageSize(int)})
+     * is only requested once the previous page has been consumed, so memory use is bounded by the page size 
+     * however many documents match. hasNext() blocks while a page is fetched, and throws a RuntimeException 
+     * if the query fails, or a {@link DBTimeoutException} once the query has run for longer than its timeout
+     * (see {@link #setTimeout(long, TimeUnit)}). {@link #setBlocking(boolean)} has no effect.
+     * 
+     * Iterating a result from the client-side cache replays it from memory, but results iterated from the 
+     * database are not added to the cache. To stop early without fetching any more pages, use {@link #stream()} 
+     * and close it.
+     * 
+     * @return Iterator over the matching documents
+     */
+    Iterator<Document> iterator();
+    
+    /**
+     * Execute the query and stream the results, pulling pages from the database on demand.
+     * Behaves as {@link #iterator()}. Closing the stream cancels the query, so use try-with-resources 
+     * if the stream may not be consumed to the end.
+     * 
+     * @return Stream of the matching documents
+     */
+    Stream<Document> stream();
+    
+    /**
+     * Get a Reactive Streams Publisher of the results, for use with Reactor, RxJava 2 and the like 
+     * (e.g. Flux.from( query.publisher() )).
+     * 
+     * Demand is mapped onto page fetches: a page (see {@link #setMaxResultsPageSize(int)}) is only requested
+     * from the database when the subscriber has outstanding demand and has been given every document from the 
+     * previous page, so the query stays backpressured end to end. Cancelling the subscription stops the query, as
+     * does the query running for longer than its timeout (see {@link #setTimeout(long, TimeUnit)}), which is 
+     * signalled to the subscriber as a {@link DBTimeoutException}.
+     * Each subscription executes the query afresh. Caching behaves as for {@link #iterator()}, and 
+     * {@link #setBlocking(boolean)} has no effect.
+     * 
+     * @return Publisher of the matching documents
+     */
+    Publisher<Document> publisher();
 }
@@ -0,0 +1,107 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: QueryStats
+ *
+ * Description: Point-in-time snapshot of the aggregated metrics for one query shape, identified by its
+ * fingerprint: the SQL with literal values replaced by '?' and IN lists collapsed. Latency percentiles
+ * are accurate to within about 3%.
+ */
+public final class QueryStats {
+
+    /**
+     * What to rank query shapes by when asking for the worst offenders.
+     */
+    public enum Order {
+        REQUEST_CHARGE,
+        MEAN_LATENCY,
+        P99_LATENCY,
+        CALLS,
+        DOCUMENTS
+    }
+
+    private final String fingerprint;
+    private final long calls;
+    private final long failures;
+    private final long crossPartitionCalls;
+    private final double requestCharge;
+    private final double meanLatencyMillis;
+    private final double p99LatencyMillis;
+    private final long documents;
+
+    /**
+     * Constructor
+     *
+     * @param fingerprint the query shape
+     * @param calls the number of executions
+     * @param failures the number of executions that failed
+     * @param crossPartitionCalls the number of executions without a partition key
+     * @param requestCharge the total RU charged
+     * @param meanLatencyMillis the mean latency in milliseconds
+     * @param p99LatencyMillis the 99th percentile latency in milliseconds
+     * @param documents the total number of documents returned
+     */
+    public QueryStats( final String fingerprint, final long calls, final long failures, final long crossPartitionCalls, final double requestCharge,
+            final double meanLatencyMillis, final double p99LatencyMillis, final long documents ) {
+        this.fingerprint = fingerprint;
+        this.calls = calls;
+        this.failures = failures;
+        this.crossPartitionCalls = crossPartitionCalls;
+        this.requestCharge = requestCharge;
+        this.meanLatencyMillis = meanLatencyMillis;
+        this.p99LatencyMillis = p99LatencyMillis;
+        this.documents = documents;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    public long getCrossPartitionCalls() {
+        return crossPartitionCalls;
+    }
+
+    public long getSinglePartitionCalls() {
+        return calls - crossPartitionCalls;
+    }
+
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+
+    /**
+     * @return double the mean RU charged per execution
+     */
+    public double getMeanRequestCharge() {
+        return calls == 0 ? 0 : requestCharge / calls;
+    }
+
+    public double getMeanLatencyMillis() {
+        return meanLatencyMillis;
+    }
+
+    public double getP99LatencyMillis() {
+        return p99LatencyMillis;
+    }
+
+    public long getDocuments() {
+        return documents;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[" + fingerprint + ": calls=" + calls + ", failures=" + failures + ", crossPartition=" + crossPartitionCalls + ", ru=" + requestCharge
+            + ", mean=" + meanLatencyMillis + "ms, p99=" + p99LatencyMillis + "ms, documents=" + documents + "]";
+    }
+}
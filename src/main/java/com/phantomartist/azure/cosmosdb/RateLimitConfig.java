@@ -0,0 +1,145 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: RateLimitConfig
+ *
+ * Description: Configures client-side pacing of requests to stay within a provisioned RU/s budget.
+ *
+ * When enabled (see {@link ClientOptions#setRateLimit(RateLimitConfig)}), each collection has a token bucket
+ * holding RUs. The cost of each kind of operation (and of each query shape) is learned from the RU charges the
+ * database reports, and an operation is delayed, without blocking a thread, until the bucket can pay for it.
+ * Operations in the {@link Lane#INTERACTIVE} lane go ahead of background and bulk operations, which never take
+ * the part of the bucket kept back by {@link #setBulkHeadroom(double)}, and wait rather than queue ahead of
+ * interactive ones. See {@link SchedulerConfig#setRequestUnitShare(Lane, double)} to cap a lane's share.
+ *
+ * Pacing only paces this client. If other clients share the collection's throughput, set a budget below the
+ * provisioned RU/s, or leave the limiter adaptive so that it slows down when the database throttles requests
+ * anyway. An adaptive limiter must see each throttle as it happens, which it cannot if the Azure client retries
+ * throttled requests out of sight, so an adaptive limiter also makes this library retry them instead (as
+ * {@link ClientOptions#setClientSideThrottleRetries(boolean)} does), within the same limits. A limiter that is
+ * not adaptive leaves the retries to the Azure client unless asked otherwise.
+ */
+public class RateLimitConfig {
+
+    private double requestUnitsPerSecond;
+    private final Map<String, Double> collectionRequestUnitsPerSecond = new HashMap<>();
+    private long burstMillis = TimeUnit.SECONDS.toMillis( 1 );
+    private double bulkHeadroom = 0.5;
+    private boolean isAdaptive = true;
+
+    /**
+     * Set the RU/s budget of each collection that does not have its own. (Default is 0, meaning only
+     * collections with their own budget are paced).
+     *
+     * @param requestUnitsPerSecond the RU/s, or 0 for no limit
+     *
+     * @return RateLimitConfig this config
+     */
+    public RateLimitConfig setRequestUnitsPerSecond( final double requestUnitsPerSecond ) {
+        if ( requestUnitsPerSecond < 0 ) {
+            throw new IllegalArgumentException( "RU/s cannot be negative" );
+        }
+        this.requestUnitsPerSecond = requestUnitsPerSecond;
+        return this;
+    }
+
+    /**
+     * Set the RU/s budget of one collection.
+     *
+     * @param collectionLink the collection link, see {@link Connection#getCollectionLink()}
+     * @param requestUnitsPerSecond the RU/s, or 0 for no limit
+     *
+     * @return RateLimitConfig this config
+     */
+    public RateLimitConfig setRequestUnitsPerSecond( final String collectionLink, final double requestUnitsPerSecond ) {
+        if ( collectionLink == null ) {
+            throw new IllegalArgumentException( "Collection link cannot be null" );
+        }
+        if ( requestUnitsPerSecond < 0 ) {
+            throw new IllegalArgumentException( "RU/s cannot be negative" );
+        }
+        collectionRequestUnitsPerSecond.put( collectionLink, requestUnitsPerSecond );
+        return this;
+    }
+
+    /**
+     * Set how much unused budget may build up for a burst, as a time at the budgeted rate. (Default is 1 second).
+     *
+     * @param burst the burst, must be positive
+     * @param unit the unit of burst
+     *
+     * @return RateLimitConfig this config
+     */
+    public RateLimitConfig setBurst( final long burst, final TimeUnit unit ) {
+        if ( burst <= 0 ) {
+            throw new IllegalArgumentException( "Burst must be positive" );
+        }
+        this.burstMillis = unit.toMillis( burst );
+        return this;
+    }
+
+    /**
+     * Set the proportion of the burst that background and bulk operations leave for interactive ones. (Default is 0.5).
+     *
+     * @param bulkHeadroom the proportion, from 0 (they may use it all) to 1 (they only use what is spare)
+     *
+     * @return RateLimitConfig this config
+     */
+    public RateLimitConfig setBulkHeadroom( final double bulkHeadroom ) {
+        if ( bulkHeadroom < 0 || bulkHeadroom > 1 ) {
+            throw new IllegalArgumentException( "Bulk headroom must be between 0 and 1" );
+        }
+        this.bulkHeadroom = bulkHeadroom;
+        return this;
+    }
+
+    /**
+     * Set whether the budget is halved when the database throttles a request, recovering gradually
+     * over the following 30 seconds. An adaptive limiter retries throttled requests itself rather than 
+     * leaving them to the Azure client (see {@link ClientOptions#setClientSideThrottleRetries(boolean)}). 
+     * (Default is true).
+     *
+     * @param isAdaptive if true, the budget adapts to throttling
+     *
+     * @return RateLimitConfig this config
+     */
+    public RateLimitConfig setAdaptive( final boolean isAdaptive ) {
+        this.isAdaptive = isAdaptive;
+        return this;
+    }
+
+    public double getRequestUnitsPerSecond() {
+        return requestUnitsPerSecond;
+    }
+
+    /**
+     * @param collectionLink the collection link
+     *
+     * @return double the RU/s budget of the collection, or 0 for no limit
+     */
+    public double getRequestUnitsPerSecond( final String collectionLink ) {
+        Double own = collectionRequestUnitsPerSecond.get( collectionLink );
+        return own == null ? requestUnitsPerSecond : own;
+    }
+
+    public Map<String, Double> getCollectionRequestUnitsPerSecond() {
+        return Collections.unmodifiableMap( collectionRequestUnitsPerSecond );
+    }
+
+    public long getBurstMillis() {
+        return burstMillis;
+    }
+
+    public double getBulkHeadroom() {
+        return bulkHeadroom;
+    }
+
+    public boolean isAdaptive() {
+        return isAdaptive;
+    }
+}
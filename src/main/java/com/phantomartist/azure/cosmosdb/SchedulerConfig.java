@@ -0,0 +1,116 @@
+package com.phantomartist.azure.cosmosdb;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Title: SchedulerConfig
+ *
+ * Description: Configures the scheduling of a client's operations in {@link Lane}s, so that interactive,
+ * background and bulk work can share one client without interfering.
+ *
+ * When enabled (see {@link ClientOptions#setScheduler(SchedulerConfig)}), each lane has a limit on the number of
+ * requests it has in flight. An operation over the limit is queued, without blocking a thread, and sent in order
+ * once an earlier operation of the same lane ends. A query holds one place while each of its pages is fetched,
+ * and none while its results are consumed, so a slow or abandoned iterator or subscriber does not hold up the
+ * lane. Each document of a bulk operation holds one place while it is written.
+ *
+ * If a latency target is set, the 99th percentile latency of interactive operations (to their first response) is
+ * measured each second. While it is over the target, the background and bulk lanes halve their limits, down to one
+ * request each; once it is back under, they recover by one request per second.
+ *
+ * If requests are also paced (see {@link ClientOptions#setRateLimit(RateLimitConfig)}), each lane can be given
+ * a share of the RU/s budget, which it never exceeds even when the rest of the budget is unused.
+ */
+public class SchedulerConfig {
+
+    private final Map<Lane, Integer> maxConcurrency = new EnumMap<>( Lane.class );
+    private final Map<Lane, Double> requestUnitShare = new EnumMap<>( Lane.class );
+    private long latencyTargetMillis;
+
+    /**
+     * Constructor
+     */
+    public SchedulerConfig() {
+        maxConcurrency.put( Lane.INTERACTIVE, 0 );
+        maxConcurrency.put( Lane.BACKGROUND, 16 );
+        maxConcurrency.put( Lane.BULK, 32 );
+        for ( Lane lane : Lane.values() ) {
+            requestUnitShare.put( lane, 1.0 );
+        }
+    }
+
+    /**
+     * Set the most requests a lane may have in flight across the client. (Default is 0 for
+     * {@link Lane#INTERACTIVE}, 16 for {@link Lane#BACKGROUND} and 32 for {@link Lane#BULK}).
+     *
+     * @param lane the lane
+     * @param maxConcurrency the most requests, or 0 for no limit
+     *
+     * @return SchedulerConfig this config
+     */
+    public SchedulerConfig setMaxConcurrency( final Lane lane, final int maxConcurrency ) {
+        if ( maxConcurrency < 0 ) {
+            throw new IllegalArgumentException( "Max concurrency cannot be negative" );
+        }
+        this.maxConcurrency.put( lane, maxConcurrency );
+        return this;
+    }
+
+    /**
+     * Set the share of each collection's RU/s budget that a lane may use. Only applies if requests are
+     * paced. (Default is 1 for every lane, meaning no lane is capped).
+     *
+     * @param lane the lane
+     * @param requestUnitShare the share, greater than 0 and at most 1
+     *
+     * @return SchedulerConfig this config
+     */
+    public SchedulerConfig setRequestUnitShare( final Lane lane, final double requestUnitShare ) {
+        if ( requestUnitShare <= 0 || requestUnitShare > 1 ) {
+            throw new IllegalArgumentException( "RU share must be greater than 0 and at most 1" );
+        }
+        this.requestUnitShare.put( lane, requestUnitShare );
+        return this;
+    }
+
+    /**
+     * Set the 99th percentile latency that interactive operations should stay within, by holding back the
+     * background and bulk lanes. (Default is 0, meaning the lane limits are fixed).
+     *
+     * @param latencyTarget the target, or 0 for none
+     * @param unit the unit of latencyTarget
+     *
+     * @return SchedulerConfig this config
+     */
+    public SchedulerConfig setLatencyTarget( final long latencyTarget, final TimeUnit unit ) {
+        if ( latencyTarget < 0 ) {
+            throw new IllegalArgumentException( "Latency target cannot be negative" );
+        }
+        this.latencyTargetMillis = unit.toMillis( latencyTarget );
+        return this;
+    }
+
+    /**
+     * @param lane the lane
+     *
+     * @return int the most requests the lane may have in flight, or 0 for no limit
+     */
+    public int getMaxConcurrency( final Lane lane ) {
+        return maxConcurrency.get( lane );
+    }
+
+    /**
+     * @param lane the lane
+     *
+     * @return double the share of the RU/s budget the lane may use
+     */
+    public double getRequestUnitShare( final Lane lane ) {
+        return requestUnitShare.get( lane );
+    }
+
+    public long getLatencyTargetMillis() {
+        return latencyTargetMillis;
+    }
+}
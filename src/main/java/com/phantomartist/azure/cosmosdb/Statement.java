@@ -1,11 +1,20 @@
 package com.phantomartist.azure.cosmosdb;
 
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import org.reactivestreams.Publisher;
 
 import com.phantomartist.azure.cosmosdb.results.OnComplete;
 import com.phantomartist.azure.cosmosdb.results.OnError;
 import com.phantomartist.azure.cosmosdb.results.OnResult;
 
+import rx.Observable;
+
 /**
  * Title: Statement
  *
@@ -24,6 +33,60 @@ public interface Statement {
      */
     Statement setBlocking( final boolean isBlocking );
     
+    /**
+     * Set how long a blocking call waits for its result, overriding the client default
+     * (see {@link ClientOptions#setTimeout(long, TimeUnit)}).
+     * 
+     * @param timeout the timeout, must be positive
+     * @param unit the unit of timeout
+     * 
+     * @return Statement this statement
+     */
+    Statement setTimeout( final long timeout, final TimeUnit unit );
+    
+    /**
+     * Set the maximum number of writes a bulk operation may have in flight at any one time.
+     * (Default is 32).
+     * 
+     * @param maxConcurrency the maximum number of concurrent writes, must be at least 1
+     * 
+     * @return Statement this statement
+     */
+    Statement setMaxConcurrency( final int maxConcurrency );
+    
+    /**
+     * Set the number of documents a bulk operation pulls from its source at a time. 
+     * Only the current chunk and the writes in flight are held by the statement. (Default is 100).
+     * 
+     * @param chunkSize the chunk size, must be at least 1
+     * 
+     * @return Statement this statement
+     */
+    Statement setBulkChunkSize( final int chunkSize );
+    
+    /**
+     * Set the adaptive concurrency flag. (Default is true).
+     * If set, a bulk operation starts with a small number of writes in flight, ramps up 
+     * towards {@link #setMaxConcurrency(int)} while writes succeed and backs off whenever 
+     * the database throttles a write because the provisioned RU/s is exhausted.
+     * If not set, a bulk operation always keeps max concurrency writes in flight.
+     * 
+     * @param isAdaptive if true, the in-flight window adapts to throttling
+     * 
+     * @return Statement this statement
+     */
+    Statement setAdaptiveConcurrency( final boolean isAdaptive );
+    
+    /**
+     * Set the lane the statement's writes and deletes are scheduled in, see {@link ClientOptions#setScheduler(SchedulerConfig)}.
+     * (Default is {@link Lane#BULK} for multiUpsert and multiDelete, and {@link Lane#INTERACTIVE} for everything else).
+     * 
+     * @param lane the lane for all operations of the statement
+     * 
+     * @return Statement this statement
+     */
+    Statement setLane( final Lane lane );
+    
     /**
      * Perform an insert/update for a given document. 
      * 
@@ -63,11 +126,82 @@ public interface Statement {
      */
     void upsert( final Object doc, final OnResult onResult, final OnError onError, final OnComplete onComplete );
     
+    /**
+     * Perform an insert/update operation that only succeeds if the stored document is unchanged.
+     * 
+     * The write carries an If-Match condition on the given ETag (see {@link Document#getETag()}). If another
+     * writer has changed the document since that ETag was read, the write is rejected and onError fires
+     * with an error carrying HTTP status 412 (Precondition Failed).
+     * 
+     * @param doc the doc
+     * @param ifMatchETag the ETag the stored document must still have (null to write unconditionally)
+     * @param onResult what to do when a result is observed
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void upsert( final Object doc, final String ifMatchETag, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Replace an existing document, optionally only if the stored document is unchanged.
+     * 
+     * If the document does not exist, onError fires with an error carrying HTTP status 404 (Not Found). 
+     * If ifMatchETag is given and another writer has changed the document since that ETag was read, 
+     * onError fires with an error carrying HTTP status 412 (Precondition Failed).
+     * 
+     * @param id the id of the doc to replace
+     * @param partitionKey the partition key value of the doc (null if the collection is not partitioned)
+     * @param doc the new content of the doc
+     * @param ifMatchETag the ETag the stored document must still have (null to replace unconditionally)
+     * @param onResult what to do when a result is observed
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void replace( final String id, final String partitionKey, final Object doc, final String ifMatchETag, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Read a document, apply a modification and write it back, retrying if another writer gets there first.
+     * 
+     * The current document is read from the database (never from the cache) and passed to the modifier, 
+     * which returns the new content of the document: a POJO, a Map or a {@link Document}. The write is 
+     * conditional on the ETag that was read. If it is rejected because the document changed in the meantime, 
+     * the whole cycle is repeated after a short randomised back off, so the modifier must be free of side 
+     * effects and may be called several times. onError fires if the document still cannot be written after 
+     * several attempts.
+     * 
+     * If the document does not exist the modifier is passed null, and a returned document is created. 
+     * If the modifier returns null nothing is written, onResult is not called and onComplete fires.
+     * 
+     * @param id the id of the doc
+     * @param partitionKey the partition key value of the doc (null if the collection is not partitioned)
+     * @param modifier function from the current document (or null) to the new content (or null for no write)
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void readModifyWrite( final String id, final String partitionKey, final Function<Document, Object> modifier, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Read a document, apply a modification and write it back, retrying if another writer gets there first.
+     * Otherwise behaves as {@link #readModifyWrite(String, String, Function, OnError, OnComplete)}.
+     * 
+     * @param id the id of the doc
+     * @param partitionKey the partition key value of the doc (null if the collection is not partitioned)
+     * @param modifier function from the current document (or null) to the new content (or null for no write)
+     * @param onResult what to do with the document as written
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void readModifyWrite( final String id, final String partitionKey, final Function<Document, Object> modifier, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
     /**
      * Perform multiple insert/update operation
      * 
+     * The number of writes in flight is bounded by {@link #setMaxConcurrency(int)}. Each document
+     * is reported individually: onError fires with a {@link BulkOperationException} for every document
+     * that fails, and the remaining documents carry on regardless. onComplete fires once, after every 
+     * document has been processed. Actions may be invoked concurrently.
+     * 
      * @param docs the list of docs to insert/update
-     * @param onError what to do if an error occurs
+     * @param onError what to do for each document that fails
      * @param onComplete what to do when the call completes
      */
     void multiUpsert( final List<? extends Object> docs, final OnError onError, final OnComplete onComplete );
@@ -75,13 +209,130 @@ public interface Statement {
     /**
      * Perform multiple insert/update operation
      * 
+     * The number of writes in flight is bounded by {@link #setMaxConcurrency(int)}. Each document
+     * is reported individually: onResult fires for every document written and onError fires with a 
+     * {@link BulkOperationException} for every document that fails. onComplete fires once, after every 
+     * document has been processed. Actions may be invoked concurrently.
+     * 
      * @param docs the list of docs to insert/update
-     * @param onResult what to do when a result is observed
-     * @param onError what to do if an error occurs
+     * @param onResult what to do for each document written
+     * @param onError what to do for each document that fails
      * @param onComplete what to do when the call completes
      */
     void multiUpsert( final List<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete );
     
+    /**
+     * Perform multiple insert/update operation, pulling documents lazily from an iterator.
+     * 
+     * Documents are only pulled from the iterator as write capacity becomes available, so memory 
+     * use is independent of the number of documents. The iterator is consumed from the client's 
+     * I/O threads, one thread at a time. Otherwise behaves as {@link #multiUpsert(List, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Iterator<? extends Object> docs, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation, pulling documents lazily from an iterator.
+     * 
+     * Documents are only pulled from the iterator as write capacity becomes available, so memory 
+     * use is independent of the number of documents. The iterator is consumed from the client's 
+     * I/O threads, one thread at a time. Otherwise behaves as {@link #multiUpsert(List, OnResult, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onResult what to do for each document written
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Iterator<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation, pulling documents lazily from a stream.
+     * 
+     * Documents are only pulled from the stream as write capacity becomes available, so memory 
+     * use is independent of the number of documents. The stream is closed once the operation has 
+     * finished with it, whether it completed, failed or timed out.
+     * Otherwise behaves as {@link #multiUpsert(List, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Stream<? extends Object> docs, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation, pulling documents lazily from a stream.
+     * 
+     * Documents are only pulled from the stream as write capacity becomes available, so memory 
+     * use is independent of the number of documents. The stream is closed once the operation has 
+     * finished with it, whether it completed, failed or timed out.
+     * Otherwise behaves as {@link #multiUpsert(List, OnResult, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onResult what to do for each document written
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Stream<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation on the documents emitted by an Observable.
+     * 
+     * Documents are requested from the Observable as write capacity becomes available. The Observable 
+     * must honour backpressure for memory use to stay bounded. If the Observable errors, onError fires 
+     * with that error and onComplete fires once the writes already in flight have finished.
+     * Otherwise behaves as {@link #multiUpsert(List, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Observable<? extends Object> docs, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation on the documents emitted by an Observable.
+     * 
+     * Documents are requested from the Observable as write capacity becomes available. The Observable 
+     * must honour backpressure for memory use to stay bounded. If the Observable errors, onError fires 
+     * with that error and onComplete fires once the writes already in flight have finished.
+     * Otherwise behaves as {@link #multiUpsert(List, OnResult, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onResult what to do for each document written
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Observable<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation on the documents emitted by a Reactive Streams Publisher.
+     * 
+     * Documents are requested from the Publisher as write capacity becomes available, so a backpressured 
+     * pipeline (e.g. a Reactor Flux) stays backpressured through the writes. Otherwise behaves as 
+     * {@link #multiUpsert(Observable, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Publisher<? extends Object> docs, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform multiple insert/update operation on the documents emitted by a Reactive Streams Publisher.
+     * 
+     * Documents are requested from the Publisher as write capacity becomes available, so a backpressured 
+     * pipeline (e.g. a Reactor Flux) stays backpressured through the writes. Otherwise behaves as 
+     * {@link #multiUpsert(Observable, OnResult, OnError, OnComplete)}.
+     * 
+     * @param docs the source of docs to insert/update
+     * @param onResult what to do for each document written
+     * @param onError what to do for each document that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiUpsert( final Publisher<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
     /**
      * Delete a document.
      * 
@@ -120,9 +371,115 @@ public interface Statement {
      * Specify custom actions for paging, error handling and completion actions.
      * 
      * @param docLink the doc
-     * @param onResult what to do when a result is observed
+     * @param onResult what to do once the document is deleted (with a <code>null</code> result, as a delete returns no document)
      * @param onError what to do if an error occurs
      * @param onComplete what to do when the call completes
      */
     void delete( final Document docLink, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Delete a document by id and partition key.
+     * 
+     * The document is addressed directly so, unlike {@link #delete(Document)}, there is no need 
+     * to select the document first to obtain its self-link.
+     * 
+     * Deleting a document that does not exist is not an error: onComplete fires without onResult, 
+     * and nothing is logged. The same applies to every delete overload and to {@link #deleteAsync(String, String)}, 
+     * but not to {@link #multiDelete(List, OnError, OnComplete)}, which reports a missing document to onError.
+     * 
+     * WARNING: This API provides the caller no control over error handling or completion actions.
+     * Default logging and blocking behaviour will apply.
+     * 
+     * @param id the id of the document to delete
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     */
+    void delete( final String id, final String partitionKey );
+    
+    /**
+     * Delete a document by id and partition key.
+     * 
+     * Assumes default behaviour for result and completion with a custom error handler.
+     * 
+     * @param id the id of the document to delete
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * @param onError what to do if an error occurs
+     */
+    void delete( final String id, final String partitionKey, final OnError onError );
+    
+    /**
+     * Delete a document by id and partition key.
+     * 
+     * Assumes default behaviour for result with a custom error handler and completion action.
+     * 
+     * @param id the id of the document to delete
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void delete( final String id, final String partitionKey, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Delete a document by id and partition key.
+     * 
+     * Specify custom actions for result, error handling and completion actions.
+     * 
+     * @param id the id of the document to delete
+     * @param partitionKey the partition key of the document (null if the collection is not partitioned)
+     * @param onResult what to do once the document is deleted (with a <code>null</code> result, as a delete returns no document)
+     * @param onError what to do if an error occurs
+     * @param onComplete what to do when the call completes
+     */
+    void delete( final String id, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Delete multiple documents by id and partition key.
+     * 
+     * Uses the same bounded, adaptive concurrency as {@link #multiUpsert(List, OnError, OnComplete)}. 
+     * onError fires with a {@link BulkOperationException} (whose document is the failed {@link DocumentKey}) 
+     * for every delete that fails, including a document that does not exist, and onComplete fires once all 
+     * deletes have been processed.
+     * 
+     * @param keys the keys of the docs to delete
+     * @param onError what to do for each delete that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiDelete( final List<DocumentKey> keys, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Delete multiple documents by id and partition key.
+     * 
+     * Uses the same bounded, adaptive concurrency as {@link #multiUpsert(List, OnResult, OnError, OnComplete)}. 
+     * onResult fires (with a <code>null</code> result) for every document deleted, onError fires with a 
+     * {@link BulkOperationException} (whose document is the failed {@link DocumentKey}) for every delete 
+     * that fails, and onComplete fires once all deletes have been processed.
+     * 
+     * @param keys the keys of the docs to delete
+     * @param onResult what to do for each document deleted
+     * @param onError what to do for each delete that fails
+     * @param onComplete what to do when the call completes
+     */
+    void multiDelete( final List<DocumentKey> keys, final OnResult onResult, final OnError onError, final OnComplete onComplete );
+    
+    /**
+     * Perform an insert/update operation, returning a future rather than taking callbacks.
+     * Never blocks, regardless of {@link #setBlocking(boolean)}.
+     * 
+     * @param doc the doc
+     * 
+     * @return CompletableFuture of the document as written and the request charge, 
+     * completed exceptionally if the write fails
+     */
+    CompletableFuture<WriteResult> upsertAsync( final Object doc );
+    
+    /**
+     * Delete a document by id and partition key, returning a future rather than taking callbacks.
+     * Never blocks, regardless of {@link #setBlocking(boolean)}.
+     * 
+     * @param id the id of the doc to delete
+     * @param partitionKey the partition key value of the doc (null if the collection is not partitioned)
+     * 
+     * @return CompletableFuture of the request charge (the document is always null), 
+     * completed exceptionally if the delete fails. A document that does not exist is not a failure.
+     */
+    CompletableFuture<WriteResult> deleteAsync( final String id, final String partitionKey );
 }
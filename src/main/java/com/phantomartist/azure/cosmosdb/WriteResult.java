@@ -0,0 +1,49 @@
+package com.phantomartist.azure.cosmosdb;
+
+/**
+ * Title: WriteResult
+ *
+ * Description: The outcome of a single document write
+ */
+public final class WriteResult {
+
+    private final Document document;
+    private final double requestCharge;
+
+    /**
+     * Constructor
+     *
+     * @param document the document as written (null for a delete)
+     * @param requestCharge the request units the write cost
+     */
+    public WriteResult( final Document document, final double requestCharge ) {
+        this.document = document;
+        this.requestCharge = requestCharge;
+    }
+
+    /**
+     * Get the document as stored by the database, including its new ETag
+     *
+     * @return Document the document, or null for a delete
+     */
+    public Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Get the request units (RU) the write cost
+     *
+     * @return double the request charge
+     */
+    public double getRequestCharge() {
+        return requestCharge;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString() {
+        return "[document=" + ( document == null ? null : document.getId() ) + ", requestCharge=" + requestCharge + "]";
+    }
+}
@@ -2,14 +2,193 @@ package com.phantomartist.azure.cosmosdb.impl;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.MetricsListener;
+import com.phantomartist.azure.cosmosdb.OperationType;
+
+import rx.Observable;
 
 /**
  * Title: AbstractDBInteraction
  *
  * Description: Abstract methods for CosmosDB interaction classes
+ * 
+ * Blocking calls hand the result from the client's I/O thread to the waiting thread with a 
+ * CountDownLatch, which parks the waiter through LockSupport and never holds a monitor. On Java 21 
+ * a virtual thread waiting for a blocking call is therefore unmounted from its carrier thread for 
+ * the duration, so blocking callers can be scaled with virtual threads rather than a thread pool.
+ * Code on the blocking path must not wait inside a synchronized block, which would pin the carrier.
+ * 
+ * Every operation runs against a deadline (see {@link #withDeadline(Observable, Supplier)}). When it 
+ * expires the operation is unsubscribed, so no more pages are fetched or RU spent, and OnError fires 
+ * with a {@link DBTimeoutException}. A blocking caller is released by that OnError, so the wait on 
+ * the latch is only a backstop for callbacks that never return.
  */
 public abstract class AbstractDBInteraction {
 
+    protected static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis( 60 );
+    
+    private static final long AWAIT_GRACE_MILLIS = TimeUnit.SECONDS.toMillis( 5 );
+    
+    private long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+    private MetricsListener metricsListener;
+    private RateLimiter rateLimiter;
+    private LaneScheduler scheduler;
+    private ThrottleRetry throttleRetry;
+    
+    /**
+     * Set how long a blocking call waits for its result
+     * 
+     * @param timeoutMillis the timeout in milliseconds, must be positive
+     */
+    protected void setTimeoutMillis( final long timeoutMillis ) {
+        if ( timeoutMillis <= 0 ) {
+            throw new IllegalArgumentException( "Timeout must be positive" );
+        }
+        this.timeoutMillis = timeoutMillis;
+    }
+    
+    /**
+     * @return long how long a blocking call waits for its result, in milliseconds
+     */
+    protected long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * Set the listener that operations are reported to
+     * 
+     * @param metricsListener the listener (null if operations are not measured)
+     */
+    protected void setMetricsListener( final MetricsListener metricsListener ) {
+        this.metricsListener = metricsListener;
+    }
+    
+    /**
+     * Set the limiter that paces operations to the RU/s budget
+     * 
+     * @param rateLimiter the limiter (null if operations are not paced)
+     */
+    protected void setRateLimiter( final RateLimiter rateLimiter ) {
+        this.rateLimiter = rateLimiter;
+    }
+    
+    /**
+     * Set the scheduler that limits the requests of each lane in flight
+     * 
+     * @param scheduler the scheduler (null if requests are not scheduled)
+     */
+    protected void setScheduler( final LaneScheduler scheduler ) {
+        this.scheduler = scheduler;
+    }
+    
+    /**
+     * Set the retries of throttled requests made by this library
+     * 
+     * @param throttleRetry the retries (null if the Azure client retries throttled requests)
+     */
+    protected void setThrottleRetry( final ThrottleRetry throttleRetry ) {
+        this.throttleRetry = throttleRetry;
+    }
+    
+    /**
+     * @return ThrottleRetry the retries of throttled requests made by this library, or null if the Azure client retries them
+     */
+    protected ThrottleRetry getThrottleRetry() {
+        return throttleRetry;
+    }
+    
+    /**
+     * Pace an operation to the RU/s budget of its collection, if requests are paced, then send it once 
+     * its lane has room, if requests are scheduled. An operation waiting for budget does not take up 
+     * a place in its lane. If throttled requests are retried by this library, a throttled operation is 
+     * paced and sent again.
+     * 
+     * @param request the operation
+     * @param collectionLink the collection operated on
+     * @param costKey identifies the kind of operation for learning its cost
+     * @param lane the lane of the operation
+     * @param chargeOf gets the RU charge of a response
+     * 
+     * @return Observable the operation, sent once the budget and lane allow
+     */
+    protected <T> Observable<T> pace( final Observable<T> request, final String collectionLink, final String costKey, final Lane lane,
+            final ToDoubleFunction<T> chargeOf ) {
+        Observable<T> paced = paceAttempt( request, collectionLink, costKey, lane, chargeOf );
+        return throttleRetry == null ? 
+            paced : 
+            throttleRetry.apply( paced, false );
+    }
+    
+    /**
+     * Pace an operation as {@link #pace(Observable, String, String, Lane, ToDoubleFunction)} does, but without 
+     * retrying it if throttled, for callers that retry throttled requests themselves (see {@link BulkExecutor}).
+     * 
+     * @param request the operation
+     * @param collectionLink the collection operated on
+     * @param costKey identifies the kind of operation for learning its cost
+     * @param lane the lane of the operation
+     * @param chargeOf gets the RU charge of a response
+     * 
+     * @return Observable the operation, sent once the budget and lane allow
+     */
+    protected <T> Observable<T> paceAttempt( final Observable<T> request, final String collectionLink, final String costKey, final Lane lane,
+            final ToDoubleFunction<T> chargeOf ) {
+        Observable<T> scheduled = scheduler == null ? 
+            request : 
+            scheduler.schedule( lane, request );
+        return rateLimiter == null ? 
+            scheduled : 
+            rateLimiter.pace( collectionLink, costKey, lane, scheduled, chargeOf );
+    }
+    
+    /**
+     * Pace a paged operation, such as a query, as {@link #pace(Observable, String, String, Lane, ToDoubleFunction)} 
+     * does, except that it takes a place in its lane only while a batch of pages is fetched rather than for its whole life.
+     * 
+     * @param pages the pages of the operation, which must honour backpressure
+     * @param collectionLink the collection operated on
+     * @param costKey identifies the kind of operation for learning its cost
+     * @param lane the lane of the operation
+     * @param chargeOf gets the RU charge of a page
+     * @param pagesPerBatch the number of pages the operation fetches at once
+     * 
+     * @return Observable the pages, each batch fetched once the budget and lane allow
+     */
+    protected <T> Observable<T> pacePages( final Observable<T> pages, final String collectionLink, final String costKey, final Lane lane,
+            final ToDoubleFunction<T> chargeOf, final IntSupplier pagesPerBatch ) {
+        Observable<T> scheduled = scheduler == null ? 
+            pages : 
+            scheduler.schedulePages( lane, pages, pagesPerBatch );
+        return rateLimiter == null ? 
+            scheduled : 
+            rateLimiter.pace( collectionLink, costKey, lane, scheduled, chargeOf );
+    }
+    
+    /**
+     * @return MetricsListener the listener that operations are reported to, or null if operations are not measured
+     */
+    protected MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+    
+    /**
+     * Start measuring an operation
+     * 
+     * @param type the type of operation
+     * @param collectionLink the collection operated on
+     * 
+     * @return OperationRecorder the recorder for the operation, which ignores everything if no listener is registered
+     */
+    protected OperationRecorder startOperation( final OperationType type, final String collectionLink ) {
+        return OperationRecorder.start( metricsListener, type, collectionLink );
+    }
+
     /**
      * Perform a countdown if the latch is not null
      * 
@@ -22,18 +201,49 @@ public abstract class AbstractDBInteraction {
     }
     
     /**
-     * Await the latch completion
+     * Cancel an operation if it has not terminated by the deadline. The deadline runs from 
+     * subscription and covers the whole operation, not each page. On expiry the operation is 
+     * unsubscribed and a {@link DBTimeoutException} is emitted in its place.
+     * 
+     * @param operation the operation
+     * @param description describes the operation, only called if it times out
+     * 
+     * @return Observable the operation with the deadline applied
+     */
+    protected <T> Observable<T> withDeadline( final Observable<T> operation, final Supplier<String> description ) {
+        
+        final long timeout = timeoutMillis;
+        return Observable.defer( () -> {
+            
+            final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos( timeout );
+            return operation.timeout( 
+                () -> Observable.timer( timeout, TimeUnit.MILLISECONDS ), 
+                item -> Observable.timer( deadline - System.nanoTime(), TimeUnit.NANOSECONDS ), // Time left, not a fresh timeout per item
+                Observable.defer( () -> Observable.<T>error( new DBTimeoutException( description.get(), timeout ) ) ) );
+        });
+    }
+    
+    /**
+     * Await the latch completion. The operation's deadline normally releases the latch through 
+     * OnError; a short grace period beyond it allows for that before giving up.
      * 
      * @param latch the latch
+     * 
+     * @throws DBTimeoutException if the latch is not released in time
      */
     protected void await( final CountDownLatch latch ) {
         if ( latch == null ) {
             return;
         }
+        boolean isReleased;
         try {
-            latch.await( 60, TimeUnit.MINUTES ); // TODO: Should this be configurable? Default 1hr timeout
+            isReleased = latch.await( timeoutMillis + AWAIT_GRACE_MILLIS, TimeUnit.MILLISECONDS );
         } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             throw new RuntimeException("Interrupted while awaiting latch countdown",e);
         }
+        if ( !isReleased ) {
+            throw new DBTimeoutException( "await of result", timeoutMillis );
+        }
     }
 }
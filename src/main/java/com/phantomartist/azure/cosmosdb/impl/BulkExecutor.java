@@ -0,0 +1,409 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.cosmosdb.ResourceResponse;
+import com.phantomartist.azure.cosmosdb.BulkOperationException;
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.results.OnComplete;
+import com.phantomartist.azure.cosmosdb.results.OnError;
+import com.phantomartist.azure.cosmosdb.results.OnResult;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.Subscription;
+import rx.functions.Func1;
+
+/**
+ * Title: BulkExecutor
+ *
+ * Description: Drives a bulk write over a source of documents while bounding the number of requests in flight.
+ *
+ * Documents are pulled from the source a chunk at a time, so only the current chunk plus the in-flight writes
+ * are ever held in memory. Writes are dispatched through an adaptive window: the window starts small and grows
+ * while writes succeed (doubling per round trip until the first throttle, then one slot per round trip), and
+ * halves whenever the service throttles a write because the provisioned RU/s is exhausted (HTTP 429). Throttled
+ * documents are re-queued after the retry-after interval suggested by the service. The window only sees the
+ * throttles the Azure client gives up on, so clients used for bulk operations should retry throttled requests
+ * themselves (see {@link com.phantomartist.azure.cosmosdb.ClientOptions#setClientSideThrottleRetries(boolean)}),
+ * which leaves every throttle to this executor.
+ *
+ * Every document is reported individually: OnResult fires for each successful write and OnError fires with a
+ * {@link BulkOperationException} for each failed one. OnComplete fires once, after every document has been
+ * processed. Callbacks may be invoked concurrently from the client's I/O threads.
+ *
+ * If the bulk operation has not finished within its timeout it is cancelled: the source is unsubscribed and
+ * documents not yet sent are dropped. Writes already in flight are allowed to finish and are reported as usual,
+ * then OnError fires with a {@link DBTimeoutException} before OnComplete.
+ *
+ * @param <T> the type of the source elements (e.g. documents to upsert, or keys of documents to delete)
+ */
+public class BulkExecutor<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger( BulkExecutor.class );
+    private static final SampledErrorLog WRITE_ERRORS = new SampledErrorLog( LOG );
+
+    private static final int MAX_THROTTLE_RETRIES = 10;
+    private static final long DEFAULT_RETRY_AFTER_MILLIS = 100;
+    private static final int INITIAL_WINDOW = 4;
+
+    private final String operationName;
+    private final Func1<? super T, Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>>> operation;
+    private final OperationRecorder recorder;
+    private final int maxConcurrency;
+    private final int chunkSize;
+    private final boolean isAdaptive;
+    private final long timeoutMillis;
+    private final OnResult onResult;
+    private final OnError onError;
+    private final OnComplete onComplete;
+    private final CountDownLatch latch;
+
+    private final Queue<BulkItem<T>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger delayedRetries = new AtomicInteger();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger window = new AtomicInteger();
+    private final AtomicInteger successesSinceResize = new AtomicInteger();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong throttles = new AtomicLong();
+    private final DoubleAdder totalRU = new DoubleAdder();
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private volatile boolean hasBeenThrottled;
+    private volatile boolean sourceDone;
+    private volatile Throwable sourceError;
+    private volatile DBTimeoutException timeout;
+    private volatile Subscription deadline;
+    private SourceSubscriber source;
+
+    /**
+     * Constructor
+     *
+     * @param operationName name of the operation used in logging (e.g. "upsert")
+     * @param operation builds the write for a single source element
+     * @param recorder records the bulk operation as a whole for metrics
+     * @param maxConcurrency the maximum number of writes in flight at any one time
+     * @param chunkSize the number of documents to pull from the source at a time
+     * @param isAdaptive if true, the window adapts to throttling, otherwise it is fixed at maxConcurrency
+     * @param timeoutMillis how long the whole bulk operation may take before it is cancelled
+     * @param onResult action to perform for each successful write
+     * @param onError action to perform for each failed write
+     * @param onComplete action to perform when all writes are complete
+     * @param latch the latch (null if async execution)
+     */
+    public BulkExecutor(
+        final String operationName,
+        final Func1<? super T, Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>>> operation,
+        final OperationRecorder recorder,
+        final int maxConcurrency,
+        final int chunkSize,
+        final boolean isAdaptive,
+        final long timeoutMillis,
+        final OnResult onResult,
+        final OnError onError,
+        final OnComplete onComplete,
+        final CountDownLatch latch ) {
+
+        this.operationName = operationName;
+        this.operation = operation;
+        this.recorder = recorder;
+        this.maxConcurrency = maxConcurrency;
+        this.chunkSize = chunkSize;
+        this.isAdaptive = isAdaptive;
+        this.timeoutMillis = timeoutMillis;
+        this.onResult = onResult;
+        this.onError = onError;
+        this.onComplete = onComplete;
+        this.latch = latch;
+
+        window.set( isAdaptive ? Math.min( INITIAL_WINDOW, maxConcurrency ) : maxConcurrency );
+    }
+
+    /**
+     * Start pulling documents from the source. Returns immediately; completion is signalled
+     * through OnComplete and the latch.
+     *
+     * @param docs the source of documents, which must honour backpressure
+     */
+    public void execute( final Observable<? extends T> docs ) {
+
+        source = new SourceSubscriber();
+        deadline = Observable.timer( timeoutMillis, TimeUnit.MILLISECONDS ).subscribe( t -> cancel() );
+        docs.subscribe( source );
+        drain();
+    }
+
+    /**
+     * Dispatch as many pending documents as the window allows, top up the pending queue from the
+     * source and detect completion. Only one thread runs the loop at a time; calls made while
+     * another thread is draining are picked up by that thread before it exits.
+     */
+    private void drain() {
+
+        if ( wip.getAndIncrement() != 0 ) {
+            return;
+        }
+
+        int missed = 1;
+        for (;;) {
+
+            if ( timeout != null ) {
+                pending.clear(); // Cancelled, so nothing more is sent
+            }
+
+            while ( inFlight.get() < window.get() ) {
+                BulkItem<T> item = pending.poll();
+                if ( item == null ) {
+                    break;
+                }
+                dispatch( item );
+            }
+
+            // Only ask the source for the next chunk once the current one has been dispatched
+            if ( !sourceDone && source != null && pending.isEmpty() && outstanding.get() == 0 ) {
+                outstanding.set( chunkSize );
+                source.requestMore( chunkSize );
+            }
+
+            // Order of reads matters: each counter is decremented only after the next one is updated
+            if ( sourceDone
+                 && inFlight.get() == 0
+                 && delayedRetries.get() == 0
+                 && pending.isEmpty() ) {
+                finish();
+            }
+
+            missed = wip.addAndGet( -missed );
+            if ( missed == 0 ) {
+                break;
+            }
+        }
+    }
+
+    private void dispatch( final BulkItem<T> item ) {
+
+        inFlight.incrementAndGet();
+
+        Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> write;
+        try {
+            write = operation.call( item.doc );
+        } catch ( RuntimeException e ) {
+            onFailure( item, e ); // e.g. a document the client cannot serialise
+            return;
+        }
+
+        write.subscribe(
+            rr -> {
+                onSuccess( rr );
+            }, e -> {
+                onFailure( item, e );
+            });
+    }
+
+    private void onSuccess( final ResourceResponse<com.microsoft.azure.cosmosdb.Document> rr ) {
+
+        succeeded.incrementAndGet();
+        totalRU.add( rr.getRequestCharge() );
+        recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+        recorder.items( 1 );
+        grow();
+        inFlight.decrementAndGet();
+
+        try {
+            if ( onResult != null ) {
+                onResult.onResult( rr.getResource() == null ? null : DocumentUtil.wrap( rr.getResource() ) );
+            }
+        } catch ( RuntimeException e ) {
+            LOG.error( "OnResult action failed during bulk {}", operationName, e );
+        } finally {
+            drain();
+        }
+    }
+
+    private void onFailure( final BulkItem<T> item, final Throwable e ) {
+
+        if ( ExceptionUtil.isStatus( e, ExceptionUtil.THROTTLED ) && item.attempts < MAX_THROTTLE_RETRIES ) {
+
+            item.attempts++;
+            throttles.incrementAndGet();
+            recorder.retries( 1 );
+            shrink();
+
+            delayedRetries.incrementAndGet();
+            inFlight.decrementAndGet();
+            Observable.timer( ExceptionUtil.getRetryAfterMillis( e, DEFAULT_RETRY_AFTER_MILLIS ), TimeUnit.MILLISECONDS ).subscribe( t -> {
+                pending.offer( item );
+                delayedRetries.decrementAndGet();
+                drain();
+            });
+            return;
+        }
+
+        failed.incrementAndGet();
+        inFlight.decrementAndGet();
+
+        try {
+            WRITE_ERRORS.error( "Bulk {} failed for doc [{}]", operationName, item.doc, e );
+            if ( onError != null ) {
+                onError.onError( new BulkOperationException( item.doc, e ) );
+            }
+        } catch ( RuntimeException re ) {
+            LOG.error( "OnError action failed during bulk {}", operationName, re );
+        } finally {
+            drain();
+        }
+    }
+
+    /**
+     * Stop sending documents once the timeout has expired. Writes in flight are left to finish.
+     */
+    private void cancel() {
+
+        if ( finished.get() ) {
+            return;
+        }
+        LOG.warn( "Bulk {} timed out after [{}ms], cancelling remaining docs", operationName, timeoutMillis );
+        timeout = new DBTimeoutException( "bulk " + operationName, timeoutMillis );
+        source.unsubscribe();
+        sourceDone = true;
+        drain();
+    }
+
+    private void finish() {
+
+        if ( !finished.compareAndSet( false, true ) ) {
+            return;
+        }
+
+        Subscription timer = deadline;
+        if ( timer != null ) {
+            timer.unsubscribe();
+        }
+
+        if ( timeout != null || sourceError != null ) {
+            recorder.fail( timeout != null ? timeout : sourceError );
+        } else {
+            recorder.complete();
+        }
+
+        try {
+            if ( LOG.isDebugEnabled() ) {
+                long total = succeeded.get() + failed.get();
+                double ru = totalRU.sum();
+                LOG.debug( "Bulk {} [{}] docs, succeeded [{}] failed [{}] throttled [{}] average cost [{}] total cost [{}]", 
+                    operationName, total, succeeded.get(), failed.get(), throttles.get(), succeeded.get() == 0 ? 0 : ru / succeeded.get(), ru );
+            }
+            if ( sourceError != null ) {
+                LOG.error( "Source of documents for bulk {} failed", operationName, sourceError );
+                if ( onError != null ) {
+                    onError.onError( sourceError );
+                }
+            }
+            if ( timeout != null && onError != null ) {
+                onError.onError( timeout );
+            }
+            if ( onComplete != null ) {
+                onComplete.onComplete();
+            }
+        } finally {
+            if ( latch != null ) {
+                latch.countDown();  // Must call to prevent extended blocking
+            }
+        }
+    }
+
+    /**
+     * Additive increase: grow the window once a full window of writes has succeeded, or by one
+     * slot per success (i.e. doubling per round trip) until the first throttle is seen.
+     */
+    private void grow() {
+
+        if ( !isAdaptive ) {
+            return;
+        }
+
+        int current = window.get();
+        if ( current >= maxConcurrency ) {
+            return;
+        }
+        if ( !hasBeenThrottled || successesSinceResize.incrementAndGet() >= current ) {
+            successesSinceResize.set( 0 );
+            window.compareAndSet( current, current + 1 );
+        }
+    }
+
+    /**
+     * Multiplicative decrease: halve the window on a throttled write.
+     */
+    private void shrink() {
+
+        if ( !isAdaptive ) {
+            return;
+        }
+
+        hasBeenThrottled = true;
+        successesSinceResize.set( 0 );
+        window.updateAndGet( w -> Math.max( 1, w / 2 ) );
+    }
+
+    /**
+     * A document and the number of times it has been throttled.
+     */
+    private static final class BulkItem<T> {
+
+        private final T doc;
+        private int attempts;
+
+        BulkItem( final T doc ) {
+            this.doc = doc;
+        }
+    }
+
+    /**
+     * Pulls documents from the source only when asked to by {@link BulkExecutor#drain()}.
+     */
+    private final class SourceSubscriber extends Subscriber<T> {
+
+        @Override
+        public void onStart() {
+            request( 0 ); // Nothing until drain() asks for the first chunk
+        }
+
+        void requestMore( final long n ) {
+            request( n );
+        }
+
+        @Override
+        public void onNext( final T doc ) {
+            pending.offer( new BulkItem<>( doc ) );
+            outstanding.decrementAndGet();
+            drain();
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            sourceError = e;
+            sourceDone = true;
+            drain();
+        }
+
+        @Override
+        public void onCompleted() {
+            sourceDone = true;
+            drain();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import com.phantomartist.azure.cosmosdb.ClientOptions;
+import com.phantomartist.azure.cosmosdb.MetricsListener;
+
+/**
+ * Title: ClientContext
+ *
+ * Description: Per-client settings and shared state, handed from the client to each connection 
+ * and from the connection to each query, statement and reader it creates.
+ */
+public class ClientContext {
+
+    /**
+     * Context for interactions created without a client: no cache and the default timeout.
+     */
+    public static final ClientContext DEFAULT = new ClientContext( null, AbstractDBInteraction.DEFAULT_TIMEOUT_MILLIS );
+
+    private final DocumentCache cache;
+    private final long timeoutMillis;
+    private final MetricsListener metricsListener;
+    private final QueryStatsRegistry queryStats;
+    private final RateLimiter rateLimiter;
+    private final LaneScheduler scheduler;
+    private final ThrottleRetry throttleRetry;
+    private final ConcurrentMap<String, Integer> partitionCounts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param options the client options
+     */
+    public ClientContext( final ClientOptions options ) {
+        this( 
+            options.getCache() == null ? 
+                null : 
+                new DocumentCache( options.getCache() ),
+            options.getTimeoutMillis(),
+            options.getMetricsListener(),
+            options.getMaxTrackedQueries() == 0 ? 
+                null : 
+                new QueryStatsRegistry( options.getMaxTrackedQueries() ),
+            options.getRateLimit() == null ? 
+                null : 
+                new RateLimiter( options.getRateLimit(), options.getScheduler() ),
+            options.getScheduler() == null ? 
+                null : 
+                new LaneScheduler( options.getScheduler() ),
+            isClientSideThrottleRetries( options ) ? 
+                new ThrottleRetry( options.getMaxRetryAttemptsOnThrottledRequests(), TimeUnit.SECONDS.toMillis( options.getMaxRetryWaitTimeInSeconds() ) ) : 
+                null );
+    }
+
+    /**
+     * An adaptive rate limit must see every throttle, so throttled requests are then retried by this library.
+     */
+    private static boolean isClientSideThrottleRetries( final ClientOptions options ) {
+        return options.isClientSideThrottleRetries() || 
+            ( options.getRateLimit() != null && options.getRateLimit().isAdaptive() );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cache the client-side document cache (null if caching is not enabled)
+     * @param timeoutMillis the default time a blocking call waits for its result
+     */
+    public ClientContext( final DocumentCache cache, final long timeoutMillis ) {
+        this( cache, timeoutMillis, null, null, null, null, null );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param cache the client-side document cache (null if caching is not enabled)
+     * @param timeoutMillis the default time a blocking call waits for its result
+     * @param metricsListener the listener for operation metrics (null if operations are not measured)
+     * @param queryStats the per-query-shape statistics (null if queries are not tracked)
+     * @param rateLimiter paces requests to the RU/s budget (null if requests are not paced)
+     * @param scheduler limits the requests of each lane in flight (null if requests are not scheduled)
+     * @param throttleRetry retries throttled requests (null if the Azure client retries them)
+     */
+    public ClientContext( final DocumentCache cache, final long timeoutMillis, final MetricsListener metricsListener, final QueryStatsRegistry queryStats,
+            final RateLimiter rateLimiter, final LaneScheduler scheduler, final ThrottleRetry throttleRetry ) {
+        this.cache = cache;
+        this.timeoutMillis = timeoutMillis;
+        this.metricsListener = metricsListener;
+        this.queryStats = queryStats;
+        this.rateLimiter = rateLimiter;
+        this.scheduler = scheduler;
+        this.throttleRetry = throttleRetry;
+    }
+
+    /**
+     * @return DocumentCache the client-side document cache, or null if caching is not enabled
+     */
+    public DocumentCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @return long the default time in milliseconds a blocking call waits for its result
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    /**
+     * @return MetricsListener the listener for operation metrics, or null if operations are not measured
+     */
+    public MetricsListener getMetricsListener() {
+        return metricsListener;
+    }
+
+    /**
+     * @return QueryStatsRegistry the per-query-shape statistics, or null if queries are not tracked
+     */
+    public QueryStatsRegistry getQueryStats() {
+        return queryStats;
+    }
+
+    /**
+     * @return RateLimiter paces requests to the RU/s budget, or null if requests are not paced
+     */
+    public RateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * @return LaneScheduler limits the requests of each lane in flight, or null if requests are not scheduled
+     */
+    public LaneScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return ThrottleRetry retries throttled requests, or null if the Azure client retries them
+     */
+    public ThrottleRetry getThrottleRetry() {
+        return throttleRetry;
+    }
+
+    /**
+     * @param collectionLink the collection link
+     * 
+     * @return Integer the number of partition key ranges last seen for the collection, or null if not yet known
+     */
+    public Integer getPartitionCount( final String collectionLink ) {
+        return partitionCounts.get( collectionLink );
+    }
+
+    /**
+     * Remember the number of partition key ranges of a collection, for adaptive query parallelism.
+     * 
+     * @param collectionLink the collection link
+     * @param count the number of partition key ranges
+     */
+    public void setPartitionCount( final String collectionLink, final int count ) {
+        partitionCounts.put( collectionLink, count );
+    }
+}
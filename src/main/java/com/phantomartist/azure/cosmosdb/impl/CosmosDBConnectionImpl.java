@@ -1,9 +1,18 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
+import java.util.List;
+
 import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
 import com.phantomartist.azure.cosmosdb.Connection;
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentKey;
+import com.phantomartist.azure.cosmosdb.PreparedQuery;
 import com.phantomartist.azure.cosmosdb.Query;
 import com.phantomartist.azure.cosmosdb.Statement;
+import com.phantomartist.azure.cosmosdb.results.OnComplete;
+import com.phantomartist.azure.cosmosdb.results.OnError;
+import com.phantomartist.azure.cosmosdb.results.OnPage;
+import com.phantomartist.azure.cosmosdb.results.OnResult;
 
 /**
  * Title: CosmosDBConnectionImpl
@@ -14,6 +23,8 @@ public class CosmosDBConnectionImpl implements Connection {
 
     private AsyncDocumentClient asyncClient;
     private String collectionLink;
+    private ClientContext context;
+    private DocumentReader reader;
     
     /**
      * Constructor
@@ -23,8 +34,22 @@ public class CosmosDBConnectionImpl implements Connection {
      * @param collection the collection
      */
     public CosmosDBConnectionImpl( final AsyncDocumentClient asyncClient, final String db, final String collection ) {
+        this( asyncClient, db, collection, ClientContext.DEFAULT );
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param asyncClient the document client
+     * @param db the db
+     * @param collection the collection
+     * @param context the settings and shared state of the client
+     */
+    public CosmosDBConnectionImpl( final AsyncDocumentClient asyncClient, final String db, final String collection, final ClientContext context ) {
         this.asyncClient = asyncClient;
+        this.context = context;
         collectionLink = String.format( "/dbs/%s/colls/%s", db, collection );
+        reader = new DocumentReader( asyncClient, collectionLink, context );
     }
     
     /**
@@ -42,7 +67,16 @@ public class CosmosDBConnectionImpl implements Connection {
     @Override
     public Query generateQuery( final String query ) {
         
-        return new QueryImpl( asyncClient, collectionLink, query );
+        return new QueryImpl( asyncClient, collectionLink, query, context );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery prepareQuery( final String query, final String... paramNames ) {
+        
+        return new PreparedQueryImpl( asyncClient, collectionLink, query, paramNames, context );
     }
 
     /**
@@ -51,6 +85,60 @@ public class CosmosDBConnectionImpl implements Connection {
     @Override
     public Statement generateStatement() {
         
-        return new StatementImpl( asyncClient, collectionLink );
-    }    
+        return new StatementImpl( asyncClient, collectionLink, context );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document read( final String id, final String partitionKey ) {
+        
+        return reader.read( id, partitionKey );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void read( final String id, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        
+        reader.read( id, partitionKey, onResult, onError, onComplete, null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document readIfModified( final Document current, final String partitionKey ) {
+        
+        return reader.readIfModified( current, partitionKey );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readIfModified( final Document current, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        
+        reader.readIfModified( current, partitionKey, onResult, onError, onComplete, null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Document> readMany( final List<DocumentKey> keys ) {
+        
+        return reader.readMany( keys );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readMany( final List<DocumentKey> keys, final OnPage onPage, final OnError onError, final OnComplete onComplete ) {
+        
+        reader.readMany( keys, onPage, onError, onComplete, null );
+    }
 }
@@ -1,12 +1,18 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.microsoft.azure.cosmosdb.ConnectionPolicy;
 import com.microsoft.azure.cosmosdb.ConsistencyLevel;
 import com.microsoft.azure.cosmosdb.RetryOptions;
 import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+import com.phantomartist.azure.cosmosdb.CacheStats;
+import com.phantomartist.azure.cosmosdb.ClientOptions;
 import com.phantomartist.azure.cosmosdb.Connection;
 import com.phantomartist.azure.cosmosdb.DBClient;
 import com.phantomartist.azure.cosmosdb.DBClientBuilder;
+import com.phantomartist.azure.cosmosdb.QueryStats;
 
 /**
  * Title: DBClientBuilderImpl
@@ -30,7 +36,7 @@ public class DBClientBuilderImpl implements DBClientBuilder {
     @Override
     public DBClient getDefaultCosmosDBAsyncClient( final String endPoint, final String masterKey ) {
         
-        return new CosmosDBAsyncDocumentClient( endPoint, masterKey );
+        return new CosmosDBAsyncDocumentClient( endPoint, masterKey, new ClientOptions() );
     }
 
     /**
@@ -39,7 +45,18 @@ public class DBClientBuilderImpl implements DBClientBuilder {
     @Override
     public DBClient getCosmosDBAsyncClientWithLimits(String endpoint, String masterKey, int maxRetryAttemptsOnThrottledRequests, int maxRetryWaitTimeInSeconds ) {
         
-        return new CosmosDBAsyncDocumentClient( endpoint, masterKey, maxRetryAttemptsOnThrottledRequests, maxRetryWaitTimeInSeconds );
+        return new CosmosDBAsyncDocumentClient( endpoint, masterKey, new ClientOptions()
+            .setMaxRetryAttemptsOnThrottledRequests( maxRetryAttemptsOnThrottledRequests )
+            .setMaxRetryWaitTimeInSeconds( maxRetryWaitTimeInSeconds ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public DBClient getCosmosDBAsyncClient( final String endpoint, final String masterKey, final ClientOptions options ) {
+        
+        return new CosmosDBAsyncDocumentClient( endpoint, masterKey, options );
     }
 
     private static class CosmosDBAsyncDocumentClient implements DBClient {
@@ -47,15 +64,20 @@ public class DBClientBuilderImpl implements DBClientBuilder {
         private AsyncDocumentClient asyncClient;
         private String endPoint;
         private String masterKey;
+        private ClientContext context;
         
-        CosmosDBAsyncDocumentClient( final String endPoint, final String masterKey, int maxRetryAttemptsOnThrottledRequests, int maxRetryWaitTimeInSeconds ) {
+        CosmosDBAsyncDocumentClient( final String endPoint, final String masterKey, final ClientOptions options ) {
 
             this.endPoint = endPoint;
             this.masterKey = masterKey;
             
+            context = new ClientContext( options );
+            
             RetryOptions ro = new RetryOptions();
-            ro.setMaxRetryAttemptsOnThrottledRequests(maxRetryAttemptsOnThrottledRequests);
-            ro.setMaxRetryWaitTimeInSeconds(maxRetryWaitTimeInSeconds);
+            ro.setMaxRetryAttemptsOnThrottledRequests( context.getThrottleRetry() == null ? 
+                options.getMaxRetryAttemptsOnThrottledRequests() : 
+                0 ); // Retried by ThrottleRetry instead
+            ro.setMaxRetryWaitTimeInSeconds(options.getMaxRetryWaitTimeInSeconds());
             
             ConnectionPolicy cp = new ConnectionPolicy();
             cp.setRetryOptions(ro);
@@ -67,11 +89,6 @@ public class DBClientBuilderImpl implements DBClientBuilder {
                 .withConsistencyLevel( ConsistencyLevel.Session )
                 .build();
         }
-        
-        CosmosDBAsyncDocumentClient( final String endPoint, final String masterKey ) {
-
-            this( endPoint, masterKey, 9, 30 ); // These are the MS Azure defaults
-        }
 
         /**
          * {@inheritDoc}
@@ -97,7 +114,36 @@ public class DBClientBuilderImpl implements DBClientBuilder {
         @Override
         public Connection getConnection( final String db, final String collection ) {
             
-            return new CosmosDBConnectionImpl( asyncClient, db, collection );
+            return new CosmosDBConnectionImpl( asyncClient, db, collection, context );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public CacheStats getCacheStats() {
+            
+            return context.getCache() == null ? null : context.getCache().getStats();
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public List<QueryStats> getTopQueries( final int n, final QueryStats.Order order ) {
+            
+            return context.getQueryStats() == null ? Collections.emptyList() : context.getQueryStats().getTop( n, order );
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void resetQueryStats() {
+            
+            if ( context.getQueryStats() != null ) {
+                context.getQueryStats().reset();
+            }
         }
 
         /**
@@ -0,0 +1,528 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.phantomartist.azure.cosmosdb.CacheConfig;
+import com.phantomartist.azure.cosmosdb.CacheStats;
+import com.phantomartist.azure.cosmosdb.Document;
+
+/**
+ * Title: DocumentCache
+ *
+ * Description: Client-side read-through cache for point reads and query results, shared by all
+ * connections of a client.
+ *
+ * Entries are evicted in least-recently-used order once the entry or byte bound is exceeded, and are
+ * no longer served once their time-to-live expires. If revalidation is enabled, an expired document that
+ * has an ETag is kept so that the next read can revalidate it with a conditional (If-None-Match) request.
+ * A 304 Not Modified response then refreshes the existing entry without transferring or parsing the
+ * document again.
+ *
+ * Point reads are keyed by collection link, id and partition key. Query results are keyed by collection
+ * link, normalised SQL text, parameters and options. Each collection has a write generation that is bumped
+ * by every write made through this client: a write removes the written document's entries and makes every
+ * cached query result for the collection stale. Reads capture the generation before going to the database
+ * and are only cached if no write has happened in the meantime, so a slow read cannot re-populate the cache
+ * with a document that was overwritten while it was in flight.
+ *
+ * Entries are spread over stripes, each with its own lock and its own share of the entry bound, so reads of
+ * different documents rarely wait for each other. Least-recently-used order is kept per stripe, and the byte
+ * bound is kept by evicting from the stripe written to first, then from the others. The size of an entry is
+ * estimated from the response it was read from, or from its parsed tree if that is not known.
+ */
+public class DocumentCache {
+
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+    private static final int MAX_STRIPES = 16;
+    private static final int MIN_STRIPE_ENTRIES = 64;
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final boolean isCachingQueries;
+    private final int maxQueryResultSize;
+    private final boolean isRevalidatingExpired;
+    private final LongSupplier nanoClock;
+
+    private final Stripe[] stripes;
+    private final AtomicLong bytes = new AtomicLong();
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param config the cache configuration
+     */
+    public DocumentCache( final CacheConfig config ) {
+        this( config, System::nanoTime );
+    }
+
+    DocumentCache( final CacheConfig config, final LongSupplier nanoClock ) {
+        this.nanoClock = nanoClock;
+        this.maxBytes = config.getMaxBytes();
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos( config.getTtlMillis() );
+        this.isCachingQueries = config.isCachingQueries();
+        this.maxQueryResultSize = config.getMaxQueryResultSize();
+        this.isRevalidatingExpired = config.isRevalidatingExpired();
+
+        // A power of two, and few enough that each stripe holds a useful share of the entries
+        int count = 1;
+        while ( count < MAX_STRIPES && config.getMaxEntries() / ( count * 2 ) >= MIN_STRIPE_ENTRIES ) {
+            count *= 2;
+        }
+        this.stripes = new Stripe[count];
+        for ( int i = 0; i < count; i++ ) {
+            stripes[i] = new Stripe( ( config.getMaxEntries() + count - 1 ) / count );
+        }
+    }
+
+    /**
+     * @return boolean true if query results should be cached
+     */
+    public boolean isCachingQueries() {
+        return isCachingQueries;
+    }
+
+    /**
+     * @return int the largest query result, in documents, that will be cached
+     */
+    public int getMaxQueryResultSize() {
+        return maxQueryResultSize;
+    }
+
+    /**
+     * Get the current write generation of a collection. Capture this before going to the
+     * database and pass it to the put method when the result arrives.
+     *
+     * @param collectionLink the collection link
+     *
+     * @return long the generation
+     */
+    public long getGeneration( final String collectionLink ) {
+        return generation( collectionLink ).get();
+    }
+
+    /**
+     * Look up a document.
+     *
+     * @param collectionLink the collection link
+     * @param id the document id
+     * @param partitionKey the partition key
+     *
+     * @return Document the cached document, or null on a miss
+     */
+    public Document getDocument( final String collectionLink, final String id, final String partitionKey ) {
+
+        String idKey = idKey( collectionLink, id );
+        Entry entry = stripe( idKey ).get( documentKey( idKey, partitionKey ), -1 );
+        if ( entry == null ) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return (Document) entry.value;
+    }
+
+    /**
+     * Cache a document, unless the collection has been written to since the read started.
+     *
+     * @param collectionLink the collection link
+     * @param partitionKey the partition key the document was read with
+     * @param doc the document
+     * @param generation the generation captured before the read
+     */
+    public void putDocument( final String collectionLink, final String partitionKey, final Document doc, final long generation ) {
+
+        if ( doc == null || generation != getGeneration( collectionLink ) ) {
+            return;
+        }
+        String idKey = idKey( collectionLink, doc.getId() );
+        long size = maxBytes > 0 ? estimateBytes( doc ) : 0;
+        put( stripe( idKey ), documentKey( idKey, partitionKey ), new Entry( doc, idKey, partitionKey, generation, size ) );
+    }
+
+    /**
+     * Look up an expired document that can be revalidated with its ETag. Does not count as a hit or miss.
+     *
+     * @param collectionLink the collection link
+     * @param id the document id
+     * @param partitionKey the partition key
+     *
+     * @return Document the expired document, or null if there isn't one
+     */
+    public Document getExpiredDocument( final String collectionLink, final String id, final String partitionKey ) {
+
+        String idKey = idKey( collectionLink, id );
+        Stripe stripe = stripe( idKey );
+        stripe.lock.lock();
+        try {
+            Entry entry = stripe.entries.get( documentKey( idKey, partitionKey ) );
+            if ( entry == null || !isExpired( entry ) ) {
+                return null;
+            }
+            return (Document) entry.value;
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * Refresh the time-to-live of a document the database has confirmed is unchanged (304 Not Modified),
+     * unless the collection has been written to since the revalidation started.
+     *
+     * @param collectionLink the collection link
+     * @param partitionKey the partition key the document was read with
+     * @param doc the revalidated document
+     * @param generation the generation captured before the revalidation
+     */
+    public void putRevalidatedDocument( final String collectionLink, final String partitionKey, final Document doc, final long generation ) {
+
+        revalidations.increment();
+        putDocument( collectionLink, partitionKey, doc, generation );
+    }
+
+    /**
+     * Look up a query result.
+     *
+     * @param collectionLink the collection link
+     * @param queryKey the normalised query key
+     *
+     * @return List of pages, or null on a miss
+     */
+    @SuppressWarnings( "unchecked" )
+    public List<List<Document>> getQuery( final String collectionLink, final String queryKey ) {
+
+        String key = queryKey( collectionLink, queryKey );
+        Entry entry = stripe( key ).get( key, getGeneration( collectionLink ) );
+        if ( entry == null ) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return (List<List<Document>>) entry.value;
+    }
+
+    /**
+     * Cache a query result, unless the collection has been written to since the query started.
+     * The cache takes ownership of the pages, which must not be modified afterwards.
+     *
+     * @param collectionLink the collection link
+     * @param queryKey the normalised query key
+     * @param pages the pages of results
+     * @param generation the generation captured before the query
+     */
+    public void putQuery( final String collectionLink, final String queryKey, final List<List<Document>> pages, final long generation ) {
+
+        if ( generation != getGeneration( collectionLink ) ) {
+            return;
+        }
+
+        String key = queryKey( collectionLink, queryKey );
+        List<List<Document>> copy = new ArrayList<>( pages.size() );
+        long size = 0;
+        for ( List<Document> page : pages ) {
+            copy.add( Collections.unmodifiableList( page ) );
+            if ( maxBytes > 0 ) {
+                for ( Document doc : page ) {
+                    size += estimateBytes( doc );
+                }
+            }
+        }
+        put( stripe( key ), key, new Entry( Collections.unmodifiableList( copy ), null, null, generation, size ) );
+    }
+
+    /**
+     * Invalidate the entries affected by a write to a document, whatever partition key it was read with.
+     *
+     * @param collectionLink the collection link
+     * @param id the id of the document written
+     */
+    public void invalidate( final String collectionLink, final String id ) {
+
+        generation( collectionLink ).incrementAndGet();
+
+        String idKey = idKey( collectionLink, id );
+        Stripe stripe = stripe( idKey );
+        stripe.lock.lock();
+        try {
+            Set<String> partitionKeys = stripe.partitionKeys.get( idKey );
+            if ( partitionKeys == null ) {
+                return;
+            }
+            for ( String partitionKey : new ArrayList<>( partitionKeys ) ) {
+                String key = documentKey( idKey, partitionKey );
+                stripe.remove( key, stripe.entries.get( key ) );
+                invalidations.increment();
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    /**
+     * @return CacheStats a snapshot of the cache counters
+     */
+    public CacheStats getStats() {
+
+        int size = 0;
+        for ( Stripe stripe : stripes ) {
+            stripe.lock.lock();
+            try {
+                size += stripe.entries.size();
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+        return new CacheStats(
+            hits.sum(),
+            misses.sum(),
+            evictions.sum(),
+            expirations.sum(),
+            invalidations.sum(),
+            revalidations.sum(),
+            size,
+            bytes.get() );
+    }
+
+    private void put( final Stripe stripe, final String key, final Entry entry ) {
+
+        if ( maxBytes > 0 && entry.bytes > maxBytes ) {
+            return; // Would evict everything else and still not fit
+        }
+        stripe.put( key, entry );
+
+        // Over the byte bound, and the stripe written to had nothing older left to give up?
+        for ( int i = 0; i < stripes.length && maxBytes > 0 && bytes.get() > maxBytes; i++ ) {
+            stripes[i].evictOverBytes( entry );
+        }
+    }
+
+    private boolean isExpired( final Entry entry ) {
+        return nanoClock.getAsLong() - entry.expiresAt > 0;
+    }
+
+    private boolean isRevalidatable( final Entry entry ) {
+        return isRevalidatingExpired
+            && entry.value instanceof Document
+            && ( (Document) entry.value ).getETag() != null;
+    }
+
+    private Stripe stripe( final String key ) {
+        int hash = key.hashCode();
+        return stripes[( hash ^ ( hash >>> 16 ) ) & ( stripes.length - 1 )];
+    }
+
+    private AtomicLong generation( final String collectionLink ) {
+        return generations.computeIfAbsent( collectionLink, link -> new AtomicLong() );
+    }
+
+    private static String idKey( final String collectionLink, final String id ) {
+        return "D:" + collectionLink + ":" + id;
+    }
+
+    private static String documentKey( final String idKey, final String partitionKey ) {
+        return idKey + "#" + partitionKey; // Ids cannot contain '#'
+    }
+
+    private static String queryKey( final String collectionLink, final String queryKey ) {
+        return "Q:" + collectionLink + ":" + queryKey;
+    }
+
+    private static long estimateBytes( final Document doc ) {
+
+        if ( !( doc instanceof DocumentImpl ) ) {
+            return ENTRY_OVERHEAD_BYTES;
+        }
+        DocumentImpl impl = (DocumentImpl) doc;
+        return ENTRY_OVERHEAD_BYTES + 2L * ( impl.getResponseBytes() >= 0 ? // UTF-16 chars
+            impl.getResponseBytes() : 
+            estimateChars( impl.getTree() ) );
+    }
+
+    /**
+     * Estimate the length of a tree as JSON text, without producing it.
+     *
+     * @param node the tree
+     *
+     * @return long the estimated number of characters
+     */
+    private static long estimateChars( final JsonNode node ) {
+
+        if ( node.isTextual() ) {
+            return node.textValue().length() + 2;
+        }
+        if ( !node.isContainerNode() ) {
+            return 8;
+        }
+        long chars = 2;
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while ( fields.hasNext() ) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            chars += field.getKey().length() + 4 + estimateChars( field.getValue() );
+        }
+        for ( int i = 0; node.isArray() && i < node.size(); i++ ) {
+            chars += 1 + estimateChars( node.get( i ) );
+        }
+        return chars;
+    }
+
+    /**
+     * Title: Stripe
+     *
+     * Description: A share of the entries, in least-recently-used order, with its own lock and bounds.
+     */
+    private final class Stripe {
+
+        private final int maxEntries;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>( 16, 0.75f, true );
+        private final Map<String, Set<String>> partitionKeys = new HashMap<>(); // By id key, of the documents cached
+
+        Stripe( final int maxEntries ) {
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * Get a live entry, removing it if it has expired or is from an older generation.
+         *
+         * @param key the key
+         * @param minGeneration the oldest acceptable generation, or -1 for any
+         *
+         * @return Entry the entry, or null
+         */
+        private Entry get( final String key, final long minGeneration ) {
+
+            lock.lock();
+            try {
+                Entry entry = entries.get( key );
+                if ( entry == null ) {
+                    return null;
+                }
+                if ( isExpired( entry ) ) {
+                    if ( !isRevalidatable( entry ) ) {
+                        remove( key, entry );
+                        expirations.increment();
+                    }
+                    return null;
+                }
+                if ( minGeneration >= 0 && entry.generation < minGeneration ) {
+                    remove( key, entry );
+                    invalidations.increment();
+                    return null;
+                }
+                return entry;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void put( final String key, final Entry entry ) {
+
+            lock.lock();
+            try {
+                Entry previous = entries.put( key, entry );
+                if ( previous != null ) {
+                    bytes.addAndGet( -previous.bytes );
+                }
+                bytes.addAndGet( entry.bytes );
+                if ( entry.idKey != null ) {
+                    partitionKeys.computeIfAbsent( entry.idKey, idKey -> new HashSet<>( 2 ) ).add( entry.partitionKey );
+                }
+
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                while ( entries.size() > maxEntries && eldest.hasNext() ) {
+                    Entry evicted = eldest.next().getValue();
+                    eldest.remove();
+                    forget( evicted );
+                    evictions.increment();
+                }
+                evictOverBytes( entry );
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Evict the least recently used entries while the cache is over its byte bound.
+         *
+         * @param keep an entry not to evict
+         */
+        private void evictOverBytes( final Entry keep ) {
+
+            lock.lock();
+            try {
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                while ( maxBytes > 0 && bytes.get() > maxBytes && eldest.hasNext() ) {
+                    Entry evicted = eldest.next().getValue();
+                    if ( evicted != keep ) {
+                        eldest.remove();
+                        forget( evicted );
+                        evictions.increment();
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void remove( final String key, final Entry entry ) {
+            entries.remove( key );
+            forget( entry );
+        }
+
+        private void forget( final Entry entry ) {
+
+            bytes.addAndGet( -entry.bytes );
+            if ( entry.idKey == null ) {
+                return;
+            }
+            Set<String> keys = partitionKeys.get( entry.idKey );
+            if ( keys != null && keys.remove( entry.partitionKey ) && keys.isEmpty() ) {
+                partitionKeys.remove( entry.idKey );
+            }
+        }
+    }
+
+    /**
+     * A cached value with its bookkeeping.
+     */
+    private final class Entry {
+
+        private final Object value;
+        private final String idKey;
+        private final String partitionKey;
+        private final long generation;
+        private final long bytes;
+        private final long expiresAt;
+
+        Entry( final Object value, final String idKey, final String partitionKey, final long generation, final long bytes ) {
+            this.value = value;
+            this.idKey = idKey;
+            this.partitionKey = partitionKey;
+            this.generation = generation;
+            this.bytes = bytes;
+            this.expiresAt = nanoClock.getAsLong() + ttlNanos;
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentMapper;
 
 /**
  * Title: DocumentImpl
@@ -10,6 +12,9 @@ import com.phantomartist.azure.cosmosdb.Document;
 public class DocumentImpl implements Document {
 
     private com.microsoft.azure.cosmosdb.Document azureDoc;
+    private volatile String json;
+    private volatile ObjectNode tree;
+    private final long responseBytes;
     
     /**
      * Constructor
@@ -17,10 +22,21 @@ public class DocumentImpl implements Document {
      * @param azureDoc the Azure document
      */
     public DocumentImpl( com.microsoft.azure.cosmosdb.Document azureDoc ) {
+        this( azureDoc, -1 );
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param azureDoc the Azure document
+     * @param responseBytes the size of the response the document was read from, or its share of a page (-1 if unknown)
+     */
+    public DocumentImpl( com.microsoft.azure.cosmosdb.Document azureDoc, long responseBytes ) {
         if ( azureDoc == null ) {
             throw new IllegalArgumentException( "AzureDoc cannot be null" );
         }
         this.azureDoc = azureDoc;
+        this.responseBytes = responseBytes;
     }
     
     /**
@@ -41,13 +57,79 @@ public class DocumentImpl implements Document {
         return azureDoc.getSelfLink();
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getETag() {
+
+        return azureDoc.getETag();
+    }
+    
     /**
      * {@inheritDoc}
      */
     @Override
     public String toJson() {
         
-        return azureDoc.toJson();
+        String result = json;
+        if ( result == null ) {
+            result = azureDoc.toJson();
+            json = result; // Racing threads produce the same JSON, so the last write wins harmlessly
+        }
+        return result;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getString( String path ) {
+        
+        Object value = getField( path );
+        return value == null ? 
+            null : 
+            value.toString();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Long getLong( String path ) {
+        
+        Object value = getField( path );
+        if ( value == null || value instanceof Long ) {
+            return (Long) value;
+        }
+        if ( value instanceof Number ) {
+            return ( (Number) value ).longValue();
+        }
+        try {
+            return Long.valueOf( value.toString() );
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Field [" + path + "] of doc [" + getId() + "] is not a whole number", e );
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Double getDouble( String path ) {
+        
+        Object value = getField( path );
+        if ( value == null || value instanceof Double ) {
+            return (Double) value;
+        }
+        if ( value instanceof Number ) {
+            return ( (Number) value ).doubleValue();
+        }
+        try {
+            return Double.valueOf( value.toString() );
+        } catch ( NumberFormatException e ) {
+            throw new IllegalArgumentException( "Field [" + path + "] of doc [" + getId() + "] is not a number", e );
+        }
     }
 
     /**
@@ -56,7 +138,64 @@ public class DocumentImpl implements Document {
     @Override
     public <T> T toObject( Class<T> c ) {
         
-        return azureDoc.toObject( c );
+        return JacksonDocumentMapper.forClass( c ).map( this );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> T toObject( DocumentMapper<T> mapper ) {
+        
+        return mapper.map( this );
+    }
+
+    /**
+     * Get a scalar field by walking its path over the document's tree.
+     * 
+     * @param path the dotted path of the field
+     * 
+     * @return Object a String, Number or Boolean, or null if the field is missing or null
+     */
+    private Object getField( final String path ) {
+        
+        Object value = JsonFieldReader.read( getTree(), path.split( "\\." ) );
+        return value == JsonFieldReader.MISSING ? 
+            null : 
+            value;
+    }
+
+    /**
+     * Get the document's parsed JSON tree. The Azure document hands out its own property bag, rather than a 
+     * copy, only when asked for exactly ObjectNode (it rejects other JsonNode types), so the tree must not be 
+     * modified.
+     * 
+     * @return ObjectNode the document as a tree
+     */
+    ObjectNode getTree() {
+        
+        ObjectNode result = tree;
+        if ( result == null ) {
+            result = azureDoc.toObject( ObjectNode.class );
+            tree = result; // Racing threads get the same tree, so the last write wins harmlessly
+        }
+        return result;
     }
 
+    /**
+     * @return long the size of the response the document was read from, or its share of a page (-1 if unknown)
+     */
+    long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Get the wrapped Azure document
+     * 
+     * @return Document the Azure document
+     */
+    com.microsoft.azure.cosmosdb.Document getAzureDoc() {
+        
+        return azureDoc;
+    }
 }
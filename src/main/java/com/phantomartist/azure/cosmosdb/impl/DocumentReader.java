@@ -0,0 +1,489 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.microsoft.azure.cosmosdb.AccessCondition;
+import com.microsoft.azure.cosmosdb.AccessConditionType;
+import com.microsoft.azure.cosmosdb.FeedOptions;
+import com.microsoft.azure.cosmosdb.FeedResponse;
+import com.microsoft.azure.cosmosdb.PartitionKey;
+import com.microsoft.azure.cosmosdb.RequestOptions;
+import com.microsoft.azure.cosmosdb.ResourceResponse;
+import com.microsoft.azure.cosmosdb.SqlParameter;
+import com.microsoft.azure.cosmosdb.SqlParameterCollection;
+import com.microsoft.azure.cosmosdb.SqlQuerySpec;
+import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentKey;
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.OperationType;
+import com.phantomartist.azure.cosmosdb.results.OnComplete;
+import com.phantomartist.azure.cosmosdb.results.OnError;
+import com.phantomartist.azure.cosmosdb.results.OnPage;
+import com.phantomartist.azure.cosmosdb.results.OnResult;
+
+import rx.Observable;
+
+/**
+ * Title: DocumentReader
+ *
+ * Description: Performs point reads of single documents by id and partition key.
+ *
+ * A point read goes straight to the document, so it costs a single round trip and roughly 1 RU for
+ * a small document, without the query engine, a SqlQuerySpec or a cross-partition fan-out.
+ * 
+ * Multi-gets group the requested keys by partition key. Small groups are fetched with parallel point 
+ * reads, larger groups with a single-partition <code>IN (...)</code> query per group, and all groups 
+ * are fetched concurrently up to a fixed limit.
+ * 
+ * If the client has a document cache, reads are served from it where possible and populate it otherwise.
+ */
+public class DocumentReader extends AbstractDBInteraction {
+
+    private static final Logger LOG = LoggerFactory.getLogger( DocumentReader.class );
+    private static final SampledErrorLog READ_ERRORS = new SampledErrorLog( LOG );
+    
+    private static final int MAX_POINT_READS_PER_GROUP = 2;  // A point read is ~1 RU, an IN query costs more
+    private static final int MAX_IDS_PER_QUERY = 100;
+    private static final int MAX_CONCURRENCY = 8;
+
+    private AsyncDocumentClient asyncClient;
+    private String collectionLink;
+    private DocumentCache cache;
+
+    /**
+     * Constructor
+     *
+     * @param asyncClient the client
+     * @param collectionLink the collection link that we're reading from
+     * @param context the settings and shared state of the client
+     */
+    public DocumentReader( final AsyncDocumentClient asyncClient, final String collectionLink, final ClientContext context ) {
+        this.asyncClient = asyncClient;
+        this.collectionLink = collectionLink;
+        this.cache = context.getCache();
+        setTimeoutMillis( context.getTimeoutMillis() );
+        setMetricsListener( context.getMetricsListener() );
+        setRateLimiter( context.getRateLimiter() );
+        setScheduler( context.getScheduler() );
+        setThrottleRetry( context.getThrottleRetry() );
+    }
+
+    /**
+     * Read a document, blocking until it arrives.
+     *
+     * @param id the id of the document
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     *
+     * @return Document the document, or null if it does not exist
+     */
+    public Document read( final String id, final String partitionKey ) {
+
+        final AtomicReference<Document> result = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        read( id, partitionKey, result::set, error::set, null, new CountDownLatch( 1 ) );
+
+        if ( error.get() instanceof DBTimeoutException ) {
+            throw (DBTimeoutException) error.get();
+        }
+        if ( error.get() != null ) {
+            throw new RuntimeException( "Unable to read doc [" + id + "]", error.get() );
+        }
+        return result.get();
+    }
+
+    /**
+     * Read a document in either asynchronous or blocking mode.
+     *
+     * @param id the id of the document
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param onResult action to execute on result (the result is null if the document does not exist)
+     * @param onError action to execute on error
+     * @param onComplete action to execute on complete
+     * @param latch the latch (null if async execution)
+     */
+    public void read( final String id, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+
+        OperationRecorder recorder = startOperation( OperationType.READ, collectionLink );
+        subscribe( createRead( id, partitionKey, recorder ), id, partitionKey, recorder, onResult, onError, onComplete, latch );
+    }
+
+    /**
+     * Subscribe to a single document read in either asynchronous or blocking mode.
+     *
+     * @param read the read
+     * @param id the id of the document (for logging)
+     * @param partitionKey the partition key (for logging)
+     * @param recorder records the operation for metrics
+     * @param onResult action to execute on result
+     * @param onError action to execute on error
+     * @param onComplete action to execute on complete
+     * @param latch the latch (null if async execution)
+     */
+    private void subscribe( final Observable<Document> read, final String id, final String partitionKey, final OperationRecorder recorder, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+
+        withDeadline( read, () -> "read of doc [" + id + "]" ).subscribe(
+            doc -> {
+
+                if ( doc != null ) {
+                    recorder.items( 1 );
+                }
+                if ( onResult != null ) {
+                    onResult.onResult( doc );
+                }
+
+            }, e -> {
+
+                try {
+                    recorder.fail( e );
+                    READ_ERRORS.error( "Error during read for doc [{}] with partition key [{}]", id, partitionKey, e );
+                    if ( onError != null ) {
+                        onError.onError( e );
+                    }
+                } finally {
+                    countDown( latch ); // Must call to prevent extended blocking
+                }
+
+            }, () -> {
+
+                try {
+                    recorder.complete();
+                    if ( onComplete != null ) {
+                        onComplete.onComplete();
+                    }
+                } finally {
+                    countDown( latch ); // Must call to prevent extended blocking
+                }
+            });
+        await( latch );
+    }
+
+    /**
+     * Revalidate a document the caller already holds, blocking until the answer arrives.
+     *
+     * @param current the version of the document the caller already has
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     *
+     * @return Document current if unchanged, the new version if changed, or null if it has been deleted
+     */
+    public Document readIfModified( final Document current, final String partitionKey ) {
+
+        final AtomicReference<Document> result = new AtomicReference<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        readIfModified( current, partitionKey, result::set, error::set, null, new CountDownLatch( 1 ) );
+
+        if ( error.get() instanceof DBTimeoutException ) {
+            throw (DBTimeoutException) error.get();
+        }
+        if ( error.get() != null ) {
+            throw new RuntimeException( "Unable to revalidate doc [" + current.getId() + "]", error.get() );
+        }
+        return result.get();
+    }
+
+    /**
+     * Revalidate a document the caller already holds in either asynchronous or blocking mode.
+     *
+     * @param current the version of the document the caller already has
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param onResult action to execute on result (current if unchanged, the new version if changed, or null if deleted)
+     * @param onError action to execute on error
+     * @param onComplete action to execute on complete
+     * @param latch the latch (null if async execution)
+     */
+    public void readIfModified( final Document current, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+
+        OperationRecorder recorder = startOperation( OperationType.READ, collectionLink );
+        subscribe( createConditionalRead( current, partitionKey, recorder ), current.getId(), partitionKey, recorder, onResult, onError, onComplete, latch );
+    }
+
+    /**
+     * Read many documents, blocking until they all arrive.
+     *
+     * @param keys the keys of the documents
+     *
+     * @return List of the documents that exist, in no particular order
+     */
+    public List<Document> readMany( final List<DocumentKey> keys ) {
+
+        final List<Document> results = new ArrayList<>( keys.size() );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        readMany( keys, results::addAll, error::set, null, new CountDownLatch( 1 ) );
+
+        if ( error.get() instanceof DBTimeoutException ) {
+            throw (DBTimeoutException) error.get();
+        }
+        if ( error.get() != null ) {
+            throw new RuntimeException( "Unable to read [" + keys.size() + "] docs", error.get() );
+        }
+        return results;
+    }
+
+    /**
+     * Read many documents in either asynchronous or blocking mode.
+     *
+     * @param keys the keys of the documents
+     * @param onPage action to perform when a group of documents arrives
+     * @param onError action to perform on error
+     * @param onComplete action to perform on complete
+     * @param latch the latch (null if async execution)
+     */
+    public void readMany( final List<DocumentKey> keys, final OnPage onPage, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+
+        if ( onPage == null ) {
+            throw new IllegalArgumentException( "Must implement OnPage for result set handling" );
+        }
+
+        final OperationRecorder recorder = startOperation( OperationType.READ_MANY, collectionLink );
+        withDeadline( createReadMany( keys, recorder ), () -> "read of [" + keys.size() + "] docs" ).subscribe(
+            page -> {
+
+                recorder.items( page.size() );
+                onPage.onPage( page );
+
+            }, e -> {
+
+                try {
+                    recorder.fail( e );
+                    READ_ERRORS.error( "Error during read of [{}] docs", keys.size(), e );
+                    if ( onError != null ) {
+                        onError.onError( e );
+                    }
+                } finally {
+                    countDown( latch ); // Must call to prevent extended blocking
+                }
+
+            }, () -> {
+
+                try {
+                    recorder.complete();
+                    if ( onComplete != null ) {
+                        onComplete.onComplete();
+                    }
+                } finally {
+                    countDown( latch ); // Must call to prevent extended blocking
+                }
+            });
+        await( latch );
+    }
+
+    /**
+     * Create the multi-get and retrieve the Observable, which emits one page per group of reads.
+     *
+     * @param keys the keys of the documents
+     * @param recorder records the RU charged
+     *
+     * @return Observable the observable
+     */
+    Observable<List<Document>> createReadMany( final List<DocumentKey> keys, final OperationRecorder recorder ) {
+
+        // Serve what we can from the cache, and group the remaining (de-duplicated) ids by partition key
+        List<Document> cached = new ArrayList<>();
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for ( DocumentKey key : new LinkedHashSet<>( keys ) ) {
+            Document doc = cache == null ? null : cache.getDocument( collectionLink, key.getId(), key.getPartitionKey() );
+            if ( doc != null ) {
+                cached.add( doc );
+            } else {
+                groups.computeIfAbsent( key.getPartitionKey(), pk -> new ArrayList<>() ).add( key.getId() );
+            }
+        }
+
+        List<Observable<List<Document>>> reads = new ArrayList<>();
+        if ( !cached.isEmpty() ) {
+            reads.add( Observable.just( cached ) );
+        }
+        for ( Map.Entry<String, List<String>> group : groups.entrySet() ) {
+
+            String partitionKey = group.getKey();
+            List<String> ids = group.getValue();
+
+            if ( ids.size() <= MAX_POINT_READS_PER_GROUP ) {
+                List<Observable<Document>> pointReads = new ArrayList<>( ids.size() );
+                for ( String id : ids ) {
+                    pointReads.add( createRead( id, partitionKey, recorder ) );
+                }
+                reads.add( Observable.merge( pointReads ).filter( doc -> doc != null ).toList() );
+            } else {
+                for ( int i = 0; i < ids.size(); i += MAX_IDS_PER_QUERY ) {
+                    reads.add( createInQuery( ids.subList( i, Math.min( i + MAX_IDS_PER_QUERY, ids.size() ) ), partitionKey, recorder ) );
+                }
+            }
+        }
+
+        return Observable.merge( reads, MAX_CONCURRENCY )
+            .filter( page -> !page.isEmpty() );
+    }
+
+    /**
+     * Create a query for a set of ids within a single partition.
+     *
+     * @param ids the ids
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param recorder records the RU charged
+     *
+     * @return Observable the observable
+     */
+    private Observable<List<Document>> createInQuery( final List<String> ids, final String partitionKey, final OperationRecorder recorder ) {
+
+        StringBuilder sql = new StringBuilder( "SELECT * FROM c WHERE c.id IN (" );
+        SqlParameterCollection params = new SqlParameterCollection();
+        for ( int i = 0; i < ids.size(); i++ ) {
+            String name = "@id" + i;
+            sql.append( i == 0 ? "" : ", " ).append( name );
+            params.add( new SqlParameter( name, ids.get( i ) ) );
+        }
+        sql.append( ")" );
+
+        FeedOptions queryOptions = new FeedOptions();
+        queryOptions.setMaxItemCount( ids.size() );
+        if ( partitionKey != null ) {
+            queryOptions.setPartitionKey( new PartitionKey( partitionKey ) );
+        } else {
+            queryOptions.setEnableCrossPartitionQuery( true );
+        }
+
+        final long generation = cache == null ? 0 : cache.getGeneration( collectionLink );
+
+        return pace( asyncClient.queryDocuments( collectionLink, new SqlQuerySpec( sql.toString(), params ), queryOptions ), 
+                collectionLink, "Read many", Lane.INTERACTIVE, FeedResponse::getRequestCharge )
+            .map( page -> {
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug( "Read of [{}] docs with partition key [{}] cost [{}] RU", ids.size(), partitionKey, page.getRequestCharge() );
+                }
+                recorder.response( page.getRequestCharge(), ExceptionUtil.OK );
+                if ( page.getResults() == null ) {
+                    return Collections.<Document>emptyList();
+                }
+                List<Document> docs = DocumentUtil.wrap( page.getResults(), DocumentUtil.getContentLength( page.getResponseHeaders() ) );
+                if ( cache != null ) {
+                    for ( Document doc : docs ) {
+                        cache.putDocument( collectionLink, partitionKey, doc, generation );
+                    }
+                }
+                return docs;
+            });
+    }
+
+    /**
+     * Create the point read and retrieve the Observable, served from the cache if possible. 
+     * A document that does not exist is emitted as null rather than as an error.
+     *
+     * @param id the id of the document
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param recorder records the RU charged
+     *
+     * @return Observable the observable
+     */
+    Observable<Document> createRead( final String id, final String partitionKey, final OperationRecorder recorder ) {
+
+        if ( cache == null ) {
+            return createUncachedRead( id, partitionKey, null, recorder );
+        }
+
+        Document cached = cache.getDocument( collectionLink, id, partitionKey );
+        if ( cached != null ) {
+            return Observable.just( cached );
+        }
+
+        final long generation = cache.getGeneration( collectionLink );
+        final Document expired = cache.getExpiredDocument( collectionLink, id, partitionKey );
+
+        return createUncachedRead( id, partitionKey, expired, recorder )
+            .doOnNext( doc -> {
+                if ( doc != null && doc == expired ) {
+                    cache.putRevalidatedDocument( collectionLink, partitionKey, doc, generation );
+                } else {
+                    cache.putDocument( collectionLink, partitionKey, doc, generation );
+                }
+            });
+    }
+
+    /**
+     * Create a conditional read that only transfers the document if it has changed since 
+     * the current version, and retrieve the Observable.
+     *
+     * @param current the version of the document the caller already has
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param recorder records the RU charged
+     *
+     * @return Observable emitting current if unchanged, the new version if changed, or null if deleted
+     */
+    Observable<Document> createConditionalRead( final Document current, final String partitionKey, final OperationRecorder recorder ) {
+
+        final long generation = cache == null ? 0 : cache.getGeneration( collectionLink );
+
+        Observable<Document> read = createUncachedRead( current.getId(), partitionKey, current, recorder );
+        return cache == null ?
+            read :
+            read.doOnNext( doc -> cache.putDocument( collectionLink, partitionKey, doc, generation ) );
+    }
+
+    /**
+     * Create the point read against the database and retrieve the Observable. A document that
+     * does not exist is emitted as null rather than as an error.
+     *
+     * If a current version is given, its ETag is sent in an If-None-Match condition. If the document 
+     * is unchanged the database answers 304 Not Modified with no body, and the current version is 
+     * emitted as-is, without transferring or parsing the document again.
+     *
+     * @param id the id of the document
+     * @param partitionKey the partition key (null if the collection is not partitioned)
+     * @param current the version of the document already held (null for an unconditional read)
+     * @param recorder records the RU charged
+     *
+     * @return Observable the observable
+     */
+    private Observable<Document> createUncachedRead( final String id, final String partitionKey, final Document current, final OperationRecorder recorder ) {
+
+        RequestOptions options = new RequestOptions();
+        if ( partitionKey != null ) {
+            options.setPartitionKey( new PartitionKey( partitionKey ) );
+        }
+        if ( current != null && current.getETag() != null ) {
+            AccessCondition condition = new AccessCondition();
+            condition.setType( AccessConditionType.IfNoneMatch );
+            condition.setCondition( current.getETag() );
+            options.setAccessCondition( condition );
+        }
+
+        return pace( asyncClient.readDocument( DocumentUtil.getDocumentLink( collectionLink, id ), options ), 
+                collectionLink, "Read", Lane.INTERACTIVE, ResourceResponse::getRequestCharge )
+            .map( rr -> {
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug( "Read of doc [{}] status [{}] cost [{}] RU", id, rr.getStatusCode(), rr.getRequestCharge() );
+                }
+                recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+                if ( current != null && ( rr.getStatusCode() == ExceptionUtil.NOT_MODIFIED || rr.getResource() == null ) ) {
+                    return current;
+                }
+                return rr.getResource() == null ? null : DocumentUtil.wrap( rr.getResource(), DocumentUtil.getContentLength( rr.getResponseHeaders() ) );
+            })
+            .onErrorResumeNext( e -> {
+                if ( ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) || ExceptionUtil.isStatus( e, ExceptionUtil.NOT_MODIFIED ) ) {
+                    recorder.response( ExceptionUtil.getRequestCharge( e ), ExceptionUtil.getStatusCode( e ) );
+                }
+                if ( ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) ) {
+                    return Observable.just( (Document) null );
+                }
+                if ( current != null && ExceptionUtil.isStatus( e, ExceptionUtil.NOT_MODIFIED ) ) {
+                    return Observable.just( current );
+                }
+                return Observable.error( e );
+            });
+    }
+}
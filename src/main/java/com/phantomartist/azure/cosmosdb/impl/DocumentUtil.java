@@ -1,7 +1,11 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
-import java.util.ArrayList;
+import java.util.AbstractList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import com.phantomartist.azure.cosmosdb.Document;
 
@@ -27,19 +31,38 @@ public class DocumentUtil {
     }
     
     /**
-     * Wrap MS Azure Document in our own flavour to avoid exposing underlying implementation.
+     * Wrap MS Azure Documents in our own flavour to avoid exposing underlying implementation.
+     * 
+     * The result is a read-only view over the Azure list rather than a copy: each Document wrapper is 
+     * created when its element is first requested and then kept, so the same index always returns the 
+     * same Document (and anything it has memoised). Delivering a page therefore allocates nothing per 
+     * document up front, and a caller that only looks at a few documents only pays for those.
      * 
      * @param results the results
      * 
      * @return List of our own Document type.
      */
     public static List<Document> wrap( List<com.microsoft.azure.cosmosdb.Document> results ) {
+        return wrap( results, -1 );
+    }
+    
+    /**
+     * Wrap MS Azure Documents read in one page, sharing out the size of the page between them 
+     * (see {@link #wrap(List)}).
+     * 
+     * @param results the Azure documents
+     * @param pageBytes the size of the response the page was read from (-1 if unknown)
+     * 
+     * @return List the documents
+     */
+    public static List<Document> wrap( List<com.microsoft.azure.cosmosdb.Document> results, long pageBytes ) {
         
-        List<Document> wrapped = new ArrayList<>( results.size() );
-        for ( com.microsoft.azure.cosmosdb.Document doc : results ) {
-            wrapped.add( wrap( doc ) );
+        if ( results == null || results.isEmpty() ) {
+            return Collections.emptyList();
         }
-        return wrapped;
+        return new WrappedList( results, pageBytes < 0 ? 
+            -1 : 
+            pageBytes / results.size() );
     }
     
     /**
@@ -52,4 +75,104 @@ public class DocumentUtil {
     public static Document wrap( com.microsoft.azure.cosmosdb.Document doc ) {
         return new DocumentImpl( doc );
     }
+    
+    /**
+     * Wrap MS Azure Document read in a response of a known size.
+     * 
+     * @param doc the Azure document
+     * @param responseBytes the size of the response the document was read from (-1 if unknown)
+     * 
+     * @return Document the document
+     */
+    public static Document wrap( com.microsoft.azure.cosmosdb.Document doc, long responseBytes ) {
+        return new DocumentImpl( doc, responseBytes );
+    }
+    
+    /**
+     * Get the size of a response body from its headers.
+     * 
+     * @param headers the response headers (may be null)
+     * 
+     * @return long the Content-Length, or -1 if not known
+     */
+    public static long getContentLength( Map<String, String> headers ) {
+        
+        if ( headers == null ) {
+            return -1;
+        }
+        String length = headers.get( "Content-Length" );
+        if ( length == null ) {
+            length = headers.get( "content-length" );
+        }
+        try {
+            return length == null ? 
+                -1 : 
+                Long.parseLong( length.trim() );
+        } catch ( NumberFormatException e ) {
+            return -1;
+        }
+    }
+    
+    /**
+     * Unwrap a Document back to the Azure document so it can be written. Any other object
+     * (POJO, Map etc.) is returned as is.
+     * 
+     * @param doc the document or object to write
+     * 
+     * @return Object the object to pass to the client
+     */
+    public static Object unwrap( Object doc ) {
+        return doc instanceof DocumentImpl ? 
+            ( (DocumentImpl) doc ).getAzureDoc() : 
+            doc;
+    }
+    
+    /**
+     * Build the name-based link for a document from its collection link and id, 
+     * e.g. /dbs/mydb/colls/product/docs/record_1
+     * 
+     * @param collectionLink the collection link
+     * @param id the document id
+     * 
+     * @return String the document link
+     */
+    public static String getDocumentLink( String collectionLink, String id ) {
+        return collectionLink + "/docs/" + id;
+    }
+    
+    /**
+     * Read-only List of Documents backed by a list of Azure documents. Wrappers are created lazily 
+     * and cached by index, so the iterator (inherited from AbstractList, which goes through get) 
+     * and get share them, and contains, indexOf and remove match the elements the list returned.
+     */
+    private static final class WrappedList extends AbstractList<Document> implements RandomAccess {
+        
+        private final List<com.microsoft.azure.cosmosdb.Document> results;
+        private final AtomicReferenceArray<DocumentImpl> wrappers;
+        private final long docBytes;
+        
+        WrappedList( final List<com.microsoft.azure.cosmosdb.Document> results, final long docBytes ) {
+            this.results = results;
+            this.wrappers = new AtomicReferenceArray<>( results.size() );
+            this.docBytes = docBytes;
+        }
+        
+        @Override
+        public Document get( final int index ) {
+            
+            DocumentImpl wrapper = wrappers.get( index );
+            if ( wrapper == null ) {
+                wrapper = new DocumentImpl( results.get( index ), docBytes );
+                if ( !wrappers.compareAndSet( index, null, wrapper ) ) {
+                    wrapper = wrappers.get( index ); // Another thread got there first
+                }
+            }
+            return wrapper;
+        }
+        
+        @Override
+        public int size() {
+            return results.size();
+        }
+    }
 }
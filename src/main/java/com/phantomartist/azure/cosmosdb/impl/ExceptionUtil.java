@@ -0,0 +1,96 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import com.microsoft.azure.cosmosdb.DocumentClientException;
+
+/**
+ * Title: ExceptionUtil
+ *
+ * Description: Utilities for inspecting errors raised by the document client
+ */
+public class ExceptionUtil {
+
+    public static final int OK = 200;
+    public static final int NOT_MODIFIED = 304;
+    public static final int NOT_FOUND = 404;
+    public static final int CONFLICT = 409;
+    public static final int PRECONDITION_FAILED = 412;
+    public static final int THROTTLED = 429;
+
+    private ExceptionUtil() {
+    }
+
+    /**
+     * Find the DocumentClientException in the cause chain of an error.
+     *
+     * @param t the error
+     *
+     * @return DocumentClientException the client exception, or null if there isn't one
+     */
+    public static DocumentClientException getClientException( final Throwable t ) {
+
+        Throwable cause = t;
+        while ( cause != null ) {
+            if ( cause instanceof DocumentClientException ) {
+                return (DocumentClientException) cause;
+            }
+            cause = cause.getCause();
+        }
+        return null;
+    }
+
+    /**
+     * Get the HTTP status code of an error raised by the document client.
+     *
+     * @param t the error
+     *
+     * @return int the status code, or -1 if the error did not come from the service
+     */
+    public static int getStatusCode( final Throwable t ) {
+
+        DocumentClientException dce = getClientException( t );
+        return dce == null ? -1 : dce.getStatusCode();
+    }
+
+    /**
+     * Check whether an error carries a given HTTP status code.
+     *
+     * @param t the error
+     * @param statusCode the status code
+     *
+     * @return boolean true if the error came from the service with the given status code
+     */
+    public static boolean isStatus( final Throwable t, final int statusCode ) {
+
+        return getStatusCode( t ) == statusCode;
+    }
+
+    /**
+     * Get the RU charged for a request that failed.
+     *
+     * @param t the error
+     *
+     * @return double the request charge, or 0 if the error did not come from the service
+     */
+    public static double getRequestCharge( final Throwable t ) {
+
+        DocumentClientException dce = getClientException( t );
+        return dce == null ? 0 : dce.getRequestCharge();
+    }
+
+    /**
+     * Get the retry interval the service suggested for a throttled request.
+     *
+     * @param t the error
+     * @param defaultMillis the interval to use if the service did not suggest one
+     *
+     * @return long the retry interval in milliseconds
+     */
+    public static long getRetryAfterMillis( final Throwable t, final long defaultMillis ) {
+
+        DocumentClientException dce = getClientException( t );
+        if ( dce == null || dce.getRetryAfterInMilliseconds() <= 0 ) {
+            return defaultMillis;
+        }
+        return dce.getRetryAfterInMilliseconds();
+    }
+}
@@ -0,0 +1,127 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Title: Histogram
+ *
+ * Description: Lock-free histogram of non-negative long values with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Each power of two is split into 32 equal sub-buckets, so any recorded value is reported to within about 3%,
+ * across the whole range of a long, in a fixed 15KB of counters. Recording is a single atomic increment plus
+ * a max update, so it can be called from many threads without contention on a lock. Percentiles are read from
+ * a pass over the counters, which may see recordings made during the pass; that is acceptable for monitoring.
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = ( Long.SIZE - SUB_BUCKET_BITS ) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray( BUCKETS );
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a value. Negative values are recorded as 0.
+     *
+     * @param value the value
+     */
+    public void record( final long value ) {
+
+        long v = Math.max( 0, value );
+        counts.incrementAndGet( indexOf( v ) );
+        max.accumulateAndGet( v, Math::max );
+    }
+
+    /**
+     * @return long the number of values recorded
+     */
+    public long getCount() {
+
+        long count = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            count += counts.get( i );
+        }
+        return count;
+    }
+
+    /**
+     * @return long the highest value recorded, or 0 if none
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Get the value at a percentile.
+     *
+     * @param percentile the percentile, between 0 and 100
+     *
+     * @return long the highest value in the bucket holding the percentile (capped at the max recorded), or 0 if none
+     */
+    public long getValueAtPercentile( final double percentile ) {
+
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            snapshot[i] = counts.get( i );
+            count += snapshot[i];
+        }
+        if ( count == 0 ) {
+            return 0;
+        }
+
+        long rank = Math.max( 1, (long) Math.ceil( Math.min( percentile, 100 ) / 100 * count ) );
+        long seen = 0;
+        for ( int i = 0; i < BUCKETS; i++ ) {
+            seen += snapshot[i];
+            if ( seen >= rank ) {
+                return Math.min( highestValueOf( i ), max.get() );
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Find the bucket for a value. Values below 32 have a bucket each; above that, bucket
+     * boundaries are 32 per power of two.
+     *
+     * @param value the value, not negative
+     *
+     * @return int the bucket index
+     */
+    static int indexOf( final long value ) {
+
+        if ( value < SUB_BUCKETS ) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros( value );
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) ( value >>> shift ) & ( SUB_BUCKETS - 1 );
+        return ( shift + 1 ) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @param index the bucket index
+     *
+     * @return long the lowest value held by the bucket
+     */
+    static long lowestValueOf( final int index ) {
+
+        if ( index < SUB_BUCKETS ) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        return (long) ( SUB_BUCKETS + index % SUB_BUCKETS ) << shift;
+    }
+
+    /**
+     * @param index the bucket index
+     *
+     * @return long the highest value held by the bucket
+     */
+    static long highestValueOf( final int index ) {
+        return index == BUCKETS - 1 ? Long.MAX_VALUE : lowestValueOf( index + 1 ) - 1;
+    }
+}
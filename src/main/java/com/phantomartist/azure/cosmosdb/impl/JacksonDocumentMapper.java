@@ -0,0 +1,130 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentMapper;
+
+/**
+ * Title: JacksonDocumentMapper
+ *
+ * Description: DocumentMapper that binds a document to a POJO (or Map) with Jackson. This is how
+ * {@link Document#toObject(Class)} and the results of a query converted to a class are bound.
+ *
+ * The document is bound straight from the tree the Azure client parsed it into, so no JSON text is
+ * produced or parsed again. The ObjectReader for each target class is resolved once and shared by every
+ * mapper for that class, so type introspection is paid on first use only. Properties with no matching field are ignored rather than failing the
+ * conversion, so system properties (_rid, _ts, _etag...) and fields added to stored documents later
+ * do not break existing POJOs.
+ *
+ * A mapper may be given a projection: the names of the top-level fields to bind. Only those subtrees
+ * are visited; every other field is left untouched and keeps its default value in the result.
+ *
+ * Mappers are immutable and thread-safe.
+ */
+public class JacksonDocumentMapper<T> implements DocumentMapper<T> {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+        .configure( DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false );
+
+    private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final ObjectReader reader;
+    private final Set<String> projection;
+
+    /**
+     * Constructor
+     *
+     * @param type the class to bind to
+     * @param projection the top-level fields to bind, or empty for all fields
+     */
+    private JacksonDocumentMapper( final Class<T> type, final Set<String> projection ) {
+        this.type = type;
+        this.reader = READERS.computeIfAbsent( type, MAPPER::readerFor );
+        this.projection = projection;
+    }
+
+    /**
+     * Get a mapper that binds every field.
+     *
+     * @param <T> the type to bind to
+     * @param type the class to bind to
+     *
+     * @return JacksonDocumentMapper the mapper
+     */
+    public static <T> JacksonDocumentMapper<T> forClass( final Class<T> type ) {
+        return new JacksonDocumentMapper<>( type, Collections.<String>emptySet() );
+    }
+
+    /**
+     * Get a mapper that only binds the named top-level fields.
+     *
+     * @param <T> the type to bind to
+     * @param type the class to bind to
+     * @param fields the names of the JSON fields to bind
+     *
+     * @return JacksonDocumentMapper the mapper
+     */
+    public static <T> JacksonDocumentMapper<T> forClass( final Class<T> type, final String... fields ) {
+        return new JacksonDocumentMapper<>( type, Collections.unmodifiableSet( new LinkedHashSet<>( Arrays.asList( fields ) ) ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T map( final Document doc ) {
+
+        if ( !( doc instanceof DocumentImpl ) && projection.isEmpty() ) {
+            return doc.toObject( type ); // Another implementation converts itself
+        }
+        try {
+            JsonNode tree = doc instanceof DocumentImpl ? 
+                ( (DocumentImpl) doc ).getTree() : 
+                MAPPER.readTree( doc.toJson() ); // Another implementation only offers its JSON
+            return reader.readValue( projection.isEmpty() ? 
+                tree : 
+                project( tree ) );
+        } catch ( IOException e ) {
+            throw new RuntimeException( "Unable to map doc [" + doc.getId() + "] to " + type.getName(), e );
+        }
+    }
+
+    /**
+     * @return ObjectReader the reader shared by every mapper for the target class
+     */
+    ObjectReader getReader() {
+        return reader;
+    }
+
+    /**
+     * Keep only the projected top-level fields. The subtrees are shared with the document, not copied.
+     *
+     * @param tree the document
+     *
+     * @return ObjectNode the projected fields
+     */
+    private ObjectNode project( final JsonNode tree ) {
+
+        ObjectNode node = MAPPER.createObjectNode();
+        for ( String field : projection ) {
+            JsonNode value = tree.get( field );
+            if ( value != null ) {
+                node.set( field, value );
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,59 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Title: JsonFieldReader
+ *
+ * Description: Reads a single scalar field from a JSON tree.
+ *
+ * The path is walked one field name at a time, so reading a field visits only its parents, never the
+ * rest of the document.
+ */
+public class JsonFieldReader {
+
+    /**
+     * Returned when the field is not present, or a parent on the path is not an object.
+     */
+    public static final Object MISSING = new Object();
+
+    private JsonFieldReader() {
+    }
+
+    /**
+     * Read a scalar field.
+     *
+     * @param tree the JSON object
+     * @param path the field names from the top level down to the field, e.g. {"price", "amount"}
+     *
+     * @return Object a String, Number or Boolean, null for a JSON null, or {@link #MISSING}
+     *
+     * @throws IllegalArgumentException if the field is an object or array
+     */
+    public static Object read( final JsonNode tree, final String[] path ) {
+
+        JsonNode node = tree;
+        for ( String name : path ) {
+            if ( node == null || !node.isObject() ) {
+                return MISSING;
+            }
+            node = node.get( name );
+        }
+        if ( node == null ) {
+            return MISSING;
+        }
+
+        switch ( node.getNodeType() ) {
+            case STRING:
+                return node.textValue();
+            case NUMBER:
+                return node.numberValue();
+            case BOOLEAN:
+                return node.booleanValue();
+            case NULL:
+                return null;
+            default:
+                throw new IllegalArgumentException( "Field [" + String.join( ".", path ) + "] is not a scalar value" );
+        }
+    }
+}
@@ -0,0 +1,440 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntSupplier;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.SchedulerConfig;
+
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Title: LaneScheduler
+ *
+ * Description: Schedules the requests of a client in {@link Lane}s, see {@link SchedulerConfig}.
+ *
+ * Each lane has a gate counting its requests in flight. A request over the lane's limit is queued, and is
+ * subscribed by whichever thread ends an earlier request of the lane, so admission never blocks a thread.
+ * Lanes do not wait for each other: a full bulk lane delays only bulk requests. A paged request, such as a
+ * query, takes a place for each batch of pages it fetches rather than for its whole life, so a consumer that is
+ * slow to ask for more pages, or never does, holds no place while it is not fetching. A batch is as many pages
+ * as the request fetches at once (e.g. one per partition a query reads concurrently), so scheduling does not
+ * hold back its parallelism, and a subscriber that asks for every page takes one place until the request ends.
+ *
+ * With a latency target, the latency of interactive requests to their first response is recorded in a
+ * histogram per one second window. At the end of each window the limits of the background and bulk lanes
+ * are halved if the window's 99th percentile was over the target, and otherwise raised by one request.
+ */
+public class LaneScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger( LaneScheduler.class );
+
+    static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos( 1 );
+
+    private final Map<Lane, Gate> gates = new EnumMap<>( Lane.class );
+    private final long latencyTargetNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong windowStart;
+    private final AtomicReference<Histogram> window = new AtomicReference<>( new Histogram() );
+
+    /**
+     * Constructor
+     *
+     * @param config the scheduler configuration
+     */
+    public LaneScheduler( final SchedulerConfig config ) {
+        this( config, System::nanoTime );
+    }
+
+    LaneScheduler( final SchedulerConfig config, final LongSupplier nanoClock ) {
+        for ( Lane lane : Lane.values() ) {
+            gates.put( lane, new Gate( config.getMaxConcurrency( lane ) ) );
+        }
+        this.latencyTargetNanos = TimeUnit.MILLISECONDS.toNanos( config.getLatencyTargetMillis() );
+        this.nanoClock = nanoClock;
+        this.windowStart = new AtomicLong( nanoClock.getAsLong() );
+    }
+
+    /**
+     * Schedule a request in a lane. Nothing is sent until the result is subscribed, and then only once
+     * the lane has room for it.
+     *
+     * @param lane the lane
+     * @param request the request
+     *
+     * @return Observable the request, sent once the lane allows
+     */
+    public <T> Observable<T> schedule( final Lane lane, final Observable<T> request ) {
+
+        final Gate gate = gates.get( lane );
+        final boolean isMeasured = lane == Lane.INTERACTIVE && latencyTargetNanos > 0;
+        if ( gate.isUnlimited() && !isMeasured ) {
+            return request;
+        }
+        return Observable.unsafeCreate( subscriber -> gate.submit( () -> {
+
+            final AtomicBoolean isReleased = new AtomicBoolean();
+            final Runnable release = () -> {
+                if ( isReleased.compareAndSet( false, true ) ) {
+                    gate.release();
+                    onRequestEnd();
+                }
+            };
+            if ( subscriber.isUnsubscribed() ) {
+                release.run(); // Cancelled while queued
+                return;
+            }
+
+            Observable<T> started = request;
+            if ( isMeasured ) {
+                final long start = nanoClock.getAsLong();
+                final AtomicBoolean isAnswered = new AtomicBoolean();
+                final Runnable answered = () -> {
+                    if ( isAnswered.compareAndSet( false, true ) ) {
+                        recordLatency( nanoClock.getAsLong() - start );
+                    }
+                };
+                started = started
+                    .doOnNext( item -> answered.run() )
+                    .doOnError( e -> answered.run() )
+                    .doOnCompleted( answered::run );
+            }
+            try {
+                started
+                    .doOnTerminate( release::run )
+                    .doOnUnsubscribe( release::run )
+                    .unsafeSubscribe( subscriber );
+            } catch ( RuntimeException e ) {
+                release.run(); // Keep the lane moving
+                subscriber.onError( e );
+            }
+        }));
+    }
+
+    /**
+     * Schedule a paged request, such as a query, in a lane. Pages are fetched in batches as the subscriber asks
+     * for them, each batch once the lane has room for it, and the place is given up as soon as the last page of
+     * the batch arrives, so the request only holds a place while pages are in flight. A batch is as many of the
+     * pages asked for as the request fetches at once, or every page if the subscriber asks for all of them.
+     *
+     * @param lane the lane
+     * @param pages the pages, which must honour backpressure
+     * @param pagesPerBatch the number of pages the request fetches at once, read as each batch starts
+     *
+     * @return Observable the pages, each batch fetched once the lane allows
+     */
+    public <T> Observable<T> schedulePages( final Lane lane, final Observable<T> pages, final IntSupplier pagesPerBatch ) {
+
+        final Gate gate = gates.get( lane );
+        final boolean isMeasured = lane == Lane.INTERACTIVE && latencyTargetNanos > 0;
+        if ( gate.isUnlimited() && !isMeasured ) {
+            return pages;
+        }
+        return Observable.unsafeCreate( subscriber -> new PageFetcher<T>( gate, isMeasured, pagesPerBatch, subscriber ).start( pages ) );
+    }
+
+    /**
+     * @param lane the lane
+     *
+     * @return Gate the gate of the lane
+     */
+    Gate getGate( final Lane lane ) {
+        return gates.get( lane );
+    }
+
+    /**
+     * Record the latency of an interactive request to its first response.
+     *
+     * @param latencyNanos the latency in nanoseconds
+     */
+    void recordLatency( final long latencyNanos ) {
+        window.get().record( latencyNanos );
+    }
+
+    /**
+     * Adjust the background and bulk limits if the latency window has ended. Only the thread that
+     * moves the window on does the adjustment.
+     */
+    void onRequestEnd() {
+
+        if ( latencyTargetNanos == 0 ) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        long start = windowStart.get();
+        if ( now - start < WINDOW_NANOS || !windowStart.compareAndSet( start, now ) ) {
+            return;
+        }
+        long p99 = window.getAndSet( new Histogram() ).getValueAtPercentile( 99 );
+        boolean isOverTarget = p99 > latencyTargetNanos;
+        for ( Lane lane : Lane.values() ) {
+            if ( lane != Lane.INTERACTIVE ) {
+                gates.get( lane ).adapt( isOverTarget );
+            }
+        }
+        if ( isOverTarget && LOG.isDebugEnabled() ) {
+            LOG.debug( "Interactive p99 [{}]ms over target, holding back background [{}] and bulk [{}] requests",
+                    TimeUnit.NANOSECONDS.toMillis( p99 ), gates.get( Lane.BACKGROUND ).getLimit(), gates.get( Lane.BULK ).getLimit() );
+        }
+    }
+
+    /**
+     * Title: PageFetcher
+     *
+     * Description: Requests the pages of one paged request a batch at a time, taking a place in the lane for
+     * each batch. A fetch is idle, queued at the gate, or in flight; only an in-flight fetch holds a place, and
+     * whichever of the last page of the batch arriving, the request ending or the subscriber unsubscribing comes
+     * first gives it up.
+     */
+    private final class PageFetcher<T> extends Subscriber<T> {
+
+        private static final int IDLE = 0;
+        private static final int QUEUED = 1;
+        private static final int IN_FLIGHT = 2;
+
+        private final Gate gate;
+        private final boolean isMeasured;
+        private final IntSupplier pagesPerBatch;
+        private final Subscriber<? super T> child;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicLong batchRemaining = new AtomicLong();
+        private final AtomicInteger state = new AtomicInteger( IDLE );
+        private final AtomicBoolean isAnswered = new AtomicBoolean();
+
+        private volatile long fetchStart;
+
+        PageFetcher( final Gate gate, final boolean isMeasured, final IntSupplier pagesPerBatch, final Subscriber<? super T> child ) {
+            this.gate = gate;
+            this.isMeasured = isMeasured;
+            this.pagesPerBatch = pagesPerBatch;
+            this.child = child;
+        }
+
+        /**
+         * Subscribe to the pages, then fetch as the child asks.
+         *
+         * @param pages the pages
+         */
+        void start( final Observable<T> pages ) {
+
+            child.add( this );
+            add( Subscriptions.create( this::end ) ); // A place held by a cancelled fetch is given up at once
+            pages.unsafeSubscribe( this );
+            child.setProducer( n -> {
+                if ( n > 0 ) {
+                    addRequested( n );
+                    fetchNext();
+                }
+            });
+        }
+
+        @Override
+        public void onStart() {
+            request( 0 ); // Nothing until the child asks
+        }
+
+        @Override
+        public void onNext( final T page ) {
+
+            answered();
+            if ( batchRemaining.get() != Long.MAX_VALUE && batchRemaining.decrementAndGet() <= 0 ) {
+                end();
+            }
+            if ( requested.get() != Long.MAX_VALUE ) {
+                requested.decrementAndGet();
+            }
+            child.onNext( page );
+            fetchNext();
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            answered();
+            end();
+            child.onError( e );
+        }
+
+        @Override
+        public void onCompleted() {
+            answered();
+            end();
+            child.onCompleted();
+        }
+
+        /**
+         * Queue a fetch at the gate if the child wants more pages and none are being fetched. The gate may
+         * start it on this thread or, once the lane has room, on the thread that ends an earlier request.
+         */
+        private void fetchNext() {
+
+            if ( requested.get() <= 0 || isUnsubscribed() || !state.compareAndSet( IDLE, QUEUED ) ) {
+                return;
+            }
+            gate.submit( () -> {
+                long wanted = requested.get();
+                long batch = wanted == Long.MAX_VALUE ? 
+                    Long.MAX_VALUE : 
+                    Math.max( 1, Math.min( wanted, pagesPerBatch.getAsInt() ) );
+                batchRemaining.set( batch );
+                isAnswered.set( false );
+                fetchStart = nanoClock.getAsLong();
+                state.set( IN_FLIGHT );
+                if ( isUnsubscribed() ) {
+                    end(); // Cancelled while queued
+                    return;
+                }
+                request( batch );
+            });
+        }
+
+        /**
+         * Record the latency of the batch in flight to its first response, if measured.
+         */
+        private void answered() {
+            if ( isMeasured && state.get() == IN_FLIGHT && isAnswered.compareAndSet( false, true ) ) {
+                recordLatency( nanoClock.getAsLong() - fetchStart );
+            }
+        }
+
+        /**
+         * Give up the place of the fetch in flight, if any.
+         */
+        private void end() {
+
+            if ( !state.compareAndSet( IN_FLIGHT, IDLE ) ) {
+                return;
+            }
+            gate.release();
+            onRequestEnd();
+        }
+
+        private void addRequested( final long n ) {
+
+            for (;;) {
+                long current = requested.get();
+                long next = current + n < 0 ? 
+                    Long.MAX_VALUE : 
+                    current + n;
+                if ( current == Long.MAX_VALUE || requested.compareAndSet( current, next ) ) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Title: Gate
+     *
+     * Description: Non-blocking limit on the requests of one lane in flight. Queued requests are started
+     * in order by a drain loop that only one thread runs at a time; a thread that finds it running leaves
+     * the work to that thread.
+     */
+    static class Gate {
+
+        private final int maxConcurrency;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger wip = new AtomicInteger();
+        private final Queue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+        private volatile int limit;
+
+        /**
+         * Constructor
+         *
+         * @param maxConcurrency the most requests in flight, or 0 for no limit
+         */
+        Gate( final int maxConcurrency ) {
+            this.maxConcurrency = maxConcurrency == 0 ? Integer.MAX_VALUE : maxConcurrency;
+            this.limit = this.maxConcurrency;
+        }
+
+        /**
+         * Start a request now if the lane has room, otherwise once it does. The request must
+         * call {@link #release()} when it ends.
+         *
+         * @param start starts the request
+         */
+        void submit( final Runnable start ) {
+            waiting.offer( start );
+            drain();
+        }
+
+        /**
+         * Give up the place of a request that has ended, starting the next one waiting.
+         */
+        void release() {
+            inFlight.decrementAndGet();
+            drain();
+        }
+
+        /**
+         * Halve the limit, or raise it by one towards the configured maximum.
+         *
+         * @param isOverTarget if true, halve the limit
+         */
+        void adapt( final boolean isOverTarget ) {
+
+            if ( isUnlimited() ) {
+                return;
+            }
+            int current = limit;
+            limit = isOverTarget ? Math.max( 1, current / 2 ) : Math.min( maxConcurrency, current + 1 );
+            if ( limit > current ) {
+                drain();
+            }
+        }
+
+        boolean isUnlimited() {
+            return maxConcurrency == Integer.MAX_VALUE;
+        }
+
+        int getLimit() {
+            return limit;
+        }
+
+        int getInFlight() {
+            return inFlight.get();
+        }
+
+        int getWaiting() {
+            return waiting.size();
+        }
+
+        private void drain() {
+
+            if ( wip.getAndIncrement() != 0 ) {
+                return;
+            }
+            int missed = 1;
+            for (;;) {
+                // Only the draining thread takes places, so checking then incrementing cannot overshoot
+                while ( inFlight.get() < limit ) {
+                    Runnable next = waiting.poll();
+                    if ( next == null ) {
+                        break;
+                    }
+                    inFlight.incrementAndGet();
+                    next.run();
+                }
+                missed = wip.addAndGet( -missed );
+                if ( missed == 0 ) {
+                    return;
+                }
+            }
+        }
+    }
+}
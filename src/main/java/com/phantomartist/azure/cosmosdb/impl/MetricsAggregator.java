@@ -0,0 +1,107 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.phantomartist.azure.cosmosdb.MetricsListener;
+import com.phantomartist.azure.cosmosdb.OperationMetrics;
+import com.phantomartist.azure.cosmosdb.OperationStats;
+import com.phantomartist.azure.cosmosdb.OperationType;
+
+/**
+ * Title: MetricsAggregator
+ *
+ * Description: MetricsListener that aggregates operations by type in memory, for latency percentiles and RU/s
+ * without any logging. Register it with {@link com.phantomartist.azure.cosmosdb.ClientOptions#setMetricsListener(MetricsListener)}
+ * and read {@link #getStats(OperationType)} periodically, e.g. from a metrics exporter.
+ *
+ * Recording is lock-free: a histogram bucket increment and a handful of adder updates per operation.
+ * Figures cover the period since the aggregator was created or last reset.
+ */
+public class MetricsAggregator implements MetricsListener {
+
+    private volatile Period period = new Period();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void onOperation( final OperationMetrics metrics ) {
+
+        Aggregate aggregate = period.aggregates.get( metrics.getType() );
+        aggregate.latencyMicros.record( TimeUnit.NANOSECONDS.toMicros( metrics.getLatencyNanos() ) );
+        aggregate.requestCharge.add( metrics.getRequestCharge() );
+        aggregate.items.add( metrics.getItemCount() );
+        aggregate.retries.add( metrics.getRetries() );
+        if ( !metrics.isSuccess() ) {
+            aggregate.failures.increment();
+        }
+    }
+
+    /**
+     * Get a snapshot of the figures for one type of operation.
+     *
+     * @param type the type of operation
+     *
+     * @return OperationStats the stats since the aggregator was created or last reset
+     */
+    public OperationStats getStats( final OperationType type ) {
+
+        Period current = period;
+        Aggregate aggregate = current.aggregates.get( type );
+        Histogram latency = aggregate.latencyMicros;
+
+        double seconds = ( System.nanoTime() - current.startNanos ) / 1e9;
+        double ru = aggregate.requestCharge.sum();
+
+        return new OperationStats( 
+            latency.getCount(), 
+            aggregate.failures.sum(),
+            toMillis( latency.getValueAtPercentile( 50 ) ),
+            toMillis( latency.getValueAtPercentile( 99 ) ),
+            toMillis( latency.getValueAtPercentile( 99.9 ) ),
+            toMillis( latency.getMax() ),
+            ru,
+            seconds <= 0 ? 0 : ru / seconds,
+            aggregate.items.sum(),
+            aggregate.retries.sum() );
+    }
+
+    /**
+     * Discard the figures gathered so far and start a new period.
+     */
+    public void reset() {
+        period = new Period();
+    }
+
+    private static double toMillis( final long micros ) {
+        return micros / 1000.0;
+    }
+
+    /**
+     * The aggregates for every type of operation over one period.
+     */
+    private static final class Period {
+
+        private final long startNanos = System.nanoTime();
+        private final Map<OperationType, Aggregate> aggregates = new EnumMap<>( OperationType.class );
+
+        Period() {
+            for ( OperationType type : OperationType.values() ) {
+                aggregates.put( type, new Aggregate() ); // Never modified afterwards, so safe to read concurrently
+            }
+        }
+    }
+
+    private static final class Aggregate {
+
+        private final Histogram latencyMicros = new Histogram();
+        private final DoubleAdder requestCharge = new DoubleAdder();
+        private final LongAdder items = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+    }
+}
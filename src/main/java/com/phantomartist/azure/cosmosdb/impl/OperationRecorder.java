@@ -0,0 +1,160 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.phantomartist.azure.cosmosdb.MetricsListener;
+import com.phantomartist.azure.cosmosdb.OperationMetrics;
+import com.phantomartist.azure.cosmosdb.OperationType;
+
+/**
+ * Title: OperationRecorder
+ *
+ * Description: Tallies the figures for one operation as its responses arrive and reports them to the
+ * client's {@link MetricsListener} when the operation completes or fails.
+ *
+ * When no listener is registered a shared recorder that ignores everything is used instead, so unmeasured
+ * operations allocate nothing and pay only for a null check. Responses may be recorded from several
+ * threads at once (e.g. the point reads of a multi-get), and the figures are reported exactly once.
+ */
+public class OperationRecorder {
+
+    private static final Logger LOG = LoggerFactory.getLogger( OperationRecorder.class );
+
+    private static final OperationRecorder NONE = new OperationRecorder( null, null, null );
+
+    private final MetricsListener listener;
+    private final OperationType type;
+    private final String collectionLink;
+    private final long startNanos;
+    private final DoubleAdder requestCharge;
+    private final AtomicLong items;
+    private final AtomicInteger pages;
+    private final AtomicInteger retries;
+    private final AtomicBoolean isReported;
+    private volatile int statusCode = ExceptionUtil.OK;
+    private volatile boolean hasResponse;
+
+    private OperationRecorder( final MetricsListener listener, final OperationType type, final String collectionLink ) {
+
+        this.listener = listener;
+        this.type = type;
+        this.collectionLink = collectionLink;
+        this.startNanos = listener == null ? 0 : System.nanoTime();
+        this.requestCharge = listener == null ? null : new DoubleAdder();
+        this.items = listener == null ? null : new AtomicLong();
+        this.pages = listener == null ? null : new AtomicInteger();
+        this.retries = listener == null ? null : new AtomicInteger();
+        this.isReported = listener == null ? null : new AtomicBoolean();
+    }
+
+    /**
+     * Start measuring an operation.
+     *
+     * @param listener the listener to report to (null if operations are not measured)
+     * @param type the type of operation
+     * @param collectionLink the collection operated on
+     *
+     * @return OperationRecorder the recorder for the operation
+     */
+    public static OperationRecorder start( final MetricsListener listener, final OperationType type, final String collectionLink ) {
+        return listener == null ? NONE : new OperationRecorder( listener, type, collectionLink );
+    }
+
+    /**
+     * Record a page of results.
+     *
+     * @param itemCount the number of documents in the page
+     * @param charge the RU charged for the page
+     */
+    public void page( final int itemCount, final double charge ) {
+
+        if ( listener == null ) {
+            return;
+        }
+        hasResponse = true;
+        pages.incrementAndGet();
+        items.addAndGet( itemCount );
+        requestCharge.add( charge );
+    }
+
+    /**
+     * Record a response to a single-document request.
+     *
+     * @param charge the RU charged
+     * @param status the HTTP status code of the response
+     */
+    public void response( final double charge, final int status ) {
+
+        if ( listener == null ) {
+            return;
+        }
+        hasResponse = true;
+        requestCharge.add( charge );
+        statusCode = status;
+    }
+
+    /**
+     * Record documents returned or written.
+     *
+     * @param itemCount the number of documents
+     */
+    public void items( final long itemCount ) {
+
+        if ( listener == null ) {
+            return;
+        }
+        items.addAndGet( itemCount );
+    }
+
+    /**
+     * Record retries made by this library.
+     *
+     * @param count the number of retries
+     */
+    public void retries( final int count ) {
+
+        if ( listener == null ) {
+            return;
+        }
+        retries.addAndGet( count );
+    }
+
+    /**
+     * Report the operation as complete. An operation that completed without a response from the
+     * database was served from the client-side cache, and is not reported.
+     */
+    public void complete() {
+
+        if ( hasResponse ) {
+            report( statusCode, true );
+        }
+    }
+
+    /**
+     * Report the operation as failed.
+     *
+     * @param e the error
+     */
+    public void fail( final Throwable e ) {
+        report( ExceptionUtil.getStatusCode( e ), false );
+    }
+
+    private void report( final int status, final boolean isSuccess ) {
+
+        if ( listener == null || !isReported.compareAndSet( false, true ) ) {
+            return;
+        }
+        try {
+            listener.onOperation( new OperationMetrics( type, collectionLink, System.nanoTime() - startNanos, requestCharge.sum(),
+                items.get(), pages.get(), retries.get(), status, isSuccess ) );
+        } catch ( RuntimeException e ) {
+            LOG.error( "MetricsListener failed for {} on [{}]", type, collectionLink, e );
+        }
+    }
+}
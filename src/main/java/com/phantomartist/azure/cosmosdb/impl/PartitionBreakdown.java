@@ -0,0 +1,85 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.microsoft.azure.cosmosdb.FeedResponse;
+
+/**
+ * Title: PartitionBreakdown
+ *
+ * Description: Tallies the pages, documents and RU a cross-partition query read from each partition key range,
+ * for debugging uneven or slow scans. Pages of a query arrive one at a time, so this is not thread-safe.
+ */
+public class PartitionBreakdown {
+
+    static final String PARTITION_KEY_RANGE_ID = "x-ms-documentdb-partitionkeyrangeid";
+    static final String UNKNOWN = "?";
+
+    private final Map<String, Tally> tallies = new TreeMap<>();
+
+    /**
+     * Get the partition key range a page was read from.
+     *
+     * @param page the page
+     *
+     * @return String the partition key range id, or "?" if the service did not say
+     */
+    public static String getPartitionKeyRangeId( final FeedResponse<?> page ) {
+
+        Map<String, String> headers = page.getResponseHeaders();
+        String id = headers == null ? null : headers.get( PARTITION_KEY_RANGE_ID );
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * Count a page.
+     *
+     * @param page the page
+     */
+    public void record( final FeedResponse<?> page ) {
+        record( getPartitionKeyRangeId( page ), page.getResults().size(), page.getRequestCharge() );
+    }
+
+    /**
+     * Count a page.
+     *
+     * @param partitionKeyRangeId the partition key range the page was read from
+     * @param docs the number of documents in the page
+     * @param requestCharge the RU charged for the page
+     */
+    public void record( final String partitionKeyRangeId, final int docs, final double requestCharge ) {
+
+        Tally tally = tallies.computeIfAbsent( partitionKeyRangeId, id -> new Tally() );
+        tally.pages++;
+        tally.docs += docs;
+        tally.requestCharge += requestCharge;
+    }
+
+    /**
+     * @return String one entry per partition key range, in range id order
+     */
+    @Override
+    public String toString() {
+
+        StringBuilder out = new StringBuilder();
+        for ( Map.Entry<String, Tally> entry : tallies.entrySet() ) {
+            Tally tally = entry.getValue();
+            if ( out.length() > 0 ) {
+                out.append( ", " );
+            }
+            out.append( "partition [" ).append( entry.getKey() )
+                .append( "] pages [" ).append( tally.pages )
+                .append( "] docs [" ).append( tally.docs )
+                .append( "] cost [" ).append( tally.requestCharge ).append( "] RU" );
+        }
+        return out.toString();
+    }
+
+    private static final class Tally {
+
+        private int pages;
+        private long docs;
+        private double requestCharge;
+    }
+}
@@ -0,0 +1,124 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+import com.phantomartist.azure.cosmosdb.PreparedQuery;
+import com.phantomartist.azure.cosmosdb.Query;
+
+/**
+ * Title: PreparedQueryImpl
+ *
+ * Description: Immutable, thread-safe query template. Each bind creates a QueryImpl that shares the
+ * template's SQL, parameter names and normalised cache key rather than recomputing them.
+ */
+public class PreparedQueryImpl implements PreparedQuery {
+
+    private final AsyncDocumentClient asyncClient;
+    private final String collectionLink;
+    private final String query;
+    private final String normalisedQuery;
+    private final String[] paramNames;
+    private final int maxFetchResults;
+    private final ClientContext context;
+
+    /**
+     * Constructor
+     *
+     * @param asyncClient the client
+     * @param collectionLink the collection link
+     * @param query the query
+     * @param paramNames the names of the parameters the query uses
+     * @param context the settings and shared state of the client
+     */
+    public PreparedQueryImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final String query, final String[] paramNames, final ClientContext context ) {
+        this( asyncClient, collectionLink, query, validate( query, paramNames ), SqlUtil.normaliseWhitespace( query ), QueryImpl.DEFAULT_MAX_FETCH_RESULTS, context );
+    }
+
+    private PreparedQueryImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final String query, final String[] paramNames,
+            final String normalisedQuery, final int maxFetchResults, final ClientContext context ) {
+        this.asyncClient = asyncClient;
+        this.collectionLink = collectionLink;
+        this.query = query;
+        this.normalisedQuery = normalisedQuery;
+        this.paramNames = paramNames;
+        this.maxFetchResults = maxFetchResults;
+        this.context = context;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSql() {
+        return query;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getParamNames() {
+        return Collections.unmodifiableList( Arrays.asList( paramNames ) );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public PreparedQuery withMaxResultsPageSize( final int maxFetchResults ) {
+        return new PreparedQueryImpl( asyncClient, collectionLink, query, paramNames, normalisedQuery, maxFetchResults, context );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query bind( final Object... values ) {
+
+        int count = values == null ? 0 : values.length;
+        if ( count != paramNames.length ) {
+            throw new IllegalArgumentException( "Expected [" + paramNames.length + "] values for " + Arrays.toString( paramNames ) + " but got [" + count + "]" );
+        }
+
+        Query bound = new QueryImpl( asyncClient, collectionLink, query, normalisedQuery, context )
+            .setMaxResultsPageSize( maxFetchResults );
+        for ( int i = 0; i < count; i++ ) {
+            bound.addParam( paramNames[i], values[i] );
+        }
+        return bound;
+    }
+
+    /**
+     * Check the parameter names once, when the template is prepared.
+     *
+     * @param query the query
+     * @param paramNames the parameter names
+     *
+     * @return String[] a private copy of the names
+     */
+    private static String[] validate( final String query, final String[] paramNames ) {
+
+        if ( query == null ) {
+            throw new IllegalArgumentException( "Query cannot be null" );
+        }
+        String[] names = paramNames == null ? new String[0] : paramNames.clone();
+        Set<String> seen = new HashSet<>();
+        for ( String name : names ) {
+            if ( name == null || !name.startsWith( "@" ) ) {
+                throw new IllegalArgumentException( "Parameter name [" + name + "] must start with '@'" );
+            }
+            if ( !seen.add( name ) ) {
+                throw new IllegalArgumentException( "Parameter name [" + name + "] is repeated" );
+            }
+            if ( !query.contains( name ) ) {
+                throw new IllegalArgumentException( "Parameter name [" + name + "] is not used in the query" );
+            }
+        }
+        return names;
+    }
+}
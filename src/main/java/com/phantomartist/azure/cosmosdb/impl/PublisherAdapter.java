@@ -0,0 +1,81 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+/**
+ * Title: PublisherAdapter
+ *
+ * Description: Adapts a Reactive Streams Publisher to an Observable, so that it can drive the same code
+ * as an Observable source. Requests made on the Observable are passed straight through to the Publisher's
+ * Subscription, and unsubscribing cancels it, so backpressure and cancellation are preserved.
+ */
+public class PublisherAdapter {
+
+    private PublisherAdapter() {
+    }
+
+    /**
+     * Adapt a Publisher to an Observable. Each subscription to the Observable subscribes to the Publisher.
+     *
+     * @param <T> the type of item
+     * @param publisher the publisher
+     *
+     * @return Observable the observable
+     */
+    public static <T> Observable<T> toObservable( final Publisher<T> publisher ) {
+
+        if ( publisher == null ) {
+            throw new IllegalArgumentException( "Publisher cannot be null" );
+        }
+        return Observable.unsafeCreate( subscriber -> publisher.subscribe( new Bridge<>( subscriber ) ) );
+    }
+
+    /**
+     * Forwards the Publisher's signals to an rx Subscriber, and its requests back to the Publisher.
+     */
+    private static final class Bridge<T> implements Subscriber<T> {
+
+        private final rx.Subscriber<? super T> child;
+        private Subscription subscription;
+
+        Bridge( final rx.Subscriber<? super T> child ) {
+            this.child = child;
+        }
+
+        @Override
+        public void onSubscribe( final Subscription s ) {
+
+            if ( subscription != null ) {
+                s.cancel(); // Only one subscription is allowed
+                return;
+            }
+            subscription = s;
+            child.add( Subscriptions.create( s::cancel ) );
+            child.setProducer( n -> {
+                if ( n > 0 ) {
+                    s.request( n );
+                }
+            });
+        }
+
+        @Override
+        public void onNext( final T item ) {
+            child.onNext( item );
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            child.onError( e );
+        }
+
+        @Override
+        public void onComplete() {
+            child.onCompleted();
+        }
+    }
+}
@@ -1,7 +1,19 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -13,10 +25,16 @@ import com.microsoft.azure.cosmosdb.SqlParameter;
 import com.microsoft.azure.cosmosdb.SqlParameterCollection;
 import com.microsoft.azure.cosmosdb.SqlQuerySpec;
 import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.DocumentMapper;
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.OperationType;
 import com.phantomartist.azure.cosmosdb.Query;
+import com.phantomartist.azure.cosmosdb.ResultSet;
 import com.phantomartist.azure.cosmosdb.results.OnComplete;
 import com.phantomartist.azure.cosmosdb.results.OnError;
 import com.phantomartist.azure.cosmosdb.results.OnPage;
+import com.phantomartist.azure.cosmosdb.results.OnResumablePage;
 
 import rx.Observable;
 
@@ -28,14 +46,27 @@ import rx.Observable;
 public class QueryImpl extends AbstractDBInteraction implements Query {
     
     private static final Logger LOG = LoggerFactory.getLogger( QueryImpl.class );
+    private static final SampledErrorLog QUERY_ERRORS = new SampledErrorLog( LOG );
+    
+    static final int DEFAULT_MAX_FETCH_RESULTS = 1000;
 
     private AsyncDocumentClient asyncClient;
     private String collectionLink;
     private String query;
+    private String normalisedQuery;
+    private String fingerprint;
     private SqlParameterCollection sqlParams;
-    private int maxFetchResults = 1000; // Default limit
+    private int maxFetchResults = DEFAULT_MAX_FETCH_RESULTS; // Default limit
     private boolean isBlocking;
     private String partitionKey;
+    private String continuation;
+    private int maxPages;
+    private int maxDegreeOfParallelism;
+    private int maxBufferedItemCount;
+    private boolean isAdaptiveParallelism;
+    private Lane lane = Lane.INTERACTIVE;
+    private ClientContext context;
+    private DocumentCache cache;
     
     /**
      * Constructor
@@ -45,9 +76,42 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
      * @param query the query
      */
     public QueryImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final String query ) {
+        this( asyncClient, collectionLink, query, ClientContext.DEFAULT );
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param asyncClient the client
+     * @param collectionLink the collection link
+     * @param query the query
+     * @param context the settings and shared state of the client
+     */
+    public QueryImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final String query, final ClientContext context ) {
+        this( asyncClient, collectionLink, query, null, context );
+    }
+    
+    /**
+     * Constructor
+     * 
+     * @param asyncClient the client
+     * @param collectionLink the collection link
+     * @param query the query
+     * @param normalisedQuery the query with whitespace normalised, if already known (null to normalise on demand)
+     * @param context the settings and shared state of the client
+     */
+    public QueryImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final String query, final String normalisedQuery, final ClientContext context ) {
         this.asyncClient = asyncClient;
+        this.normalisedQuery = normalisedQuery;
         this.collectionLink = collectionLink;
         this.query = query;
+        this.context = context;
+        this.cache = context.getCache();
+        setTimeoutMillis( context.getTimeoutMillis() );
+        setMetricsListener( context.getMetricsListener() );
+        setRateLimiter( context.getRateLimiter() );
+        setScheduler( context.getScheduler() );
+        setThrottleRetry( context.getThrottleRetry() );
     }
     
     /**
@@ -59,6 +123,15 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
         return this;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setTimeout( final long timeout, final TimeUnit unit ) {
+        setTimeoutMillis( unit.toMillis( timeout ) );
+        return this;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -77,6 +150,72 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
         return this;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setContinuation( String continuation ) {
+        this.continuation = continuation;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setMaxPages( int maxPages ) {
+        if ( maxPages < 0 ) {
+            throw new IllegalArgumentException( "Max pages cannot be negative" );
+        }
+        this.maxPages = maxPages;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setMaxDegreeOfParallelism( final int maxDegreeOfParallelism ) {
+        if ( maxDegreeOfParallelism < 0 ) {
+            throw new IllegalArgumentException( "Max degree of parallelism cannot be negative" );
+        }
+        this.maxDegreeOfParallelism = maxDegreeOfParallelism;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setMaxBufferedItemCount( final int maxBufferedItemCount ) {
+        if ( maxBufferedItemCount < 0 ) {
+            throw new IllegalArgumentException( "Max buffered item count cannot be negative" );
+        }
+        this.maxBufferedItemCount = maxBufferedItemCount;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setAdaptiveParallelism( final boolean isAdaptive ) {
+        this.isAdaptiveParallelism = isAdaptive;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Query setLane( final Lane lane ) {
+        if ( lane == null ) {
+            throw new IllegalArgumentException( "Lane cannot be null" );
+        }
+        this.lane = lane;
+        return this;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -112,14 +251,281 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
      */
     @Override
     public void execute( final OnPage onPage, final OnError onError, final OnComplete onComplete ) {
-        executeForResultSet( onPage, onError, onComplete, 
+        
+        // Only onPage is required, other params are optional
+        if ( onPage == null ) {
+            throw new IllegalArgumentException( "Must implement OnPage for result set handling" );
+        }
+        
+        CountDownLatch latch = isBlocking ? 
+            new CountDownLatch(1) : 
+            null;
+        
+        if ( isCacheable() ) {
+            executeCached( onPage, onError, onComplete, latch );
+        } else {
+            executeQuery( ( page, token ) -> onPage.onPage( page ), onError, onComplete, latch );
+        }
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void execute( final OnResumablePage onPage, final OnError onError, final OnComplete onComplete ) {
+        
+        // Only onPage is required, other params are optional
+        if ( onPage == null ) {
+            throw new IllegalArgumentException( "Must implement OnPage for result set handling" );
+        }
+        
+        executeQuery( onPage, onError, onComplete, 
             isBlocking ? 
                 new CountDownLatch(1) : 
                 null );
     }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> ResultSet<T> executeForResultSet( final Class<T> type ) {
+        return new ResultSetImpl<>( executeForPages(), type );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public <T> ResultSet<T> executeForResultSet( final DocumentMapper<T> mapper ) {
+        return new ResultSetImpl<>( executeForPages(), mapper );
+    }
+    
+    /**
+     * Execute the query and block until every page has been read.
+     * 
+     * @return List of pages
+     */
+    private List<List<com.phantomartist.azure.cosmosdb.Document>> executeForPages() {
+        
+        final List<List<com.phantomartist.azure.cosmosdb.Document>> pages = new ArrayList<>();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        
+        if ( isCacheable() ) {
+            executeCached( pages::add, error::set, null, latch );
+        } else {
+            executeQuery( ( page, token ) -> pages.add( page ), error::set, null, latch );
+        }
+        
+        if ( error.get() instanceof DBTimeoutException ) {
+            throw (DBTimeoutException) error.get();
+        }
+        if ( error.get() != null ) {
+            throw new RuntimeException( "Query failed " + this, error.get() );
+        }
+        return pages;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<List<com.phantomartist.azure.cosmosdb.Document>> executeAsync() {
+        
+        final CompletableFuture<List<com.phantomartist.azure.cosmosdb.Document>> future = new CompletableFuture<>();
+        final List<com.phantomartist.azure.cosmosdb.Document> results = new ArrayList<>();
+        
+        OnPage onPage = results::addAll; // Pages arrive one at a time, so no locking is needed
+        OnError onError = future::completeExceptionally;
+        OnComplete onComplete = () -> future.complete( results );
+        
+        if ( isCacheable() ) {
+            executeCached( onPage, onError, onComplete, null );
+        } else {
+            executeQuery( ( page, token ) -> onPage.onPage( page ), onError, onComplete, null );
+        }
+        return future;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Iterator<com.phantomartist.azure.cosmosdb.Document> iterator() {
+        return queryIterator();
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Stream<com.phantomartist.azure.cosmosdb.Document> stream() {
+        
+        QueryIterator it = queryIterator();
+        return StreamSupport.stream( 
+                Spliterators.spliteratorUnknownSize( it, Spliterator.ORDERED | Spliterator.NONNULL ), 
+                false )
+            .onClose( it::close );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Publisher<com.phantomartist.azure.cosmosdb.Document> publisher() {
+        return new QueryPublisher( pages() );
+    }
+    
+    /**
+     * Create the pull-based iterator, replaying the result from the cache if it is there.
+     * 
+     * @return QueryIterator the iterator
+     */
+    private QueryIterator queryIterator() {
+        return new QueryIterator( pages(), getTimeoutMillis() );
+    }
+    
+    /**
+     * Get the pages of the query, replayed from the client-side cache when possible. Nothing is 
+     * executed until subscribed, and the query is cancelled if it has not completed by the deadline 
+     * (see {@link #withDeadline(Observable, java.util.function.Supplier)}).
+     * 
+     * @return Observable of pages
+     */
+    private Observable<List<com.phantomartist.azure.cosmosdb.Document>> pages() {
+        
+        return Observable.defer( () -> {
+            
+            if ( isCacheable() ) {
+                List<List<com.phantomartist.azure.cosmosdb.Document>> cached = cache.getQuery( collectionLink, getCacheKey() );
+                if ( cached != null ) {
+                    if ( LOG.isDebugEnabled() ) {
+                        LOG.debug( "{} served from cache", this );
+                    }
+                    return Observable.from( cached );
+                }
+            }
+            final OperationRecorder recorder = startQuery();
+            return withDeadline( buildQuery(), () -> "query " + this )
+                .doOnNext( pageResults -> {
+                    if ( LOG.isDebugEnabled() ) {
+                        LOG.debug( "{} partition [{}] cost [{}] RU", this, PartitionBreakdown.getPartitionKeyRangeId( pageResults ), pageResults.getRequestCharge() );
+                    }
+                    recorder.page( pageCount( pageResults ), pageResults.getRequestCharge() );
+                })
+                .doOnError( recorder::fail )
+                .doOnCompleted( recorder::complete )
+                .doOnUnsubscribe( recorder::complete ) // A consumer stopping early; only the first report counts
+                .map( pageResults -> DocumentUtil.wrap( pageResults.getResults(), DocumentUtil.getContentLength( pageResults.getResponseHeaders() ) ) );
+        });
+    }
+    
+    /**
+     * Serve the query from the client-side cache if possible, otherwise execute it and 
+     * cache the result if it is small enough.
+     * 
+     * Cached results are replayed on the calling thread, so execution is effectively 
+     * blocking on a hit regardless of {@link #setBlocking(boolean)}.
+     * 
+     * @param onPage what to do when a page of results arrives
+     * @param onError what to do when an error occurs
+     * @param onComplete what to do when operation completes
+     * @param latch the latch (null if async execution)
+     */
+    private void executeCached( final OnPage onPage, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+        
+        final String cacheKey = getCacheKey();
+        List<List<com.phantomartist.azure.cosmosdb.Document>> cached = cache.getQuery( collectionLink, cacheKey );
+        if ( cached != null ) {
+            if ( LOG.isDebugEnabled() ) {
+                LOG.debug( "{} served from cache", this );
+            }
+            for ( List<com.phantomartist.azure.cosmosdb.Document> page : cached ) {
+                onPage.onPage( page );
+            }
+            try {
+                if ( onComplete != null ) {
+                    onComplete.onComplete();
+                }
+            } finally {
+                countDown( latch );
+            }
+            return;
+        }
+        
+        final long generation = cache.getGeneration( collectionLink );
+        final List<List<com.phantomartist.azure.cosmosdb.Document>> pages = new ArrayList<>();
+        final int[] size = new int[1];
+        
+        executeQuery( 
+            ( page, token ) -> {
+                // Keep our own copy in case the caller modifies the page
+                size[0] += page.size();
+                if ( size[0] <= cache.getMaxQueryResultSize() ) {
+                    pages.add( new ArrayList<>( page ) );
+                }
+                onPage.onPage( page );
+            }, 
+            onError, 
+            () -> {
+                if ( size[0] <= cache.getMaxQueryResultSize() ) {
+                    cache.putQuery( collectionLink, cacheKey, pages, generation );
+                }
+                if ( onComplete != null ) {
+                    onComplete.onComplete();
+                }
+            }, 
+            latch );
+    }
+    
+    /**
+     * @return boolean true if the whole result may be served from, or added to, the client-side cache
+     */
+    private boolean isCacheable() {
+        return cache != null && cache.isCachingQueries() && continuation == null && maxPages == 0;
+    }
+    
+    /**
+     * @return String the key identifying this query's result in the cache
+     */
+    private String getCacheKey() {
+        
+        if ( normalisedQuery == null ) {
+            normalisedQuery = SqlUtil.normaliseWhitespace( query );
+        }
+        StringBuilder key = new StringBuilder( normalisedQuery )
+            .append( '|' ).append( partitionKey )
+            .append( '|' ).append( maxFetchResults );
+        if ( sqlParams != null ) {
+            for ( SqlParameter param : sqlParams ) {
+                key.append( '|' ).append( param.toJson() );
+            }
+        }
+        return key.toString();
+    }
 
     private Observable<FeedResponse<Document>> buildQuery() {
         
+        Observable<FeedResponse<Document>> pages = getThrottleRetry() == null ? 
+            buildQuery( continuation ) : 
+            Observable.defer( () -> {
+                
+                // A throttled query carries on from the continuation of the last page it delivered
+                AtomicReference<String> resumeFrom = new AtomicReference<>( continuation );
+                return getThrottleRetry().apply( 
+                    Observable.defer( () -> buildQuery( resumeFrom.get() ) )
+                        .doOnNext( page -> resumeFrom.set( page.getResponseContinuation() ) ), 
+                    true );
+            });
+        
+        return maxPages > 0 ? 
+            pages.take( maxPages ) : 
+            pages;
+    }
+
+    private Observable<FeedResponse<Document>> buildQuery( final String continuation ) {
+        
         // Build the query
         SqlQuerySpec sql = new SqlQuerySpec( query );
         if ( sqlParams != null ) {
@@ -127,7 +533,7 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
         }
         
         if ( LOG.isDebugEnabled() ) {
-            LOG.debug( "Executing..." + sql );
+            LOG.debug( "Executing...{}", sql );
         }
         
         // Narrow the query to a specific partition?
@@ -136,42 +542,123 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
             queryOptions.setPartitionKey( new PartitionKey( partitionKey ) );
         } else {
             queryOptions.setEnableCrossPartitionQuery( true );
+            queryOptions.setMaxDegreeOfParallelism( maxDegreeOfParallelism );
+            if ( maxBufferedItemCount > 0 ) {
+                queryOptions.setMaxBufferedItemCount( maxBufferedItemCount );
+            }
         }
         
         // Set the page size of this query
         if ( maxFetchResults >= 0 ) {
             queryOptions.setMaxItemCount( maxFetchResults );
         }
+        
+        // Carry on from where a previous execution stopped?
+        if ( continuation != null ) {
+            queryOptions.setRequestContinuation( continuation );
+        }
 
-        return asyncClient.queryDocuments( 
-            collectionLink, 
-            sql, 
-            queryOptions );
+        // The pages read at once, one per partition read concurrently
+        AtomicInteger pagesPerBatch = new AtomicInteger( partitionKey == null ? 
+            Math.max( 1, maxDegreeOfParallelism ) : 
+            1 );
+        Observable<FeedResponse<Document>> pages = partitionKey == null && isAdaptiveParallelism ?
+            getPartitionCount().concatMap( count -> {
+                
+                int parallelism = maxDegreeOfParallelism > 0 ? 
+                    Math.min( count, maxDegreeOfParallelism ) : 
+                    count;
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug( "Reading [{}] of [{}] partitions concurrently", parallelism, count );
+                }
+                queryOptions.setMaxDegreeOfParallelism( parallelism );
+                pagesPerBatch.set( Math.max( 1, parallelism ) );
+                return asyncClient.queryDocuments( collectionLink, sql, queryOptions );
+            }) :
+            asyncClient.queryDocuments( collectionLink, sql, queryOptions );
+        
+        // Pace the query to the RU/s budget, learning its cost by shape, and schedule each batch of pages in its lane
+        pages = pacePages( pages, collectionLink, context.getRateLimiter() == null ? null : getFingerprint(), 
+            lane, FeedResponse::getRequestCharge, pagesPerBatch::get );
+        
+        return pages;
     }
     
-    private void executeForResultSet( final OnPage onPage, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+    /**
+     * Get the number of partition key ranges of the collection, looking it up on first use.
+     * 
+     * @return Observable emitting the partition count
+     */
+    private Observable<Integer> getPartitionCount() {
         
-        // Only onPage is required, other params are optional
-        if ( onPage == null ) {
-            throw new IllegalArgumentException( "Must implement OnPage for result set handling" );
+        Integer known = context.getPartitionCount( collectionLink );
+        if ( known != null ) {
+            return Observable.just( known );
+        }
+        return asyncClient.readPartitionKeyRanges( collectionLink, new FeedOptions() )
+            .map( page -> page.getResults().size() )
+            .reduce( 0, Integer::sum )
+            .doOnNext( count -> context.setPartitionCount( collectionLink, count ) );
+    }
+    
+    /**
+     * Start measuring an execution of the query, recording it against the query's shape as well if 
+     * the client tracks queries.
+     * 
+     * @return OperationRecorder the recorder for the execution
+     */
+    private OperationRecorder startQuery() {
+        
+        QueryStatsRegistry queryStats = context.getQueryStats();
+        if ( queryStats == null ) {
+            return startOperation( OperationType.QUERY, collectionLink );
         }
+        return OperationRecorder.start( queryStats.listener( getFingerprint(), partitionKey == null, getMetricsListener() ), OperationType.QUERY, collectionLink );
+    }
+    
+    /**
+     * @return String the shape of the query, computed on first use
+     */
+    private String getFingerprint() {
+        
+        if ( fingerprint == null ) {
+            fingerprint = SqlUtil.fingerprint( query );
+        }
+        return fingerprint;
+    }
+    
+    private static int pageCount( final FeedResponse<Document> pageResults ) {
+        return pageResults.getResults() == null ? 0 : pageResults.getResults().size();
+    }
+    
+    private void executeQuery( final OnResumablePage onPage, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
         
         if ( LOG.isTraceEnabled() ) {
-            LOG.trace( "Entering execute() with latch " + latch );
+            LOG.trace( "Entering execute() with latch {}", latch );
         }
         
-        buildQuery().subscribe( 
+        final PartitionBreakdown breakdown = partitionKey == null && LOG.isDebugEnabled() ? 
+            new PartitionBreakdown() : 
+            null;
+        final OperationRecorder recorder = startQuery();
+        
+        withDeadline( buildQuery(), () -> "query " + this ).subscribe( 
             pageResults -> { 
                 if ( LOG.isDebugEnabled() ) {
-                    LOG.debug( getSQLDebug( query, sqlParams ) + " cost [" + pageResults.getRequestCharge() + "] RU" );
+                    LOG.debug( "{} partition [{}] cost [{}] RU", this, PartitionBreakdown.getPartitionKeyRangeId( pageResults ), pageResults.getRequestCharge() );
+                }
+                if ( breakdown != null ) {
+                    breakdown.record( pageResults );
                 }
+                recorder.page( pageCount( pageResults ), pageResults.getRequestCharge() );
                 
                 // Wrap the Azure objects and do the user's work
-                onPage.onPage( DocumentUtil.wrap( pageResults.getResults() ) );
+                onPage.onPage( DocumentUtil.wrap( pageResults.getResults(), DocumentUtil.getContentLength( pageResults.getResponseHeaders() ) ), pageResults.getResponseContinuation() );
             }, 
             e -> { 
                 try {
-                    LOG.error( getSQLDebug( query, sqlParams ) + "] caused " + e.getMessage(), e);
+                    recorder.fail( e );
+                    QUERY_ERRORS.error( "{} caused {}", this, e.getMessage(), e );
                     if ( onError != null ) {
                         onError.onError( e );
                     }
@@ -184,6 +671,10 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
                     if ( LOG.isDebugEnabled() ) {
                         LOG.debug( "Complete" );
                     }
+                    if ( breakdown != null ) {
+                        LOG.debug( "{} by partition: {}", this, breakdown );
+                    }
+                    recorder.complete();
                     if ( onComplete != null ) {
                         onComplete.onComplete();
                     }
@@ -199,16 +690,21 @@ public class QueryImpl extends AbstractDBInteraction implements Query {
         }
     }
     
-    private String getSQLDebug( String sql, SqlParameterCollection sqlParams ) {
+    /**
+     * Describe the query and its parameters for logging. Only called when a message is actually logged.
+     * 
+     * @return String the SQL followed by the parameters
+     */
+    @Override
+    public String toString() {
         
-        StringBuffer debug = new StringBuffer( sql );
-        if ( sqlParams != null ) {
-            debug.append( " " );
-            for ( SqlParameter param : sqlParams ) {
-                debug.append( param.toJson() );
-            }
+        if ( sqlParams == null ) {
+            return query;
+        }
+        StringBuilder debug = new StringBuilder( query ).append( ' ' );
+        for ( SqlParameter param : sqlParams ) {
+            debug.append( param.toJson() );
         }
-        
         return debug.toString();
     }
 }
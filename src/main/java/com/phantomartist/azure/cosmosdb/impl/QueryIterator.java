@@ -0,0 +1,168 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.Document;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Title: QueryIterator
+ *
+ * Description: Blocking, pull-based iterator over the pages of a query.
+ *
+ * The query is not started until the first call to {@link #hasNext()}. Pages are requested from the
+ * database one at a time, and the next page is only requested once the consumer has drained the current
+ * one, so at most one page is held in memory however large the result. Closing the iterator before it is
+ * exhausted cancels the query, and no further pages are fetched.
+ *
+ * Not thread-safe: the iterator must be consumed by one thread at a time.
+ */
+public class QueryIterator implements Iterator<Document>, AutoCloseable {
+
+    private static final Object COMPLETE = new Object();
+
+    private final Observable<List<Document>> pages;
+    private final long timeoutMillis;
+    private final BlockingQueue<Object> signals = new LinkedBlockingQueue<>();
+    private PageSubscriber subscriber;
+    private Iterator<Document> page = Collections.emptyIterator();
+    private boolean isDone;
+
+    /**
+     * Constructor
+     *
+     * @param pages the pages of the query, which must not have been subscribed to
+     * @param timeoutMillis how long to wait for each page before giving up
+     */
+    public QueryIterator( final Observable<List<Document>> pages, final long timeoutMillis ) {
+        this.pages = pages;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Blocks while the next page is fetched, if the current page has been drained.
+     *
+     * @throws DBTimeoutException if the query's deadline passes or the next page does not arrive in time
+     * @throws RuntimeException if the query fails
+     */
+    @Override
+    public boolean hasNext() {
+
+        while ( !page.hasNext() ) {
+            if ( isDone ) {
+                return false;
+            }
+            page = nextPage();
+        }
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Document next() {
+
+        if ( !hasNext() ) {
+            throw new NoSuchElementException();
+        }
+        return page.next();
+    }
+
+    /**
+     * Cancel the query. Safe to call more than once, and after the iterator is exhausted.
+     */
+    @Override
+    public void close() {
+
+        isDone = true;
+        page = Collections.emptyIterator();
+        if ( subscriber != null ) {
+            subscriber.unsubscribe();
+        }
+        signals.clear();
+    }
+
+    /**
+     * Request the next page and wait for it to arrive.
+     *
+     * @return Iterator over the page, empty if the query has completed
+     */
+    @SuppressWarnings( "unchecked" )
+    private Iterator<Document> nextPage() {
+
+        if ( subscriber == null ) {
+            subscriber = new PageSubscriber();
+            pages.subscribe( subscriber );
+        }
+        subscriber.requestPage();
+
+        Object signal;
+        try {
+            signal = signals.poll( timeoutMillis, TimeUnit.MILLISECONDS );
+        } catch ( InterruptedException e ) {
+            close();
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while awaiting query page", e );
+        }
+
+        if ( signal == null ) {
+            close();
+            throw new DBTimeoutException( "wait for query page", timeoutMillis );
+        }
+        if ( signal instanceof DBTimeoutException ) {
+            close();
+            throw (DBTimeoutException) signal; // The query's deadline passed
+        }
+        if ( signal == COMPLETE ) {
+            isDone = true;
+            return Collections.emptyIterator();
+        }
+        if ( signal instanceof Throwable ) {
+            close();
+            throw new RuntimeException( "Query failed", (Throwable) signal );
+        }
+        return ( (List<Document>) signal ).iterator();
+    }
+
+    /**
+     * Hands pages from the client's I/O threads to the consuming thread, one request at a time.
+     */
+    private final class PageSubscriber extends Subscriber<List<Document>> {
+
+        @Override
+        public void onStart() {
+            request( 0 ); // Nothing until the consumer asks
+        }
+
+        void requestPage() {
+            request( 1 );
+        }
+
+        @Override
+        public void onNext( final List<Document> page ) {
+            signals.add( page );
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            signals.add( e );
+        }
+
+        @Override
+        public void onCompleted() {
+            signals.add( COMPLETE );
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.phantomartist.azure.cosmosdb.Document;
+
+import rx.Observable;
+
+/**
+ * Title: QueryPublisher
+ *
+ * Description: Reactive Streams Publisher over the pages of a query.
+ *
+ * Demand from the subscriber is mapped onto page fetches: a page is only requested from the database
+ * when the subscriber has outstanding demand and every document of the previous page has been delivered,
+ * so at most one page is buffered however slowly the subscriber consumes. Nothing is fetched until the
+ * subscriber first requests, and cancelling stops the query without fetching any more pages.
+ *
+ * Each subscription executes the query afresh. Signals to the subscriber are serialised, but may be
+ * delivered on the client's I/O threads.
+ */
+public class QueryPublisher implements Publisher<Document> {
+
+    private final Observable<List<Document>> pages;
+
+    /**
+     * Constructor
+     *
+     * @param pages the pages of the query, which must honour backpressure and not start until subscribed
+     */
+    public QueryPublisher( final Observable<List<Document>> pages ) {
+        this.pages = pages;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void subscribe( final Subscriber<? super Document> subscriber ) {
+
+        if ( subscriber == null ) {
+            throw new NullPointerException( "Subscriber cannot be null" );
+        }
+        subscriber.onSubscribe( new QuerySubscription( subscriber ) );
+    }
+
+    /**
+     * Delivers the documents of each page to one subscriber, fetching pages as demand requires.
+     */
+    private final class QuerySubscription implements Subscription {
+
+        private final Subscriber<? super Document> downstream;
+        private final Queue<Document> buffer = new ConcurrentLinkedQueue<>();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+
+        private volatile boolean isCancelled;
+        private volatile boolean isDone;
+        private volatile boolean isPageRequested;
+        private volatile Throwable error;
+        private volatile PageSubscriber upstream;
+
+        QuerySubscription( final Subscriber<? super Document> downstream ) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void request( final long n ) {
+
+            if ( n <= 0 ) {
+                PageSubscriber current = upstream;
+                if ( current != null ) {
+                    current.unsubscribe();
+                }
+                buffer.clear();
+                onTerminate( new IllegalArgumentException( "Request must be positive but was [" + n + "]" ) );
+                return;
+            }
+            requested.getAndUpdate( r -> r + n < 0 ? Long.MAX_VALUE : r + n ); // Cap rather than overflow
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+
+            isCancelled = true;
+            PageSubscriber current = upstream;
+            if ( current != null ) {
+                current.unsubscribe();
+            }
+            drain(); // Releases the buffer
+        }
+
+        /**
+         * Deliver buffered documents while there is demand, and fetch the next page once the
+         * buffer is empty. Only one thread runs the loop at a time; calls made while another
+         * thread is draining are picked up by that thread before it exits.
+         */
+        private void drain() {
+
+            if ( wip.getAndIncrement() != 0 ) {
+                return;
+            }
+
+            int missed = 1;
+            for (;;) {
+
+                long demand = requested.get();
+                long emitted = 0;
+                while ( emitted != demand && !isCancelled ) {
+                    Document doc = buffer.poll();
+                    if ( doc == null ) {
+                        break;
+                    }
+                    downstream.onNext( doc );
+                    emitted++;
+                }
+
+                if ( isCancelled ) {
+                    buffer.clear();
+                    return; // Leaves wip raised so nothing further is delivered
+                }
+
+                if ( buffer.isEmpty() ) {
+                    if ( isDone ) {
+                        isCancelled = true;
+                        if ( error != null ) {
+                            downstream.onError( error );
+                        } else {
+                            downstream.onComplete();
+                        }
+                        return;
+                    }
+                    if ( emitted != demand && !isPageRequested ) {
+                        isPageRequested = true;
+                        if ( upstream == null ) {
+                            upstream = new PageSubscriber( this );
+                            pages.subscribe( upstream );
+                        }
+                        upstream.requestPage();
+                    }
+                }
+
+                if ( emitted != 0 && demand != Long.MAX_VALUE ) {
+                    requested.addAndGet( -emitted );
+                }
+
+                missed = wip.addAndGet( -missed );
+                if ( missed == 0 ) {
+                    break;
+                }
+            }
+        }
+
+        void onPage( final List<Document> page ) {
+
+            buffer.addAll( page );
+            isPageRequested = false;
+            drain();
+        }
+
+        void onTerminate( final Throwable e ) {
+
+            error = e;
+            isDone = true;
+            drain();
+        }
+    }
+
+    /**
+     * Pulls pages from the query only when asked to by {@link QuerySubscription#drain()}.
+     */
+    private static final class PageSubscriber extends rx.Subscriber<List<Document>> {
+
+        private final QuerySubscription parent;
+
+        PageSubscriber( final QuerySubscription parent ) {
+            this.parent = parent;
+        }
+
+        @Override
+        public void onStart() {
+            request( 0 ); // Nothing until there is demand
+        }
+
+        void requestPage() {
+            request( 1 );
+        }
+
+        @Override
+        public void onNext( final List<Document> page ) {
+            parent.onPage( page );
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            parent.onTerminate( e );
+        }
+
+        @Override
+        public void onCompleted() {
+            parent.onTerminate( null );
+        }
+    }
+}
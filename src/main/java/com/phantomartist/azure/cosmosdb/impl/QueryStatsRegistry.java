@@ -0,0 +1,170 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.phantomartist.azure.cosmosdb.MetricsListener;
+import com.phantomartist.azure.cosmosdb.OperationMetrics;
+import com.phantomartist.azure.cosmosdb.QueryStats;
+
+/**
+ * Title: QueryStatsRegistry
+ *
+ * Description: Per-client statistics for each query shape, keyed by {@link SqlUtil#fingerprint(String)}, so the
+ * shapes using the most throughput or time can be found however many different values they are run with.
+ *
+ * The number of shapes tracked is bounded: once the limit is reached, executions of shapes not already tracked
+ * are counted together under {@link #OTHER}. Recording is lock-free once a shape is known.
+ */
+public class QueryStatsRegistry {
+
+    /**
+     * The fingerprint under which shapes beyond the limit are counted.
+     */
+    public static final String OTHER = "(other)";
+
+    private final int maxFingerprints;
+    private volatile ConcurrentMap<String, Aggregate> aggregates = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param maxFingerprints the most query shapes to track individually, must be positive
+     */
+    public QueryStatsRegistry( final int maxFingerprints ) {
+
+        if ( maxFingerprints <= 0 ) {
+            throw new IllegalArgumentException( "Max fingerprints must be positive" );
+        }
+        this.maxFingerprints = maxFingerprints;
+    }
+
+    /**
+     * Get a listener that records one execution of a query against its fingerprint, then passes the
+     * metrics on.
+     *
+     * @param fingerprint the fingerprint of the query
+     * @param isCrossPartition true if the query has no partition key
+     * @param next the client's own listener (null if none)
+     *
+     * @return MetricsListener the listener for the execution
+     */
+    public MetricsListener listener( final String fingerprint, final boolean isCrossPartition, final MetricsListener next ) {
+
+        return metrics -> {
+            record( fingerprint, isCrossPartition, metrics );
+            if ( next != null ) {
+                next.onOperation( metrics );
+            }
+        };
+    }
+
+    /**
+     * Record one execution of a query.
+     *
+     * @param fingerprint the fingerprint of the query
+     * @param isCrossPartition true if the query has no partition key
+     * @param metrics the metrics of the execution
+     */
+    public void record( final String fingerprint, final boolean isCrossPartition, final OperationMetrics metrics ) {
+
+        Aggregate aggregate = getAggregate( fingerprint );
+        long latencyMicros = TimeUnit.NANOSECONDS.toMicros( metrics.getLatencyNanos() );
+        aggregate.calls.increment();
+        aggregate.latencyMicros.record( latencyMicros );
+        aggregate.totalLatencyMicros.add( latencyMicros );
+        aggregate.requestCharge.add( metrics.getRequestCharge() );
+        aggregate.documents.add( metrics.getItemCount() );
+        if ( isCrossPartition ) {
+            aggregate.crossPartitionCalls.increment();
+        }
+        if ( !metrics.isSuccess() ) {
+            aggregate.failures.increment();
+        }
+    }
+
+    /**
+     * Get the worst offending query shapes.
+     *
+     * @param n the most shapes to return
+     * @param order what to rank the shapes by, highest first
+     *
+     * @return List of the stats of up to n shapes
+     */
+    public List<QueryStats> getTop( final int n, final QueryStats.Order order ) {
+
+        List<QueryStats> stats = new ArrayList<>();
+        for ( Map.Entry<String, Aggregate> entry : aggregates.entrySet() ) {
+            stats.add( entry.getValue().toStats( entry.getKey() ) );
+        }
+        stats.sort( comparator( order ).reversed() );
+        return stats.size() > n ? new ArrayList<>( stats.subList( 0, Math.max( 0, n ) ) ) : stats;
+    }
+
+    /**
+     * Discard the figures gathered so far.
+     */
+    public void reset() {
+        aggregates = new ConcurrentHashMap<>();
+    }
+
+    private Aggregate getAggregate( final String fingerprint ) {
+
+        ConcurrentMap<String, Aggregate> current = aggregates;
+        Aggregate aggregate = current.get( fingerprint );
+        if ( aggregate != null ) {
+            return aggregate;
+        }
+        // The limit may be overshot slightly by racing threads, which is harmless
+        return current.computeIfAbsent( current.size() < maxFingerprints ? fingerprint : OTHER, key -> new Aggregate() );
+    }
+
+    private static Comparator<QueryStats> comparator( final QueryStats.Order order ) {
+
+        switch ( order ) {
+            case MEAN_LATENCY:
+                return Comparator.comparingDouble( QueryStats::getMeanLatencyMillis );
+            case P99_LATENCY:
+                return Comparator.comparingDouble( QueryStats::getP99LatencyMillis );
+            case CALLS:
+                return Comparator.comparingLong( QueryStats::getCalls );
+            case DOCUMENTS:
+                return Comparator.comparingLong( QueryStats::getDocuments );
+            case REQUEST_CHARGE:
+            default:
+                return Comparator.comparingDouble( QueryStats::getRequestCharge );
+        }
+    }
+
+    private static final class Aggregate {
+
+        private final Histogram latencyMicros = new Histogram();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder crossPartitionCalls = new LongAdder();
+        private final LongAdder totalLatencyMicros = new LongAdder();
+        private final LongAdder documents = new LongAdder();
+        private final DoubleAdder requestCharge = new DoubleAdder();
+
+        QueryStats toStats( final String fingerprint ) {
+
+            long count = calls.sum();
+            return new QueryStats(
+                fingerprint,
+                count,
+                failures.sum(),
+                crossPartitionCalls.sum(),
+                requestCharge.sum(),
+                count == 0 ? 0 : totalLatencyMicros.sum() / 1000.0 / count,
+                latencyMicros.getValueAtPercentile( 99 ) / 1000.0,
+                documents.sum() );
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.ToDoubleFunction;
+
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.RateLimitConfig;
+import com.phantomartist.azure.cosmosdb.SchedulerConfig;
+
+import rx.Observable;
+
+/**
+ * Title: RateLimiter
+ *
+ * Description: Paces the requests of a client to stay within the RU/s budget of each collection, see
+ * {@link RateLimitConfig}. Waiting is done with timers, so no thread is blocked while an operation waits
+ * for its turn.
+ *
+ * An operation takes its expected cost from the collection's {@link TokenBucket} when subscribed, waits if
+ * the bucket is in debt, and is then sent. As responses arrive the expected cost is replaced by the actual
+ * charge, so operations whose cost varies (e.g. queries returning many pages) are still paid for in full.
+ *
+ * Interactive operations reserve from the bucket, going into debt if need be. Background and bulk operations
+ * only take from the bucket when that leaves the headroom, so they never delay interactive ones. A lane with a
+ * share of the budget (see {@link SchedulerConfig#setRequestUnitShare(Lane, double)}) also pays into a bucket of
+ * its own, filled at its share of the rate, so it is held to its share even while the rest of the budget is unused.
+ */
+public class RateLimiter {
+
+    private final RateLimitConfig config;
+    private final long burstNanos;
+    private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+    private final Map<Lane, Double> shares = new EnumMap<>( Lane.class );
+    private final Map<Lane, ConcurrentMap<String, TokenBucket>> laneBuckets = new EnumMap<>( Lane.class );
+
+    /**
+     * Constructor
+     *
+     * @param config the rate limit configuration
+     */
+    public RateLimiter( final RateLimitConfig config ) {
+        this( config, null );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param config the rate limit configuration
+     * @param scheduler the lane configuration, for the lanes' shares of the budget (null if no lane is capped)
+     */
+    public RateLimiter( final RateLimitConfig config, final SchedulerConfig scheduler ) {
+        this.config = config;
+        this.burstNanos = TimeUnit.MILLISECONDS.toNanos( config.getBurstMillis() );
+        if ( scheduler != null ) {
+            for ( Lane lane : Lane.values() ) {
+                double share = scheduler.getRequestUnitShare( lane );
+                if ( share < 1 ) {
+                    shares.put( lane, share );
+                    laneBuckets.put( lane, new ConcurrentHashMap<>() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Pace an operation. Nothing is sent until the result is subscribed.
+     *
+     * @param collectionLink the collection operated on
+     * @param costKey identifies the kind of operation for learning its cost, e.g. an operation type or query fingerprint
+     * @param lane the lane of the operation
+     * @param request the operation
+     * @param chargeOf gets the RU charge of a response
+     *
+     * @return Observable the operation, sent once the budget allows
+     */
+    public <T> Observable<T> pace( final String collectionLink, final String costKey, final Lane lane, final Observable<T> request,
+            final ToDoubleFunction<T> chargeOf ) {
+
+        final TokenBucket bucket = getBucket( collectionLink );
+        if ( bucket == null ) {
+            return request; // No budget for this collection
+        }
+        final TokenBucket laneBucket = getLaneBucket( collectionLink, lane, bucket );
+        return Observable.defer( () -> {
+            double estimate = bucket.getEstimate( costKey );
+            Observable<T> charged = charge( bucket, laneBucket, costKey, estimate, request, chargeOf );
+            if ( laneBucket == null ) {
+                return admit( bucket, estimate, lane ).concatMap( ready -> charged );
+            }
+            long wait = laneBucket.reserve( estimate ); // Only this lane uses the bucket, so its debt delays no other lane
+            Observable<Long> admitted = wait == 0 ?
+                admit( bucket, estimate, lane ) :
+                Observable.timer( wait, TimeUnit.NANOSECONDS ).concatMap( ready -> admit( bucket, estimate, lane ) );
+            return admitted.concatMap( ready -> charged );
+        });
+    }
+
+    /**
+     * @param collectionLink the collection link
+     *
+     * @return TokenBucket the bucket of the collection, or null if it has no budget
+     */
+    TokenBucket getBucket( final String collectionLink ) {
+
+        TokenBucket bucket = buckets.get( collectionLink );
+        if ( bucket != null ) {
+            return bucket;
+        }
+        double requestUnitsPerSecond = config.getRequestUnitsPerSecond( collectionLink );
+        if ( requestUnitsPerSecond <= 0 ) {
+            return null;
+        }
+        return buckets.computeIfAbsent( collectionLink, link -> new TokenBucket( requestUnitsPerSecond, burstNanos, config.isAdaptive() ) );
+    }
+
+    /**
+     * @param collectionLink the collection link
+     * @param lane the lane
+     * @param bucket the bucket of the collection
+     *
+     * @return TokenBucket the bucket of the lane's share of the collection's budget, or null if the lane is not capped
+     */
+    TokenBucket getLaneBucket( final String collectionLink, final Lane lane, final TokenBucket bucket ) {
+
+        ConcurrentMap<String, TokenBucket> collections = laneBuckets.get( lane );
+        if ( collections == null ) {
+            return null;
+        }
+        TokenBucket laneBucket = collections.get( collectionLink );
+        if ( laneBucket != null ) {
+            return laneBucket;
+        }
+        double requestUnitsPerSecond = config.getRequestUnitsPerSecond( collectionLink ) * shares.get( lane );
+        return collections.computeIfAbsent( collectionLink, link -> new TokenBucket( requestUnitsPerSecond, burstNanos, false ) );
+    }
+
+    /**
+     * Take the expected cost from the bucket, waiting for as long as the bucket requires.
+     *
+     * @return Observable emitting once the operation may be sent
+     */
+    private Observable<Long> admit( final TokenBucket bucket, final double estimate, final Lane lane ) {
+
+        if ( lane == Lane.INTERACTIVE ) {
+            long wait = bucket.reserve( estimate );
+            return wait == 0 ? Observable.just( 0L ) : Observable.timer( wait, TimeUnit.NANOSECONDS );
+        }
+        return Observable.defer( () -> {
+            long wait = bucket.tryAcquire( estimate, config.getBulkHeadroom() );
+            return wait == 0 ?
+                Observable.just( 0L ) :
+                Observable.timer( wait, TimeUnit.NANOSECONDS ).concatMap( retry -> admit( bucket, estimate, lane ) );
+        });
+    }
+
+    /**
+     * Replace the expected cost with the actual charges as the responses arrive, and learn the cost
+     * of the operation once it completes.
+     *
+     * @return Observable the operation
+     */
+    private static <T> Observable<T> charge( final TokenBucket bucket, final TokenBucket laneBucket, final String costKey, final double estimate,
+            final Observable<T> request, final ToDoubleFunction<T> chargeOf ) {
+
+        final AtomicBoolean isSettled = new AtomicBoolean();
+        final DoubleAdder total = new DoubleAdder();
+        return request
+            .doOnNext( response -> {
+                double charge = chargeOf.applyAsDouble( response );
+                total.add( charge );
+                adjust( bucket, laneBucket, isSettled.compareAndSet( false, true ) ? charge - estimate : charge );
+            })
+            .doOnError( e -> {
+                double charge = ExceptionUtil.getRequestCharge( e );
+                adjust( bucket, laneBucket, isSettled.compareAndSet( false, true ) ? charge - estimate : charge );
+                if ( ExceptionUtil.isStatus( e, ExceptionUtil.THROTTLED ) ) {
+                    bucket.onThrottled();
+                }
+            })
+            .doOnCompleted( () -> {
+                if ( isSettled.compareAndSet( false, true ) ) {
+                    adjust( bucket, laneBucket, -estimate ); // Nothing was charged
+                }
+                bucket.learn( costKey, total.sum() );
+            })
+            .doOnUnsubscribe( () -> {
+                if ( isSettled.compareAndSet( false, true ) ) {
+                    adjust( bucket, laneBucket, -estimate ); // Cancelled before any response
+                }
+            });
+    }
+
+    private static void adjust( final TokenBucket bucket, final TokenBucket laneBucket, final double requestUnits ) {
+        bucket.adjust( requestUnits );
+        if ( laneBucket != null ) {
+            laneBucket.adjust( requestUnits );
+        }
+    }
+}
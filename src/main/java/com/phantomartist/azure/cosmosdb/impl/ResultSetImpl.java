@@ -0,0 +1,177 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentMapper;
+import com.phantomartist.azure.cosmosdb.ResultSet;
+
+/**
+ * Title: ResultSetImpl
+ *
+ * Description: ResultSet over the pages of a query result.
+ *
+ * The pages are shared, not copied. Each view (objects, JSON, Maps) is a read-only list that converts
+ * a document the first time that element is requested and remembers the result, so a document is only
+ * ever converted to the views that are actually used, and only once per view. Views may be read from
+ * several threads; under contention an element may occasionally be converted twice, but every reader
+ * sees the same result once it has been stored.
+ *
+ * The single-result methods return the first result, or null if there are no results.
+ */
+public class ResultSetImpl<T> implements ResultSet<T> {
+
+    private final List<List<Document>> pages;
+    private final int[] pageStarts;
+    private final int size;
+
+    private final LazyList<T> results;
+    private final LazyList<String> json;
+    private final LazyList<Map<Object, Object>> maps;
+
+    /**
+     * Constructor
+     *
+     * @param pages the pages of documents, which must not be modified afterwards
+     * @param type the type to convert results to
+     */
+    public ResultSetImpl( final List<List<Document>> pages, final Class<T> type ) {
+        this( pages, JacksonDocumentMapper.forClass( type ) );
+    }
+
+    /**
+     * Constructor
+     *
+     * @param pages the pages of documents, which must not be modified afterwards
+     * @param mapper the mapper to convert results with
+     */
+    public ResultSetImpl( final List<List<Document>> pages, final DocumentMapper<T> mapper ) {
+
+        this.pages = pages;
+        this.pageStarts = new int[pages.size()];
+        int total = 0;
+        for ( int i = 0; i < pages.size(); i++ ) {
+            pageStarts[i] = total;
+            total += pages.get( i ).size();
+        }
+        this.size = total;
+
+        this.results = new LazyList<>( mapper::map );
+        this.json = new LazyList<>( Document::toJson );
+        this.maps = new LazyList<>( ResultSetImpl::toMap );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public T getSingleResult() {
+        return size == 0 ? null : results.get( 0 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String getSingleResultAsJson() {
+        return size == 0 ? null : json.get( 0 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getResultsAsJson() {
+        return json;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Map<Object, Object> getSingleResultAsMap() {
+        return size == 0 ? null : maps.get( 0 );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Map<Object, Object>> getResultsAsMap() {
+        return maps;
+    }
+
+    /**
+     * Find the document at an index across all pages.
+     *
+     * @param index the index
+     *
+     * @return Document the document
+     */
+    private Document getDocument( final int index ) {
+
+        int page = Arrays.binarySearch( pageStarts, index );
+        if ( page < 0 ) {
+            page = -page - 2; // Insertion point - 1 is the page containing the index
+        } else {
+            while ( page + 1 < pageStarts.length && pageStarts[page + 1] == index ) {
+                page++; // Skip empty pages starting at the same index
+            }
+        }
+        return pages.get( page ).get( index - pageStarts[page] );
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private static Map<Object, Object> toMap( final Document doc ) {
+        return doc.toObject( HashMap.class );
+    }
+
+    /**
+     * Read-only list view that converts each document on first access and remembers the result.
+     */
+    private final class LazyList<E> extends AbstractList<E> implements RandomAccess {
+
+        private final Function<Document, E> converter;
+        private final AtomicReferenceArray<E> converted = new AtomicReferenceArray<>( size );
+
+        LazyList( final Function<Document, E> converter ) {
+            this.converter = converter;
+        }
+
+        @Override
+        public E get( final int index ) {
+
+            if ( index < 0 || index >= size ) {
+                throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size );
+            }
+            E value = converted.get( index );
+            if ( value == null ) {
+                value = converter.apply( getDocument( index ) );
+                if ( !converted.compareAndSet( index, null, value ) ) {
+                    value = converted.get( index ); // Another thread got there first, use theirs
+                }
+            }
+            return value;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+
+/**
+ * Title: SampledErrorLog
+ *
+ * Description: Logs the errors from one call site at a bounded rate, so that an outage or a throttling storm
+ * does not flood the log with thousands of identical stack traces, or spend its time formatting them.
+ *
+ * Up to a fixed number of errors are logged per interval; the rest are counted, and the count is logged with
+ * the first error of a later interval. Every error is logged if DEBUG is enabled for the logger. Messages use
+ * SLF4J placeholders and the arguments are only formatted if the error is logged, so a suppressed error costs
+ * a couple of atomic operations and allocates nothing.
+ *
+ * Whether DEBUG is enabled is up to the application: the library logs through SLF4J and leaves the binding
+ * and the level of the com.phantomartist loggers to the application's logging configuration.
+ */
+public class SampledErrorLog {
+
+    static final int DEFAULT_MAX_PER_INTERVAL = 10;
+    static final long DEFAULT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos( 10 );
+
+    private final Logger log;
+    private final int maxPerInterval;
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong intervalStart;
+    private final AtomicInteger logged = new AtomicInteger();
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * Constructor, logging up to 10 errors every 10 seconds
+     *
+     * @param log the logger
+     */
+    public SampledErrorLog( final Logger log ) {
+        this( log, DEFAULT_MAX_PER_INTERVAL, DEFAULT_INTERVAL_NANOS, System::nanoTime );
+    }
+
+    SampledErrorLog( final Logger log, final int maxPerInterval, final long intervalNanos, final LongSupplier nanoClock ) {
+        this.log = log;
+        this.maxPerInterval = maxPerInterval;
+        this.intervalNanos = intervalNanos;
+        this.nanoClock = nanoClock;
+        this.intervalStart = new AtomicLong( nanoClock.getAsLong() );
+    }
+
+    /**
+     * Log an error, unless too many have been logged recently.
+     *
+     * @param format the message, with a {} placeholder for the argument
+     * @param arg the argument
+     * @param e the error
+     */
+    public void error( final String format, final Object arg, final Throwable e ) {
+
+        if ( isLogged() ) {
+            log.error( format, arg, e );
+        }
+    }
+
+    /**
+     * Log an error, unless too many have been logged recently.
+     *
+     * @param format the message, with {} placeholders for the arguments
+     * @param arg1 the first argument
+     * @param arg2 the second argument
+     * @param e the error
+     */
+    public void error( final String format, final Object arg1, final Object arg2, final Throwable e ) {
+
+        if ( isLogged() ) {
+            log.error( format, arg1, arg2, e );
+        }
+    }
+
+    /**
+     * @return long the number of errors suppressed since the last one was logged
+     */
+    long getSuppressed() {
+        return suppressed.get();
+    }
+
+    /**
+     * Decide whether to log an error, and log the number suppressed before it if so.
+     *
+     * @return boolean true if the error should be logged
+     */
+    boolean isLogged() {
+
+        if ( !log.isDebugEnabled() && !tryAcquire() ) {
+            suppressed.incrementAndGet();
+            return false;
+        }
+        long missed = suppressed.getAndSet( 0 );
+        if ( missed > 0 ) {
+            log.warn( "[{}] similar errors were not logged", missed );
+        }
+        return true;
+    }
+
+    private boolean tryAcquire() {
+
+        long now = nanoClock.getAsLong();
+        long start = intervalStart.get();
+        if ( now - start >= intervalNanos && intervalStart.compareAndSet( start, now ) ) {
+            logged.set( 0 ); // A racing thread may count against the old interval, which is harmless
+        }
+        return logged.incrementAndGet() <= maxPerInterval;
+    }
+}
@@ -0,0 +1,149 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.regex.Pattern;
+
+/**
+ * Title: SqlUtil
+ *
+ * Description: SQL text utilities
+ */
+public class SqlUtil {
+
+    private static final Pattern IN_LIST = Pattern.compile( "(?i)\\bIN ?\\( ?(\\?|@\\w+)( ?, ?(\\?|@\\w+))* ?\\)" );
+
+    private SqlUtil() {
+    }
+
+    /**
+     * Normalise the whitespace in a SQL string so that queries differing only in layout compare equal.
+     * Runs of whitespace outside string literals are collapsed to a single space, and leading and
+     * trailing whitespace is removed. String literals are left untouched.
+     *
+     * @param sql the SQL
+     *
+     * @return String the normalised SQL
+     */
+    public static String normaliseWhitespace( final String sql ) {
+
+        StringBuilder normalised = new StringBuilder( sql.length() );
+        char quote = 0;
+        boolean pendingSpace = false;
+
+        for ( int i = 0; i < sql.length(); i++ ) {
+            char c = sql.charAt( i );
+            if ( quote == 0 && Character.isWhitespace( c ) ) {
+                pendingSpace = normalised.length() > 0;
+                continue;
+            }
+            if ( pendingSpace ) {
+                normalised.append( ' ' );
+                pendingSpace = false;
+            }
+            if ( quote == 0 && ( c == '\'' || c == '"' ) ) {
+                quote = c;
+            } else if ( c == quote && sql.charAt( i - 1 ) != '\\' ) {
+                quote = 0;
+            }
+            normalised.append( c );
+        }
+        return normalised.toString();
+    }
+
+    /**
+     * Reduce a SQL string to its shape, so that queries differing only in their values or layout share a
+     * fingerprint. Whitespace is normalised as for {@link #normaliseWhitespace(String)}, string and numeric
+     * literals are replaced by '?', and IN lists of literals or parameters are collapsed to "IN (?)" whatever
+     * their length. Parameter names are kept, as they are part of the shape.
+     *
+     * @param sql the SQL
+     *
+     * @return String the fingerprint
+     */
+    public static String fingerprint( final String sql ) {
+
+        StringBuilder shape = new StringBuilder( sql.length() );
+        boolean pendingSpace = false;
+
+        int i = 0;
+        while ( i < sql.length() ) {
+            char c = sql.charAt( i );
+            if ( Character.isWhitespace( c ) ) {
+                pendingSpace = shape.length() > 0;
+                i++;
+                continue;
+            }
+            if ( pendingSpace ) {
+                shape.append( ' ' );
+                pendingSpace = false;
+            }
+            if ( c == '\'' || c == '"' ) {
+                i = skipString( sql, i );
+                shape.append( '?' );
+            } else if ( Character.isDigit( c ) && !isIdentifierPart( shape ) ) {
+                i = skipNumber( sql, i );
+                shape.append( '?' );
+            } else {
+                shape.append( c );
+                i++;
+            }
+        }
+        return IN_LIST.matcher( shape ).replaceAll( "IN (?)" );
+    }
+
+    /**
+     * @param sql the SQL
+     * @param start the index of the opening quote
+     *
+     * @return int the index after the string literal starting at start (or the end of the SQL if it is not closed)
+     */
+    private static int skipString( final String sql, final int start ) {
+
+        char quote = sql.charAt( start );
+        for ( int i = start + 1; i < sql.length(); i++ ) {
+            char c = sql.charAt( i );
+            if ( c == '\\' ) {
+                i++; // Skip the escaped character
+            } else if ( c == quote ) {
+                return i + 1;
+            }
+        }
+        return sql.length();
+    }
+
+    /**
+     * @param sql the SQL
+     * @param start the index of the first digit
+     *
+     * @return int the index after the numeric literal, including any fraction and exponent, starting at start
+     */
+    private static int skipNumber( final String sql, final int start ) {
+
+        int i = start;
+        while ( i < sql.length() ) {
+            char c = sql.charAt( i );
+            if ( Character.isDigit( c ) || c == '.' ) {
+                i++;
+            } else if ( ( c == 'e' || c == 'E' ) && i + 1 < sql.length() ) {
+                char next = sql.charAt( i + 1 );
+                i += ( next == '+' || next == '-' ) ? 2 : 1;
+            } else {
+                break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @param shape the fingerprint so far
+     *
+     * @return boolean true if the last character of the shape so far continues an identifier or parameter name
+     */
+    private static boolean isIdentifierPart( final StringBuilder shape ) {
+
+        if ( shape.length() == 0 ) {
+            return false;
+        }
+        char last = shape.charAt( shape.length() - 1 );
+        return Character.isLetterOrDigit( last ) || last == '_' || last == '@' || last == '$';
+    }
+}
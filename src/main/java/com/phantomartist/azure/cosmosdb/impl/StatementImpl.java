@@ -1,17 +1,31 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
-import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.microsoft.azure.cosmosdb.AccessCondition;
+import com.microsoft.azure.cosmosdb.AccessConditionType;
+import com.microsoft.azure.cosmosdb.PartitionKey;
 import com.microsoft.azure.cosmosdb.RequestOptions;
 import com.microsoft.azure.cosmosdb.ResourceResponse;
 import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
 import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentKey;
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.OperationType;
 import com.phantomartist.azure.cosmosdb.Statement;
+import com.phantomartist.azure.cosmosdb.WriteResult;
 import com.phantomartist.azure.cosmosdb.results.OnComplete;
 import com.phantomartist.azure.cosmosdb.results.OnError;
 import com.phantomartist.azure.cosmosdb.results.OnResult;
@@ -26,10 +40,24 @@ import rx.Observable;
 public class StatementImpl extends AbstractDBInteraction implements Statement {
 
     private static final Logger LOG = LoggerFactory.getLogger( StatementImpl.class );
+    private static final SampledErrorLog WRITE_ERRORS = new SampledErrorLog( LOG );
+    private static final SampledErrorLog DELETE_ERRORS = new SampledErrorLog( LOG );
+    
+    private static final int DEFAULT_MAX_CONCURRENCY = 32;
+    private static final int DEFAULT_BULK_CHUNK_SIZE = 100;
+    
+    private static final int MAX_CONFLICT_RETRIES = 10;
+    private static final long CONFLICT_BACKOFF_BASE_MILLIS = 5;
+    private static final long CONFLICT_BACKOFF_MAX_MILLIS = 1000;
     
     private AsyncDocumentClient asyncClient;
     private String collectionLink;
     private boolean isBlocking;
+    private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private int bulkChunkSize = DEFAULT_BULK_CHUNK_SIZE;
+    private boolean isAdaptiveConcurrency = true;
+    private Lane lane; // Null for the default lane of each operation
+    private DocumentCache cache;
     
     /**
      * Constructor
@@ -38,8 +66,25 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      * @param collectionLink the collection link that we're operating on
      */
     public StatementImpl( final AsyncDocumentClient asyncClient, final String collectionLink ) {
+        this( asyncClient, collectionLink, ClientContext.DEFAULT );
+    }
+    
+    /**
+     * Constructor
+     *
+     * @param asyncClient asyncClient the client
+     * @param collectionLink the collection link that we're operating on
+     * @param context the settings and shared state of the client
+     */
+    public StatementImpl( final AsyncDocumentClient asyncClient, final String collectionLink, final ClientContext context ) {
         this.asyncClient = asyncClient;
         this.collectionLink = collectionLink;
+        this.cache = context.getCache();
+        setTimeoutMillis( context.getTimeoutMillis() );
+        setMetricsListener( context.getMetricsListener() );
+        setRateLimiter( context.getRateLimiter() );
+        setScheduler( context.getScheduler() );
+        setThrottleRetry( context.getThrottleRetry() );
     }
 
     /**
@@ -51,6 +96,60 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
         return this;
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement setTimeout( final long timeout, final TimeUnit unit ) {
+        setTimeoutMillis( unit.toMillis( timeout ) );
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement setMaxConcurrency( int maxConcurrency ) {
+        if ( maxConcurrency < 1 ) {
+            throw new IllegalArgumentException( "Max concurrency must be at least 1" );
+        }
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement setBulkChunkSize( int bulkChunkSize ) {
+        if ( bulkChunkSize < 1 ) {
+            throw new IllegalArgumentException( "Bulk chunk size must be at least 1" );
+        }
+        this.bulkChunkSize = bulkChunkSize;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement setAdaptiveConcurrency( boolean isAdaptiveConcurrency ) {
+        this.isAdaptiveConcurrency = isAdaptiveConcurrency;
+        return this;
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Statement setLane( final Lane lane ) {
+        if ( lane == null ) {
+            throw new IllegalArgumentException( "Lane cannot be null" );
+        }
+        this.lane = lane;
+        return this;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -80,7 +179,46 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      */
     @Override
     public void upsert( final Object doc, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
-        upsert( doc, null, onError, onComplete, 
+        upsert( doc, null, onResult, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void upsert( final Object doc, final String ifMatchETag, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        write( "Upsert", doc, paceWrite( "Upsert", createUpsert( doc, ifMatchETag ) ), startOperation( OperationType.UPSERT, collectionLink ), onResult, onError, onComplete, 
+            isBlocking ? 
+                new CountDownLatch( 1 ) : 
+                null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void replace( final String id, final String partitionKey, final Object doc, final String ifMatchETag, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        write( "Replace", id, paceWrite( "Replace", createReplace( id, partitionKey, doc, ifMatchETag ) ), startOperation( OperationType.REPLACE, collectionLink ), onResult, onError, onComplete, 
+            isBlocking ? 
+                new CountDownLatch( 1 ) : 
+                null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readModifyWrite( final String id, final String partitionKey, final Function<Document, Object> modifier, final OnError onError, final OnComplete onComplete ) {
+        readModifyWrite( id, partitionKey, modifier, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void readModifyWrite( final String id, final String partitionKey, final Function<Document, Object> modifier, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        OperationRecorder recorder = startOperation( OperationType.READ_MODIFY_WRITE, collectionLink );
+        write( "Read-modify-write", id, createReadModifyWrite( id, partitionKey, modifier, recorder ), recorder, onResult, onError, onComplete, 
             isBlocking ? 
                 new CountDownLatch( 1 ) : 
                 null );
@@ -99,12 +237,79 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      */
     @Override
     public void multiUpsert( final List<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( Observable.from( docs ), onResult, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Iterator<? extends Object> docs, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( docs, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Iterator<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( fromIterator( docs ), onResult, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Stream<? extends Object> docs, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( docs, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Stream<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( fromIterator( docs.iterator() )
+                .doAfterTerminate( docs::close )
+                .doOnUnsubscribe( docs::close ), // Stream.close runs its handlers once
+            onResult, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Observable<? extends Object> docs, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( docs, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Observable<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
         multiUpsert( docs, onResult, onError, onComplete, 
             isBlocking ? 
                 new CountDownLatch( 1 ) : 
                 null );
     }
     
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Publisher<? extends Object> docs, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( docs, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiUpsert( final Publisher<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        multiUpsert( PublisherAdapter.toObservable( docs ), onResult, onError, onComplete );
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -119,7 +324,7 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      */
     @Override
     public void delete( final Document docLink, OnError onError ) {
-        delete( docLink, null, null );
+        delete( docLink, onError, null );
     }
     
     /**
@@ -135,30 +340,168 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      */
     @Override
     public void delete( final Document docLink, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
-        delete( docLink, onResult, onError, onComplete,
+        delete( docLink.getId(), docLink.getSelfLink(), null, startOperation( OperationType.DELETE, collectionLink ), onResult, onError, onComplete,
             isBlocking ? 
                 new CountDownLatch( 1 ) : 
                 null );
     }
     
     /**
-     * Perform the upsert in either asynchronous or blocking manner.
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( final String id, final String partitionKey ) {
+        delete( id, partitionKey, null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( final String id, final String partitionKey, final OnError onError ) {
+        delete( id, partitionKey, onError, null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( final String id, final String partitionKey, final OnError onError, final OnComplete onComplete ) {
+        delete( id, partitionKey, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void delete( final String id, final String partitionKey, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        delete( id, DocumentUtil.getDocumentLink( collectionLink, id ), partitionKey, startOperation( OperationType.DELETE, collectionLink ), onResult, onError, onComplete,
+            isBlocking ? 
+                new CountDownLatch( 1 ) : 
+                null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiDelete( final List<DocumentKey> keys, final OnError onError, final OnComplete onComplete ) {
+        multiDelete( keys, null, onError, onComplete );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void multiDelete( final List<DocumentKey> keys, final OnResult onResult, final OnError onError, final OnComplete onComplete ) {
+        multiDelete( keys, onResult, onError, onComplete, 
+            isBlocking ? 
+                new CountDownLatch( 1 ) : 
+                null );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<WriteResult> upsertAsync( final Object doc ) {
+        return toFuture( "Upsert", doc, createUpsert( doc ), false, startOperation( OperationType.UPSERT, collectionLink ) );
+    }
+    
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CompletableFuture<WriteResult> deleteAsync( final String id, final String partitionKey ) {
+        return toFuture( "Delete", id, createDelete( id, DocumentUtil.getDocumentLink( collectionLink, id ), partitionKey ), true, startOperation( OperationType.DELETE, collectionLink ) );
+    }
+    
+    /**
+     * Perform a single document write, completing a future with the outcome.
      * 
-     * @param doc the document to upsert
+     * @param operation the name of the operation for logging
+     * @param target the document or id being written, for logging
+     * @param write the write observable
+     * @param isMissingOk if true, a document that does not exist (404) completes the future rather than failing it
+     * @param recorder records the operation for metrics
+     * 
+     * @return CompletableFuture the future
+     */
+    private CompletableFuture<WriteResult> toFuture( final String operation, final Object target, final Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> write,
+            final boolean isMissingOk, final OperationRecorder recorder ) {
+        
+        final CompletableFuture<WriteResult> future = new CompletableFuture<>();
+        withDeadline( pace( write, collectionLink, operation, getLane( Lane.INTERACTIVE ), ResourceResponse::getRequestCharge ), 
+                () -> operation.toLowerCase() + " of doc [" + target + "]" ).subscribe(
+            rr -> {
+                
+                Document wrapped = rr.getResource() == null ? 
+                    null : 
+                    DocumentUtil.wrap( rr.getResource() );
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug( "{} of doc [{}] cost [{}]", operation, target, rr.getRequestCharge() );
+                }
+                recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+                recorder.items( 1 );
+                future.complete( new WriteResult( wrapped, rr.getRequestCharge() ) );
+                
+            }, e -> {
+                
+                if ( isMissingOk && ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) ) {
+                    recorder.response( ExceptionUtil.getRequestCharge( e ), ExceptionUtil.NOT_FOUND );
+                    recorder.complete();
+                    future.complete( new WriteResult( null, ExceptionUtil.getRequestCharge( e ) ) ); // Already gone
+                    return;
+                }
+                recorder.fail( e );
+                WRITE_ERRORS.error( "Error during {} for doc [{}]", operation, target, e );
+                future.completeExceptionally( e );
+                
+            }, () -> {
+                
+                recorder.complete();
+                future.complete( null ); // No-op if a result has already completed it
+            });
+        return future;
+    }
+    
+    /**
+     * Pace a single document write in the statement's lane.
+     * 
+     * @param operation the name of the operation, for learning its cost
+     * @param write the write observable
+     * 
+     * @return Observable the write, sent once the budget and lane allow
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> paceWrite( final String operation, 
+            final Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> write ) {
+        return pace( write, collectionLink, operation, getLane( Lane.INTERACTIVE ), ResourceResponse::getRequestCharge );
+    }
+    
+    /**
+     * Perform a single document write in either asynchronous or blocking manner.
+     * 
+     * @param operation the name of the operation for logging
+     * @param target the document or id being written, for logging
+     * @param write the write observable, paced (see {@link #paceWrite(String, Observable)})
+     * @param recorder records the operation for metrics
      * @param onResult action to execute on result
      * @param onError action to execute on error
      * @param onComplete action to execute on complete
      * @param latch the latch (null if async execution)
      */
-    private void upsert( final Object doc, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+    private void write( final String operation, final Object target, final Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> write, 
+            final OperationRecorder recorder, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
         
-        createUpsert( doc ).subscribe(
+        withDeadline( write, () -> operation.toLowerCase() + " of doc [" + target + "]" ).subscribe(
             rr -> {
                 
                 Document wrapped = DocumentUtil.wrap( rr.getResource() );
                 if ( LOG.isDebugEnabled() ) {
-                    LOG.debug( "Upsert of doc [" + wrapped.getId() + "] cost [" + rr.getRequestCharge() + "]" );
+                    LOG.debug( "{} of doc [{}] cost [{}]", operation, wrapped.getId(), rr.getRequestCharge() );
                 }
+                recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+                recorder.items( 1 );
                 if ( onResult != null ) {
                     onResult.onResult( wrapped );
                 }
@@ -166,7 +509,8 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
             }, e -> {
                 
                 try {
-                    LOG.error( "Error during upsert for doc [" + doc + "]", e );
+                    recorder.fail( e );
+                    WRITE_ERRORS.error( "Error during {} for doc [{}]", operation, target, e );
                     if ( onError != null ) {
                         onError.onError( e );
                     }
@@ -177,8 +521,9 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
             }, () -> {
                 
                 try {
+                    recorder.complete();
                     if ( LOG.isDebugEnabled() ) {
-                        LOG.debug( "Upsert of doc [" + doc + "] complete" );
+                        LOG.debug( "{} of doc [{}] complete", operation, target );
                     }
                     if ( onComplete != null ) {
                         onComplete.onComplete();
@@ -194,82 +539,101 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      * Perform the multi-upsert in either asynchronous or blocking mode.
      * 
      * @param docs the docs
-     * @param onResult action to perform on result
-     * @param onError action to perfom on error
+     * @param onResult action to perform for each document written
+     * @param onError action to perfom for each document that fails
      * @param onComplete action to perform on complete
      * @param latch the latch (null if async execution)
      */
-    private void multiUpsert( final List<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+    private void multiUpsert( final Observable<? extends Object> docs, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
         
-        // Register a list of observables
-        List<Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>>> createDocumentsOBs =
-            new ArrayList<>();
+        new BulkExecutor<Object>( 
+            "upsert", 
+            doc -> paceAttempt( createUpsert( doc ), collectionLink, "Upsert", getLane( Lane.BULK ), ResourceResponse::getRequestCharge ), 
+            startOperation( OperationType.BULK_UPSERT, collectionLink ), 
+            maxConcurrency, 
+            bulkChunkSize, 
+            isAdaptiveConcurrency, 
+            getTimeoutMillis(), 
+            onResult, 
+            onError, 
+            onComplete, 
+            latch )
+        .execute( docs );
+        
+        await( latch );
+    }
+    
+    /**
+     * Perform the multi-delete in either asynchronous or blocking mode.
+     * 
+     * @param keys the keys of the docs to delete
+     * @param onResult action to perform for each document deleted
+     * @param onError action to perfom for each delete that fails
+     * @param onComplete action to perform on complete
+     * @param latch the latch (null if async execution)
+     */
+    private void multiDelete( final List<DocumentKey> keys, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+        
+        new BulkExecutor<DocumentKey>( 
+            "delete", 
+            key -> paceAttempt( createDelete( key ), collectionLink, "Delete", getLane( Lane.BULK ), ResourceResponse::getRequestCharge ), 
+            startOperation( OperationType.BULK_DELETE, collectionLink ), 
+            maxConcurrency, 
+            bulkChunkSize, 
+            isAdaptiveConcurrency, 
+            getTimeoutMillis(), 
+            onResult, 
+            onError, 
+            onComplete, 
+            latch )
+        .execute( Observable.from( keys ) );
         
-        for ( Object doc : docs ) {            
-            createDocumentsOBs.add( createUpsert( doc ) );
-        }
-
-        // Reduce the total RU charge for the batch operation
-        Observable.merge(createDocumentsOBs)
-            .map(ResourceResponse::getRequestCharge)
-            .reduce((sum, value) -> sum+value)
-            .subscribe( totalRU -> {
-                
-                if ( LOG.isDebugEnabled() ) {
-                    LOG.debug( "Multi-Upsert [" + docs.size() + "] docs, average cost [" + totalRU / docs.size() + "] total cost [" + totalRU + "]");
-                }
-
-            }, e -> {
-                
-                try {
-                    LOG.error( "Error occurred while calculating total RU for multi-upsert", e);
-                    if ( onError != null ) {
-                        onError.onError( e );
-                    }
-                } finally {
-                    countDown( latch );  // Must call to prevent extended blocking
-                }
-                
-            }, () -> {
-                
-                try {
-                    if ( LOG.isDebugEnabled() ) {
-                        LOG.debug( "Multi-Upsert [" + docs.size() + "] docs, complete" );
-                    }
-                    if ( onComplete != null ) {
-                        onComplete.onComplete();
-                    }
-                } finally {
-                    countDown( latch );  // Must call to prevent extended blocking
-                }
-            });
         await( latch );
     }
     
     /**
      * Perform the delete in asynchronous or blocking mode.
      * 
-     * @param docLink the doc to delete
+     * @param id the id of the doc to delete
+     * @param docLink the link of the doc to delete
+     * @param partitionKey the partition key of the doc (null if not required)
+     * @param recorder records the operation for metrics
      * @param onResult action to perform on result
      * @param onError action to perform on error
      * @param onComplete action to perform on complete
      * @param latch the latch (null if asynchronous)
      */
-    private void delete( final Document docLink, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
+    private void delete( final String id, final String docLink, final String partitionKey, final OperationRecorder recorder, final OnResult onResult, final OnError onError, final OnComplete onComplete, final CountDownLatch latch ) {
         
-        createDelete( docLink ).subscribe( rr -> {
+        withDeadline( pace( createDelete( id, docLink, partitionKey ), collectionLink, "Delete", getLane( Lane.INTERACTIVE ), ResourceResponse::getRequestCharge ), 
+                () -> "delete of doc [" + id + "]" ).subscribe( rr -> {
             
             if ( LOG.isDebugEnabled() ) {
-                LOG.debug( "Deleting doc id [" + docLink.getId() + "] with link [" + docLink.getSelfLink() + "] cost [" + rr.getRequestCharge() + "]" );
+                LOG.debug( "Deleting doc id [{}] with link [{}] cost [{}]", id, docLink, rr.getRequestCharge() );
             }
-            // TODO: rr.getResource() is null after a delete, so calling this is a bit pointless
+            recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+            recorder.items( 1 );
             if ( onResult != null ) {
+                // A delete returns no document, so onResult only signals that the document was deleted
                 onResult.onResult( null );
             }
         }, e -> {
             
             try {
-                LOG.error( "Error during delete for doc [" + docLink.getId() + "] with link [" + docLink.getSelfLink() + "]", e);
+                if ( ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) ) {
+                    // Already gone, which is the outcome the caller asked for
+                    recorder.response( ExceptionUtil.getRequestCharge( e ), ExceptionUtil.NOT_FOUND );
+                    recorder.complete();
+                    if ( LOG.isDebugEnabled() ) {
+                        LOG.debug( "Delete [{}] with link [{}], doc not found", id, docLink );
+                    }
+                    if ( onComplete != null ) {
+                        onComplete.onComplete();
+                    }
+                    return;
+                }
+                recorder.fail( e );
+                DELETE_ERRORS.error( "Error during delete for doc [{}] with link [{}]", id, docLink, e );
                 if ( onError != null ) {
                     onError.onError( e );
                 }
@@ -280,8 +644,9 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
         }, () -> {
             
             try {
+                recorder.complete();
                 if ( LOG.isDebugEnabled() ) {
-                    LOG.debug( "Delete [" + docLink.getId() + "] with link [" + docLink.getSelfLink() + "], complete" );
+                    LOG.debug( "Delete [{}] with link [{}], complete", id, docLink );
                 }
                 if ( onComplete != null ) {
                     onComplete.onComplete();
@@ -293,6 +658,29 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
         await( latch );
     }
 
+    /**
+     * Adapt an iterator to a backpressure-aware Observable that pulls items only when requested.
+     * The iterator can only be consumed once, so the Observable must only be subscribed once.
+     * 
+     * @param it the iterator
+     * 
+     * @return Observable the observable
+     */
+    private static <T> Observable<T> fromIterator( final Iterator<T> it ) {
+        
+        Iterable<T> once = () -> it;
+        return Observable.from( once );
+    }
+
+    /**
+     * @param defaultLane the lane of the operation if none is set on the statement
+     *
+     * @return Lane the lane to schedule the operation in
+     */
+    private Lane getLane( final Lane defaultLane ) {
+        return lane == null ? defaultLane : lane;
+    }
+
     /**
      * Create the upsert and retrieve the Observable
      * 
@@ -302,22 +690,216 @@ public class StatementImpl extends AbstractDBInteraction implements Statement {
      */
     private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createUpsert( final Object doc ) {
         
-        return asyncClient.upsertDocument(
+        return createUpsert( doc, null );
+    }
+    
+    /**
+     * Create the upsert and retrieve the Observable
+     * 
+     * @param doc the doc
+     * @param ifMatchETag the ETag the stored document must have (null if unconditional)
+     * 
+     * @return Observable the observable
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createUpsert( final Object doc, final String ifMatchETag ) {
+        
+        RequestOptions options = new RequestOptions();
+        setIfMatch( options, ifMatchETag );
+        
+        return invalidateOnWrite( asyncClient.upsertDocument(
             collectionLink, 
-            doc, 
-            new RequestOptions(), 
-            true );
+            DocumentUtil.unwrap( doc ), 
+            options, 
+            true ) );
+    }
+    
+    /**
+     * Create the replace and retrieve the Observable
+     * 
+     * @param id the doc id
+     * @param partitionKey the partition key (null if not required)
+     * @param doc the new content of the doc
+     * @param ifMatchETag the ETag the stored document must have (null if unconditional)
+     * 
+     * @return Observable the observable
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createReplace( final String id, final String partitionKey, final Object doc, final String ifMatchETag ) {
+        
+        RequestOptions options = createRequestOptions( partitionKey );
+        if ( options == null ) {
+            options = new RequestOptions();
+        }
+        setIfMatch( options, ifMatchETag );
+        
+        return invalidateOnWrite( asyncClient.replaceDocument( 
+            DocumentUtil.getDocumentLink( collectionLink, id ), 
+            DocumentUtil.unwrap( doc ), 
+            options ) );
+    }
+    
+    /**
+     * Create the read-modify-write cycle and retrieve the Observable. Each subscription reads the 
+     * current document, applies the modifier and writes the result conditionally on the ETag read 
+     * (or creates it, if there was no document). A write that loses a race to another writer 
+     * (412 Precondition Failed, or 409 Conflict on create) repeats the cycle after a randomised 
+     * exponential back off, so concurrent writers spread out rather than colliding again. Each cycle 
+     * is paced on its own, so a cycle waiting to be repeated holds no place in the statement's lane.
+     * 
+     * @param id the doc id
+     * @param partitionKey the partition key (null if not required)
+     * @param modifier function from the current document to the new content
+     * @param recorder records the reads and retries for metrics
+     * 
+     * @return Observable the observable, paced, empty if the modifier chose not to write
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createReadModifyWrite( final String id, final String partitionKey, final Function<Document, Object> modifier,
+            final OperationRecorder recorder ) {
+        
+        String docLink = DocumentUtil.getDocumentLink( collectionLink, id );
+        
+        Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> cycle = paceWrite( "Read-modify-write", Observable.defer( () -> 
+            asyncClient.readDocument( docLink, createRequestOptions( partitionKey ) )
+                .map( rr -> {
+                    recorder.response( rr.getRequestCharge(), rr.getStatusCode() );
+                    return DocumentUtil.wrap( rr.getResource() );
+                })
+                .onErrorResumeNext( e -> {
+                    if ( !ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) ) {
+                        return Observable.error( e );
+                    }
+                    recorder.response( ExceptionUtil.getRequestCharge( e ), ExceptionUtil.NOT_FOUND );
+                    return Observable.just( (Document) null );
+                })
+                .flatMap( current -> {
+                    
+                    Object modified = modifier.apply( current );
+                    if ( modified == null ) {
+                        return Observable.empty();
+                    }
+                    if ( current == null ) {
+                        RequestOptions options = createRequestOptions( partitionKey );
+                        return invalidateOnWrite( asyncClient.createDocument( collectionLink, DocumentUtil.unwrap( modified ), options, true ) );
+                    }
+                    return createReplace( id, partitionKey, modified, current.getETag() );
+                }) ) );
+        
+        return cycle.retryWhen( errors -> {
+            
+            AtomicInteger attempts = new AtomicInteger();
+            return errors.flatMap( e -> {
+                
+                int attempt = attempts.incrementAndGet();
+                if ( attempt > MAX_CONFLICT_RETRIES || !isLostRace( e ) ) {
+                    return Observable.<Long>error( e );
+                }
+                long backoff = ThreadLocalRandom.current().nextLong( 
+                    Math.min( CONFLICT_BACKOFF_MAX_MILLIS, CONFLICT_BACKOFF_BASE_MILLIS << attempt ) + 1 );
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug( "Write of doc [{}] lost a race, attempt [{}] retrying in [{}ms]", id, attempt, backoff );
+                }
+                recorder.response( ExceptionUtil.getRequestCharge( e ), ExceptionUtil.getStatusCode( e ) );
+                recorder.retries( 1 );
+                return Observable.timer( backoff, TimeUnit.MILLISECONDS );
+            });
+        });
+    }
+    
+    /**
+     * Check whether a write failed because another writer changed the document first.
+     * 
+     * @param e the error
+     * 
+     * @return boolean true if the write should be retried from a fresh read
+     */
+    private static boolean isLostRace( final Throwable e ) {
+        
+        int statusCode = ExceptionUtil.getStatusCode( e );
+        return statusCode == ExceptionUtil.PRECONDITION_FAILED || statusCode == ExceptionUtil.CONFLICT;
+    }
+    
+    /**
+     * Make a write conditional on the stored document having the given ETag.
+     * 
+     * @param options the request options
+     * @param ifMatchETag the ETag (null if unconditional)
+     */
+    private static void setIfMatch( final RequestOptions options, final String ifMatchETag ) {
+        
+        if ( ifMatchETag != null ) {
+            AccessCondition condition = new AccessCondition();
+            condition.setType( AccessConditionType.IfMatch );
+            condition.setCondition( ifMatchETag );
+            options.setAccessCondition( condition );
+        }
+    }
+    
+    /**
+     * Invalidate the cache entries affected by a write once it succeeds.
+     * 
+     * @param write the write
+     * 
+     * @return Observable the observable
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> invalidateOnWrite( final Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> write ) {
+        
+        return cache == null ? 
+            write : 
+            write.doOnNext( rr -> cache.invalidate( collectionLink, rr.getResource().getId() ) );
     }
     
     /**
      * Create the delete and retrieve the Observable
      * 
+     * @param id the doc id
      * @param docLink the doc link
+     * @param partitionKey the partition key (null if not required)
      * 
      * @return Observable the observable
      */
-    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createDelete( final Document docLink ) {
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createDelete( final String id, final String docLink, final String partitionKey ) {
      
-        return asyncClient.deleteDocument( docLink.getSelfLink(), null );
+        Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> delete = asyncClient.deleteDocument( 
+            docLink, 
+            createRequestOptions( partitionKey ) );
+        
+        // A document already gone (404) may still be cached, having been deleted by another client
+        return cache == null ? 
+            delete : 
+            delete
+                .doOnNext( rr -> cache.invalidate( collectionLink, id ) )
+                .doOnError( e -> {
+                    if ( ExceptionUtil.isStatus( e, ExceptionUtil.NOT_FOUND ) ) {
+                        cache.invalidate( collectionLink, id );
+                    }
+                });
+    }
+    
+    /**
+     * Create the delete for a document key and retrieve the Observable
+     * 
+     * @param key the document key
+     * 
+     * @return Observable the observable
+     */
+    private Observable<ResourceResponse<com.microsoft.azure.cosmosdb.Document>> createDelete( final DocumentKey key ) {
+        
+        return createDelete( key.getId(), DocumentUtil.getDocumentLink( collectionLink, key.getId() ), key.getPartitionKey() );
+    }
+    
+    /**
+     * Create the request options for a single document operation
+     * 
+     * @param partitionKey the partition key (null if not required)
+     * 
+     * @return RequestOptions the options, or null if no options are required
+     */
+    private RequestOptions createRequestOptions( final String partitionKey ) {
+        
+        if ( partitionKey == null ) {
+            return null;
+        }
+        RequestOptions options = new RequestOptions();
+        options.setPartitionKey( new PartitionKey( partitionKey ) );
+        return options;
     }
 }
@@ -0,0 +1,88 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import rx.Observable;
+
+/**
+ * Title: ThrottleRetry
+ *
+ * Description: Retries throttled requests (HTTP 429) in place of the Azure client, with the same limits: up to a
+ * number of attempts, within a cumulative wait, each after the retry-after interval the service suggested.
+ *
+ * Retrying here rather than in the Azure client means every throttle is seen by the parts of the library that
+ * adapt to it: the rate limiter halves its budget, and bulk operations (which retry their own writes) shrink their
+ * window, at the first throttle rather than after the Azure client's retries are exhausted.
+ */
+public class ThrottleRetry {
+
+    static final long DEFAULT_RETRY_AFTER_MILLIS = 100;
+
+    private final int maxAttempts;
+    private final long maxWaitMillis;
+
+    /**
+     * Constructor
+     *
+     * @param maxAttempts the most retries of one request
+     * @param maxWaitMillis the most time to spend waiting between the retries of one request
+     */
+    public ThrottleRetry( final int maxAttempts, final long maxWaitMillis ) {
+        this.maxAttempts = maxAttempts;
+        this.maxWaitMillis = maxWaitMillis;
+    }
+
+    /**
+     * Retry a request while it is throttled. A request that is not resumable is only retried if it was throttled
+     * before its first response, so nothing is delivered twice.
+     *
+     * @param request the request, subscribed again for each retry
+     * @param isResumable if true, a retry carries on from the last response (e.g. a query from its continuation)
+     *
+     * @return Observable the request, retried while throttled
+     */
+    public <T> Observable<T> apply( final Observable<T> request, final boolean isResumable ) {
+
+        return Observable.defer( () -> {
+
+            final AtomicInteger attempts = new AtomicInteger();
+            final AtomicLong waitedMillis = new AtomicLong();
+            final AtomicBoolean isAnswered = new AtomicBoolean();
+            return request
+                .doOnNext( response -> isAnswered.set( true ) )
+                .retryWhen( errors -> errors.flatMap( e -> {
+                    long wait = isAnswered.get() && !isResumable ? 
+                        -1 : 
+                        getRetryDelayMillis( e, attempts.incrementAndGet(), waitedMillis.get() );
+                    if ( wait < 0 ) {
+                        return Observable.<Long>error( e );
+                    }
+                    waitedMillis.addAndGet( wait );
+                    return Observable.timer( wait, TimeUnit.MILLISECONDS );
+                }));
+        });
+    }
+
+    /**
+     * Decide whether to retry a failed request, and when.
+     *
+     * @param e the error
+     * @param attempt the number of this retry, from 1
+     * @param waitedMillis the time already spent waiting between the retries of the request
+     *
+     * @return long the delay before retrying in milliseconds, or -1 to give up
+     */
+    long getRetryDelayMillis( final Throwable e, final int attempt, final long waitedMillis ) {
+
+        if ( !ExceptionUtil.isStatus( e, ExceptionUtil.THROTTLED ) || attempt > maxAttempts ) {
+            return -1;
+        }
+        long wait = ExceptionUtil.getRetryAfterMillis( e, DEFAULT_RETRY_AFTER_MILLIS );
+        return waitedMillis + wait > maxWaitMillis ? 
+            -1 : 
+            wait;
+    }
+}
@@ -0,0 +1,204 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Title: TokenBucket
+ *
+ * Description: Lock-free token bucket of RUs for one collection, with the RU cost of each kind of operation
+ * learned from the charges the database reports.
+ *
+ * The bucket is kept as a single theoretical arrival time (the generic cell rate algorithm): the time at which
+ * the bucket would be full again if nothing more were spent. Spending c RUs at r RU/s moves it c / r seconds
+ * later, and the bucket is empty once it is a whole burst ahead of the clock. Every update is one compare and
+ * set, so the bucket can be shared by any number of threads without a lock.
+ *
+ * If adaptive, the rate is halved when the database throttles a request despite the pacing (at most once per
+ * burst), then recovers linearly to the full budget over the following 30 seconds.
+ */
+public class TokenBucket {
+
+    static final double DEFAULT_ESTIMATE = 1; // The cheapest request; corrected by the first response
+    static final int MAX_ESTIMATES = 1000;
+
+    private static final double ESTIMATE_WEIGHT = 0.2;
+    private static final double MIN_RATE_SCALE = 0.1;
+    private static final long RECOVERY_NANOS = TimeUnit.SECONDS.toNanos( 30 );
+
+    private final double requestUnitsPerSecond;
+    private final long burstNanos;
+    private final boolean isAdaptive;
+    private final LongSupplier nanoClock;
+    private final AtomicLong theoreticalArrival;
+    private final ConcurrentMap<String, AtomicLong> estimates = new ConcurrentHashMap<>();
+
+    private volatile double throttledScale = 1;
+    private volatile long lastThrottleNanos;
+
+    /**
+     * Constructor
+     *
+     * @param requestUnitsPerSecond the budget, must be positive
+     * @param burstNanos how much unused budget may build up, as a time at the budgeted rate
+     * @param isAdaptive if true, the rate is reduced when the database throttles requests
+     */
+    public TokenBucket( final double requestUnitsPerSecond, final long burstNanos, final boolean isAdaptive ) {
+        this( requestUnitsPerSecond, burstNanos, isAdaptive, System::nanoTime );
+    }
+
+    TokenBucket( final double requestUnitsPerSecond, final long burstNanos, final boolean isAdaptive, final LongSupplier nanoClock ) {
+        this.requestUnitsPerSecond = requestUnitsPerSecond;
+        this.burstNanos = burstNanos;
+        this.isAdaptive = isAdaptive;
+        this.nanoClock = nanoClock;
+        long now = nanoClock.getAsLong();
+        this.theoreticalArrival = new AtomicLong( now ); // Starts full
+        this.lastThrottleNanos = now - Math.max( RECOVERY_NANOS, burstNanos );
+    }
+
+    /**
+     * Take RUs from the bucket, going into debt if necessary. Later operations pay off the debt by waiting.
+     *
+     * @param cost the RUs
+     *
+     * @return long how long to wait before sending, in nanoseconds
+     */
+    public long reserve( final double cost ) {
+
+        long increment = toNanos( cost );
+        for (;;) {
+            long now = nanoClock.getAsLong();
+            long arrival = theoreticalArrival.get();
+            long next = Math.max( arrival, now ) + increment;
+            if ( theoreticalArrival.compareAndSet( arrival, next ) ) {
+                return arrival <= now ? 0 : Math.max( 0, next - burstNanos - now ); // A full bucket pays for anything
+            }
+        }
+    }
+
+    /**
+     * Take RUs from the bucket only if that leaves the headroom untouched. Nothing is taken otherwise,
+     * so operations that reserve are never queued behind this one.
+     *
+     * @param cost the RUs
+     * @param headroom the proportion of the burst to leave, between 0 and 1
+     *
+     * @return long 0 if the RUs were taken, otherwise how long to wait before trying again, in nanoseconds
+     */
+    public long tryAcquire( final double cost, final double headroom ) {
+
+        long increment = toNanos( cost );
+        long limit = (long) ( burstNanos * ( 1 - headroom ) );
+        for (;;) {
+            long now = nanoClock.getAsLong();
+            long arrival = theoreticalArrival.get();
+            long next = Math.max( arrival, now ) + increment;
+            long excess = next - now - limit;
+            if ( excess > 0 && arrival > now ) {
+                return Math.min( excess, arrival - now ); // Fits once enough has refilled, or the bucket is full
+            }
+            if ( theoreticalArrival.compareAndSet( arrival, next ) ) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Correct the RUs taken, once the actual charge is known.
+     *
+     * @param requestUnits RUs to take (positive) or to give back (negative)
+     */
+    public void adjust( final double requestUnits ) {
+
+        if ( requestUnits == 0 ) {
+            return;
+        }
+        long delta = requestUnits > 0 ? toNanos( requestUnits ) : -toNanos( -requestUnits );
+        for (;;) {
+            long now = nanoClock.getAsLong();
+            long arrival = theoreticalArrival.get();
+            long next = Math.max( now, Math.max( arrival, now ) + delta ); // Never fuller than full
+            if ( next == arrival || theoreticalArrival.compareAndSet( arrival, next ) ) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Reduce the rate because the database throttled a request.
+     */
+    public void onThrottled() {
+
+        if ( !isAdaptive ) {
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        if ( now - lastThrottleNanos < burstNanos ) {
+            return; // Already slowed down for this burst of throttles
+        }
+        // Racing threads may both halve; the next throttle would have done so anyway
+        throttledScale = Math.max( MIN_RATE_SCALE, getRateScale( now ) / 2 );
+        lastThrottleNanos = now;
+    }
+
+    /**
+     * @return double the RU/s currently allowed
+     */
+    public double getRequestUnitsPerSecond() {
+        return requestUnitsPerSecond * getRateScale( nanoClock.getAsLong() );
+    }
+
+    /**
+     * @param costKey identifies the kind of operation, e.g. an operation type or query fingerprint
+     *
+     * @return double the expected RU cost of the operation
+     */
+    public double getEstimate( final String costKey ) {
+
+        AtomicLong estimate = estimates.get( costKey );
+        return estimate == null ? DEFAULT_ESTIMATE : Double.longBitsToDouble( estimate.get() );
+    }
+
+    /**
+     * Learn from the RU cost of a completed operation, as a moving average.
+     *
+     * @param costKey identifies the kind of operation
+     * @param cost the RUs the operation was charged in total
+     */
+    public void learn( final String costKey, final double cost ) {
+
+        AtomicLong estimate = estimates.get( costKey );
+        if ( estimate == null ) {
+            if ( estimates.size() >= MAX_ESTIMATES ) {
+                return; // Unusual operations keep the default
+            }
+            estimate = estimates.putIfAbsent( costKey, new AtomicLong( Double.doubleToLongBits( cost ) ) );
+            if ( estimate == null ) {
+                return;
+            }
+        }
+        for (;;) {
+            long bits = estimate.get();
+            double current = Double.longBitsToDouble( bits );
+            if ( estimate.compareAndSet( bits, Double.doubleToLongBits( current + ESTIMATE_WEIGHT * ( cost - current ) ) ) ) {
+                return;
+            }
+        }
+    }
+
+    private double getRateScale( final long now ) {
+
+        if ( !isAdaptive ) {
+            return 1;
+        }
+        return Math.min( 1, throttledScale + (double) ( now - lastThrottleNanos ) / RECOVERY_NANOS );
+    }
+
+    private long toNanos( final double cost ) {
+        return (long) ( cost / getRequestUnitsPerSecond() * 1e9 );
+    }
+}
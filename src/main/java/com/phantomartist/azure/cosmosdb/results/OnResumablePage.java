@@ -0,0 +1,32 @@
+package com.phantomartist.azure.cosmosdb.results;
+
+import java.util.List;
+
+import com.phantomartist.azure.cosmosdb.Document;
+
+/**
+ * Title: OnResumablePage
+ *
+ * Description: Action to perform when a page of results is returned from the database,
+ * along with the continuation token needed to resume the query after that page
+ */
+public interface OnResumablePage {
+
+    /**
+     * Method executed when a page of results is recieved from the DB client.
+     * 
+     * The continuation token marks the position in the result after this page. Pass it to 
+     * {@link com.phantomartist.azure.cosmosdb.Query#setContinuation(String)} on a new query with 
+     * the same SQL, parameters and options to carry on from the next page, e.g. to serve the next 
+     * page of a paged API, or to resume a long scan after a failure without reading (and paying 
+     * for) the earlier pages again.
+     * 
+     * WARNING: Do not implement complicated computation in this method as
+     * it could cause backpressure to build in the client that is feeding 
+     * the results.
+     * 
+     * @param results the results
+     * @param continuation the token to resume after this page, or null if this is the last page
+     */
+    void onPage( List<Document> results, String continuation );
+}
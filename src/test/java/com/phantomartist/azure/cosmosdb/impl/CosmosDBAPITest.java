@@ -1,27 +1,38 @@
 package com.phantomartist.azure.cosmosdb.impl;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import com.phantomartist.azure.cosmosdb.CacheConfig;
+import com.phantomartist.azure.cosmosdb.ClientOptions;
 import com.phantomartist.azure.cosmosdb.Connection;
 import com.phantomartist.azure.cosmosdb.DBClient;
 import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentKey;
+import com.phantomartist.azure.cosmosdb.PreparedQuery;
+import com.phantomartist.azure.cosmosdb.Statement;
+import com.phantomartist.azure.cosmosdb.WriteResult;
 
 /**
  * Title: CosmosDBAPITest
@@ -124,6 +135,25 @@ class CosmosDBAPITest {
         latch.await( 5000, TimeUnit.SECONDS ); // Timeout after 5 secs if no result retrieved
     }
 
+    /**
+     * Test the future-based API. Writes and queries are composed without latches or blocking threads.
+     */
+    @Test
+    void testFutures() {
+        
+        Statement statement = conn.generateStatement();
+        CompletableFuture<List<Document>> results = CompletableFuture.allOf(
+                statement.upsertAsync( getTestRecords().get( 0 ) ),
+                statement.upsertAsync( getTestRecords().get( 1 ) ) )
+            .thenCompose( written -> conn.generateQuery( "SELECT * FROM product" ).executeAsync() );
+        
+        assertEquals( 2, results.join().size() );
+        
+        WriteResult deleted = statement.deleteAsync( "record_1", null ).join();
+        assertNull( deleted.getDocument() );
+        assertTrue( deleted.getRequestCharge() > 0 );
+    }
+
     /**
      * Test the same query, this time as a blocking query (no need to add manual latches).
      * 
@@ -158,6 +188,142 @@ class CosmosDBAPITest {
             );
     }
     
+    /**
+     * Test a prepared query shared between threads. Each execution binds its own values.
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    void testPreparedQuery() throws InterruptedException {
+        
+        // Add records for test
+        multiUpsert();
+        
+        // Unlike generated queries, prepared queries are threadsafe
+        final PreparedQuery byId = conn.prepareQuery( "SELECT * FROM product WHERE product.id = @id", "@id" );
+        final AtomicInteger found = new AtomicInteger(0);
+        
+        Thread[] threads = new Thread[2];
+        for ( int i = 0; i < threads.length; i++ ) {
+            final String id = "record_" + ( i + 1 );
+            threads[i] = new Thread( () -> {
+                found.addAndGet( byId.bind( id ).executeForResultSet( Product.class ).getResults().size() );
+            });
+            threads[i].start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+        
+        assertEquals( 2, found.get() );
+    }
+    
+    /**
+     * Test a point read by id, which goes straight to the document instead of running a query.
+     * A missing document is returned as null.
+     */
+    @Test
+    void testPointRead() {
+        
+        // Add records for test
+        multiUpsert();
+        
+        Document doc = conn.read( "record_1", null );
+        assertEquals( "record_1", doc.toObject( Product.class ).getId() );
+        
+        assertNull( conn.read( "no_such_record", null ) );
+    }
+    
+    /**
+     * Test reading several documents by id in one call. Missing documents are omitted.
+     */
+    @Test
+    void testReadMany() {
+        
+        // Add records for test
+        multiUpsert();
+        
+        List<Document> docs = conn.readMany( Arrays.asList(
+            new DocumentKey( "record_1", null ),
+            new DocumentKey( "record_2", null ),
+            new DocumentKey( "no_such_record", null ) ) );
+        
+        assertEquals( 2, docs.size() );
+    }
+    
+    /**
+     * Test a client with the client-side cache enabled. Repeat reads are served from memory 
+     * until a write through the same client invalidates the document.
+     */
+    @Test
+    void testCachedRead() {
+        
+        // Add records for test
+        multiUpsert();
+        
+        try ( DBClient cachingClient = DBClientBuilderImpl.getDefault().getCosmosDBAsyncClient( 
+                SERVICE_ENDPOINT, 
+                MASTER_KEY, 
+                new ClientOptions().setCache( new CacheConfig().setTtl( 5, TimeUnit.MINUTES ) ) ) ) {
+            
+            Connection cachingConn = cachingClient.getConnection( DB, COLLECTION );
+            
+            cachingConn.read( "record_1", null ); // Miss
+            cachingConn.read( "record_1", null ); // Hit
+            assertEquals( 1, cachingClient.getCacheStats().getHits() );
+            
+            Product p = new Product();
+            p.setId( "record_1" );
+            p.setDesc( "Updated" );
+            cachingConn.generateStatement().setBlocking( true ).upsert( p );
+            
+            assertEquals( "Updated", cachingConn.read( "record_1", null ).toObject( Product.class ).getDesc() );
+            assertEquals( 1, cachingClient.getCacheStats().getHits() );
+        }
+    }
+    
+    /**
+     * Test optimistic concurrency. Concurrent read-modify-write cycles on the same document each retry 
+     * until they win, so no increment is lost. A write conditioned on a stale ETag is rejected.
+     * 
+     * @throws InterruptedException
+     */
+    @Test
+    void testReadModifyWrite() throws InterruptedException {
+        
+        final int writers = 5;
+        final CountDownLatch latch = new CountDownLatch( writers );
+        
+        for ( int i = 0; i < writers; i++ ) {
+            conn.generateStatement()
+                .readModifyWrite( "counter_1", null, current -> {
+                    Product p = current == null ? new Product() : current.toObject( Product.class );
+                    p.setId( "counter_1" );
+                    p.setCount( p.getCount() + 1 );
+                    return p;
+                }, e -> {
+                    e.printStackTrace();
+                    fail( "Failed read-modify-write" );
+                }, () -> {
+                    latch.countDown();
+                });
+        }
+        latch.await( 30, TimeUnit.SECONDS );
+        
+        Document doc = conn.read( "counter_1", null );
+        assertEquals( writers, doc.toObject( Product.class ).getCount() );
+        
+        final AtomicInteger preconditionFailures = new AtomicInteger(0);
+        conn.generateStatement()
+            .setBlocking( true )
+            .upsert( doc.toObject( Product.class ), "\"stale-etag\"", null, e -> {
+                if ( ExceptionUtil.isStatus( e, ExceptionUtil.PRECONDITION_FAILED ) ) {
+                    preconditionFailures.incrementAndGet();
+                }
+            }, null );
+        assertEquals( 1, preconditionFailures.get() );
+    }
+    
     /**
      * Test upserting a Map as opposed to a POJO
      */
@@ -207,6 +373,34 @@ class CosmosDBAPITest {
                 });
     }
     
+    /**
+     * Test upsert of a stream of documents. Documents are generated lazily as write capacity becomes 
+     * available, so the whole set is never held in memory.
+     */
+    @Test
+    void testStreamingMultiUpsert() {
+        
+        final AtomicInteger written = new AtomicInteger(0);
+        
+        conn.generateStatement()
+            .setBlocking( true )
+            .setMaxConcurrency( 8 )
+            .multiUpsert(
+                IntStream.range( 0, 50 ).mapToObj( i -> {
+                    Product p = new Product();
+                    p.setId( "stream_" + i );
+                    return p;
+                }),
+                r -> {
+                    written.incrementAndGet();
+                }, e -> {
+                    e.printStackTrace();
+                    fail( "Failed streaming multi-upsert");
+                }, () -> {
+                    assertEquals( 50, written.get() );
+                });
+    }
+    
     /**
      * Upsert and delete a document
      */
@@ -294,6 +488,70 @@ class CosmosDBAPITest {
                });
     }
     
+    /**
+     * Read one page at a time, as a paged API would, resuming each query from the previous page's continuation.
+     */
+    @Test
+    void testContinuation() {
+        
+        // Ensure 2 records are present
+        multiUpsert();
+        
+        final List<String> ids = new ArrayList<>();
+        final String[] continuation = new String[1];
+        
+        do {
+            conn.generateQuery( "SELECT * FROM Product" )
+                .setBlocking( true )
+                .setMaxResultsPageSize( 1 )
+                .setMaxPages( 1 )
+                .setContinuation( continuation[0] )
+                .execute( ( page, token ) -> {
+                    page.forEach( doc -> ids.add( doc.getId() ) );
+                    continuation[0] = token;
+                }, e -> {
+                    e.printStackTrace();
+                    fail( "Failed to read page" );
+                }, null );
+        } while ( continuation[0] != null );
+        
+        assertEquals( 2, ids.size() );
+        assertTrue( ids.containsAll( Arrays.asList( "record_1", "record_2" ) ) );
+    }
+    
+    /**
+     * Stream a query one page at a time. Each page is only fetched once the previous page has been consumed.
+     */
+    @Test
+    void testQueryStream() {
+        
+        // Ensure 2 records are present
+        multiUpsert();
+        
+        try ( Stream<Document> docs = conn.generateQuery( "SELECT * FROM Product" )
+                .setMaxResultsPageSize( 1 )
+                .stream() ) {
+            
+            assertEquals( 2, docs.count() );
+        }
+    }
+    
+    @Test
+    void testParallelQuery() {
+        
+        // Ensure 2 records are present
+        multiUpsert();
+        
+        List<Product> results = conn.generateQuery( "SELECT * FROM Product" )
+            .setMaxDegreeOfParallelism( 4 )
+            .setMaxBufferedItemCount( 100 )
+            .setAdaptiveParallelism( true )
+            .executeForResultSet( Product.class )
+            .getResults();
+        
+        assertEquals( 2, results.size() );
+    }
+    
     /**
      * Typical use-case where we want to populate a Collection of results from a query
      * and then use those results in further processing. Requires a blocking query.
@@ -40,25 +40,16 @@ public class CosmosDBDAO {
     /**
      * Find document by PK
      * 
+     * Uses a point read rather than a query, as the id is known. 
+     * The product collection is partitioned on /id, so the id is also the partition key.
+     * 
      * @param pk the primary key
      * 
      * @return Document the document
      */
     public Document find( String pk ) {
         
-        final List<Document> results = new ArrayList<>();
-        
-        // Implement blocking behaviour in query if you want to wait for execute() 
-        // to complete before returning to caller
-        conn.generateQuery( "SELECT * FROM product WHERE product.id = @id" )
-            .addParam( "@id", pk )
-            .setBlocking( true )
-            .execute(
-                onPage -> {
-                    results.addAll( onPage );
-            });
-        
-        return results.isEmpty() ? null : results.get( 0 );
+        return conn.read( pk, pk );
     }
     
     /**
@@ -97,20 +88,14 @@ public class CosmosDBDAO {
     /**
      * Delete a product
      * 
-     * Deletes are more of a pain because you have to delete via document links, rather than primary key of record.
-     * The only way to get a documnet link is to have the Document object, which requires a SELECT before DELETE to
-     * get the document _selfLink
-     * 
-     * We can provide generic delete methods for all DAOs though that simply take a collection name and doc id as 
-     * the delete link can be constructed from these two items if you also have the db name.
+     * Deletes go straight to the document by id and partition key, so there is no need to SELECT the 
+     * document first to get its _selfLink. The product collection is partitioned on /id, so the id is 
+     * also the partition key. Deleting a product that does not exist is not an error.
      * 
      * @param p the Product to delete
      */
     public void delete( Product p ) {
         
-        Document d = find( p.getId() );
-        if ( d != null ) {
-            conn.generateStatement().setBlocking( true ).delete( d );
-        }
+        conn.generateStatement().setBlocking( true ).delete( p.getId(), p.getId() );
     }
 }
@@ -0,0 +1,164 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.Query;
+
+import rx.Observable;
+
+/**
+ * Title: DeadlineTest
+ *
+ * Description: Tests operation deadlines in isolation (no CosmosDB required).
+ */
+class DeadlineTest {
+
+    /**
+     * An operation that outlives its deadline is unsubscribed and fails with a DBTimeoutException.
+     */
+    @Test
+    void testExpiryCancelsOperation() throws InterruptedException {
+
+        Interaction interaction = new Interaction( 50 );
+        final AtomicBoolean isUnsubscribed = new AtomicBoolean();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch( 1 );
+
+        Observable<Long> pages = Observable.interval( 10, TimeUnit.MILLISECONDS ) // Never completes
+            .doOnUnsubscribe( () -> isUnsubscribed.set( true ) );
+
+        interaction.withDeadline( pages, () -> "test" ).subscribe( 
+            page -> {}, 
+            e -> { 
+                error.set( e ); 
+                latch.countDown(); 
+            } );
+
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( error.get() instanceof DBTimeoutException );
+        assertEquals( 50, ( (DBTimeoutException) error.get() ).getTimeoutMillis() );
+        assertTrue( isUnsubscribed.get() );
+    }
+
+    /**
+     * The deadline covers the whole operation, so steady progress does not extend it.
+     */
+    @Test
+    void testDeadlineIsNotPerItem() throws InterruptedException {
+
+        Interaction interaction = new Interaction( 100 );
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch( 1 );
+
+        // Each item arrives well inside the timeout, but together they take far longer
+        interaction.withDeadline( Observable.interval( 20, TimeUnit.MILLISECONDS ).take( 50 ), () -> "test" ).subscribe( 
+            page -> {}, 
+            e -> { 
+                error.set( e ); 
+                latch.countDown(); 
+            }, 
+            latch::countDown );
+
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( error.get() instanceof DBTimeoutException );
+    }
+
+    /**
+     * Operations that finish in time are unaffected.
+     */
+    @Test
+    void testCompletesWithinDeadline() {
+
+        Interaction interaction = new Interaction( 5000 );
+
+        List<Integer> results = interaction.withDeadline( Observable.just( 1, 2, 3 ), () -> "test" )
+            .toList()
+            .toBlocking()
+            .single();
+
+        assertEquals( 3, results.size() );
+    }
+
+    /**
+     * A query consumed through its publisher, which has no wait of its own, is still cancelled at its deadline.
+     */
+    @Test
+    void testQueryPublisherHasDeadline() throws InterruptedException {
+
+        final AtomicBoolean isUnsubscribed = new AtomicBoolean();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch( 1 );
+        Query query = new QueryImpl( unansweredClient( isUnsubscribed ), "/dbs/mydb/colls/product", "SELECT * FROM product" )
+            .setTimeout( 50, TimeUnit.MILLISECONDS );
+
+        query.publisher().subscribe( new Subscriber<Document>() {
+
+            @Override
+            public void onSubscribe( final Subscription s ) {
+                s.request( Long.MAX_VALUE );
+            }
+
+            @Override
+            public void onNext( final Document doc ) {
+            }
+
+            @Override
+            public void onError( final Throwable e ) {
+                error.set( e );
+                latch.countDown();
+            }
+
+            @Override
+            public void onComplete() {
+                latch.countDown();
+            }
+        });
+
+        assertTrue( latch.await( 5, TimeUnit.SECONDS ) );
+        assertTrue( error.get() instanceof DBTimeoutException );
+        assertTrue( isUnsubscribed.get() );
+    }
+
+    /**
+     * @param isUnsubscribed set when a query is cancelled
+     *
+     * @return AsyncDocumentClient a client whose queries never answer
+     */
+    private static AsyncDocumentClient unansweredClient( final AtomicBoolean isUnsubscribed ) {
+
+        return (AsyncDocumentClient) Proxy.newProxyInstance(
+            AsyncDocumentClient.class.getClassLoader(),
+            new Class<?>[] { AsyncDocumentClient.class },
+            ( proxy, method, args ) -> {
+                if ( !method.getName().equals( "queryDocuments" ) ) {
+                    throw new UnsupportedOperationException( method.getName() );
+                }
+                return Observable.never().doOnUnsubscribe( () -> isUnsubscribed.set( true ) );
+            });
+    }
+
+    /**
+     * Exposes the deadline of an interaction.
+     */
+    private static final class Interaction extends AbstractDBInteraction {
+
+        Interaction( final long timeoutMillis ) {
+            setTimeoutMillis( timeoutMillis );
+        }
+    }
+}
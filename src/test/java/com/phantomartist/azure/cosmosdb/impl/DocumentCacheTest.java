@@ -0,0 +1,172 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.CacheConfig;
+import com.phantomartist.azure.cosmosdb.Document;
+
+/**
+ * Title: DocumentCacheTest
+ *
+ * Description: Tests the client-side document cache in isolation (no CosmosDB required).
+ */
+class DocumentCacheTest {
+
+    private static final String LINK = "/dbs/mydb/colls/product";
+
+    /**
+     * Least recently used entries are evicted first once the entry bound is exceeded.
+     */
+    @Test
+    void testLruEviction() {
+
+        DocumentCache cache = new DocumentCache( new CacheConfig().setMaxEntries( 2 ) );
+
+        cache.putDocument( LINK, null, doc( "a" ), cache.getGeneration( LINK ) );
+        cache.putDocument( LINK, null, doc( "b" ), cache.getGeneration( LINK ) );
+        assertNotNull( cache.getDocument( LINK, "a", null ) ); // "b" is now least recently used
+        cache.putDocument( LINK, null, doc( "c" ), cache.getGeneration( LINK ) );
+
+        assertNotNull( cache.getDocument( LINK, "a", null ) );
+        assertNull( cache.getDocument( LINK, "b", null ) );
+        assertNotNull( cache.getDocument( LINK, "c", null ) );
+        assertEquals( 1, cache.getStats().getEvictions() );
+    }
+
+    /**
+     * Entries are not served once their TTL expires.
+     */
+    @Test
+    void testTtlExpiry() {
+
+        AtomicLong now = new AtomicLong();
+        DocumentCache cache = new DocumentCache( new CacheConfig().setTtl( 10, TimeUnit.MILLISECONDS ), now::get );
+
+        cache.putDocument( LINK, null, doc( "a" ), cache.getGeneration( LINK ) );
+        now.addAndGet( TimeUnit.MILLISECONDS.toNanos( 10 ) );
+        assertNotNull( cache.getDocument( LINK, "a", null ) );
+
+        now.incrementAndGet();
+        assertNull( cache.getDocument( LINK, "a", null ) );
+        assertEquals( 1, cache.getStats().getExpirations() );
+    }
+
+    /**
+     * An expired document with an ETag is kept for revalidation rather than dropped, 
+     * and is served again once the database confirms it is unchanged.
+     */
+    @Test
+    void testExpiredDocumentKeptForRevalidation() {
+
+        AtomicLong now = new AtomicLong();
+        DocumentCache cache = new DocumentCache( new CacheConfig().setTtl( 10, TimeUnit.MILLISECONDS ), now::get );
+
+        Document doc = DocumentUtil.fromJson( "{\"id\":\"a\",\"_etag\":\"\\\"0001\\\"\"}" );
+        cache.putDocument( LINK, null, doc, cache.getGeneration( LINK ) );
+        now.addAndGet( TimeUnit.MILLISECONDS.toNanos( 11 ) );
+
+        assertNull( cache.getDocument( LINK, "a", null ) );
+        assertSame( doc, cache.getExpiredDocument( LINK, "a", null ) );
+
+        cache.putRevalidatedDocument( LINK, null, doc, cache.getGeneration( LINK ) );
+
+        assertSame( doc, cache.getDocument( LINK, "a", null ) );
+        assertEquals( 1, cache.getStats().getRevalidations() );
+    }
+
+    /**
+     * A write removes the document and makes cached query results for the collection stale.
+     * A read that started before the write is not cached.
+     */
+    @Test
+    void testWriteInvalidates() {
+
+        DocumentCache cache = new DocumentCache( new CacheConfig() );
+
+        long generation = cache.getGeneration( LINK );
+        cache.putDocument( LINK, null, doc( "a" ), generation );
+        List<List<Document>> pages = new ArrayList<>();
+        pages.add( new ArrayList<>() );
+        cache.putQuery( LINK, "SELECT * FROM c", pages, generation );
+        assertNotNull( cache.getQuery( LINK, "SELECT * FROM c" ) );
+
+        cache.invalidate( LINK, "a" );
+
+        assertNull( cache.getDocument( LINK, "a", null ) );
+        assertNull( cache.getQuery( LINK, "SELECT * FROM c" ) );
+
+        // Read started before the write completed
+        cache.putDocument( LINK, null, doc( "a" ), generation );
+        assertNull( cache.getDocument( LINK, "a", null ) );
+    }
+
+    /**
+     * A document cached under one partition key is not served for another.
+     */
+    @Test
+    void testPartitionKeyMustMatch() {
+
+        DocumentCache cache = new DocumentCache( new CacheConfig() );
+
+        cache.putDocument( LINK, "pk1", doc( "a" ), cache.getGeneration( LINK ) );
+
+        assertNotNull( cache.getDocument( LINK, "a", "pk1" ) );
+        assertNull( cache.getDocument( LINK, "a", "pk2" ) );
+    }
+
+    /**
+     * Documents with the same id in different partitions are cached apart, and a write to the id removes them all.
+     */
+    @Test
+    void testPartitionKeyInKey() {
+
+        DocumentCache cache = new DocumentCache( new CacheConfig() );
+
+        Document doc1 = doc( "a" );
+        Document doc2 = doc( "a" );
+        cache.putDocument( LINK, "pk1", doc1, cache.getGeneration( LINK ) );
+        cache.putDocument( LINK, "pk2", doc2, cache.getGeneration( LINK ) );
+
+        assertSame( doc1, cache.getDocument( LINK, "a", "pk1" ) );
+        assertSame( doc2, cache.getDocument( LINK, "a", "pk2" ) );
+        assertEquals( 2, cache.getStats().getSize() );
+
+        cache.invalidate( LINK, "a" );
+
+        assertNull( cache.getDocument( LINK, "a", "pk1" ) );
+        assertNull( cache.getDocument( LINK, "a", "pk2" ) );
+        assertEquals( 0, cache.getStats().getSize() );
+    }
+
+    /**
+     * The size of a document is taken from the response it was read from, if known.
+     */
+    @Test
+    void testSizeFromResponse() {
+
+        DocumentCache cache = new DocumentCache( new CacheConfig().setMaxBytes( 10_000 ) );
+
+        cache.putDocument( LINK, null, new DocumentImpl( new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"a\"}" ), 1000 ), 
+            cache.getGeneration( LINK ) );
+        assertEquals( 2064, cache.getStats().getBytes() );
+
+        cache.putDocument( LINK, null, new DocumentImpl( new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"a\"}" ), 10_000 ), 
+            cache.getGeneration( LINK ) );
+        assertNotNull( cache.getDocument( LINK, "a", null ) ); // Too big to cache, the previous version is kept
+        assertEquals( 2064, cache.getStats().getBytes() );
+    }
+
+    private static Document doc( final String id ) {
+        return DocumentUtil.fromJson( "{\"id\":\"" + id + "\"}" );
+    }
+}
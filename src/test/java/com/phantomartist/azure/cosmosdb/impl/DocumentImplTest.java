@@ -0,0 +1,48 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Document;
+
+/**
+ * Title: DocumentImplTest
+ *
+ * Description: Tests field access on a wrapped Azure document (no CosmosDB required).
+ */
+class DocumentImplTest {
+
+    private static final Document DOC = new DocumentImpl( new com.microsoft.azure.cosmosdb.Document(
+        "{\"id\":\"record_1\",\"count\":7,\"price\":{\"amount\":12.5,\"currency\":\"GBP\"},\"ref\":\"42\",\"desc\":null,\"tags\":[1,2]}" ) );
+
+    /**
+     * Top-level and nested fields are read from the Azure document, converting where asked.
+     */
+    @Test
+    void testGetFields() {
+
+        assertEquals( "record_1", DOC.getString( "id" ) );
+        assertEquals( "7", DOC.getString( "count" ) );
+        assertEquals( Long.valueOf( 7 ), DOC.getLong( "count" ) );
+        assertEquals( Long.valueOf( 42 ), DOC.getLong( "ref" ) );
+        assertEquals( Double.valueOf( 12.5 ), DOC.getDouble( "price.amount" ) );
+        assertEquals( "GBP", DOC.getString( "price.currency" ) );
+    }
+
+    /**
+     * Missing and null fields read as null, and containers are not scalar values.
+     */
+    @Test
+    void testMissingAndNotScalar() {
+
+        assertNull( DOC.getString( "desc" ) );
+        assertNull( DOC.getLong( "nope" ) );
+        assertNull( DOC.getString( "price.nope" ) );
+        assertThrows( IllegalArgumentException.class, () -> DOC.getString( "price" ) );
+        assertThrows( IllegalArgumentException.class, () -> DOC.getLong( "tags" ) );
+        assertThrows( IllegalArgumentException.class, () -> DOC.getLong( "price.currency" ) );
+    }
+}
@@ -0,0 +1,80 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Document;
+
+/**
+ * Title: DocumentUtilTest
+ *
+ * Description: Tests the document utilities in isolation (no CosmosDB required).
+ */
+class DocumentUtilTest {
+
+    /**
+     * Wrapping a page is a read-only view over the Azure list, not a copy.
+     */
+    @Test
+    void testWrapIsView() {
+
+        List<com.microsoft.azure.cosmosdb.Document> azureDocs = new ArrayList<>( Arrays.asList(
+            new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"a\"}" ),
+            new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"b\"}" ) ) );
+
+        List<Document> wrapped = DocumentUtil.wrap( azureDocs );
+        assertTrue( wrapped instanceof RandomAccess );
+        assertEquals( "b", wrapped.get( 1 ).getId() );
+
+        List<String> ids = new ArrayList<>();
+        for ( Document doc : wrapped ) {
+            ids.add( doc.getId() );
+        }
+        assertEquals( Arrays.asList( "a", "b" ), ids );
+
+        assertThrows( UnsupportedOperationException.class, () -> wrapped.add( wrapped.get( 0 ) ) );
+    }
+
+    /**
+     * Each element is wrapped once, so the list finds the elements it returned and their memoised state is kept.
+     */
+    @Test
+    void testWrappersAreCached() {
+
+        List<com.microsoft.azure.cosmosdb.Document> azureDocs = Arrays.asList(
+            new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"a\"}" ),
+            new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"b\"}" ),
+            new com.microsoft.azure.cosmosdb.Document( "{\"id\":\"c\"}" ) );
+
+        List<Document> wrapped = DocumentUtil.wrap( azureDocs );
+        for ( int i = 0; i < wrapped.size(); i++ ) {
+            assertSame( wrapped.get( i ), wrapped.get( i ) );
+            assertEquals( i, wrapped.indexOf( wrapped.get( i ) ) );
+            assertTrue( wrapped.contains( wrapped.get( i ) ) );
+        }
+
+        int i = 0;
+        for ( Document doc : wrapped ) {
+            assertSame( wrapped.get( i++ ), doc ); // The iterator shares the wrappers
+        }
+    }
+
+    /**
+     * A missing or empty page wraps to an empty list.
+     */
+    @Test
+    void testWrapEmpty() {
+
+        assertTrue( DocumentUtil.wrap( (List<com.microsoft.azure.cosmosdb.Document>) null ).isEmpty() );
+        assertTrue( DocumentUtil.wrap( new ArrayList<com.microsoft.azure.cosmosdb.Document>() ).isEmpty() );
+    }
+}
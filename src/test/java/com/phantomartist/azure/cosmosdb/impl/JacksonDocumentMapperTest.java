@@ -0,0 +1,74 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.ResultSet;
+
+/**
+ * Title: JacksonDocumentMapperTest
+ *
+ * Description: Tests the Jackson document mapper in isolation (no CosmosDB required).
+ */
+class JacksonDocumentMapperTest {
+
+    private static final Document DOC = DocumentUtil.fromJson(
+        "{\"id\":\"record_1\",\"count\":5,\"tags\":{\"a\":[1,2,{\"b\":3}]},\"desc\":\"First record\",\"_ts\":1528000000}" );
+
+    /**
+     * Every known field is bound, and unknown fields (including system properties) are ignored.
+     */
+    @Test
+    void testMapAllFields() {
+
+        Product p = DOC.toObject( JacksonDocumentMapper.forClass( Product.class ) );
+
+        assertEquals( "record_1", p.getId() );
+        assertEquals( 5, p.getCount() );
+        assertEquals( "First record", p.getDesc() );
+    }
+
+    /**
+     * Converting a document or a result set to a class goes through the mapper, so unknown fields are ignored.
+     */
+    @Test
+    void testDefaultConversions() {
+
+        assertEquals( 5, DOC.toObject( Product.class ).getCount() );
+
+        ResultSet<Product> rs = new ResultSetImpl<>( Collections.singletonList( Arrays.asList( DOC ) ), Product.class );
+        assertEquals( "First record", rs.getSingleResult().getDesc() );
+    }
+
+    /**
+     * Every mapper for a class shares one reader.
+     */
+    @Test
+    void testReaderSharedPerClass() {
+
+        assertSame( JacksonDocumentMapper.forClass( Product.class ).getReader(), 
+            JacksonDocumentMapper.forClass( Product.class, "id" ).getReader() );
+    }
+
+    /**
+     * Only the projected fields are bound, the rest keep their defaults, and the document itself is untouched.
+     */
+    @Test
+    void testMapProjection() {
+
+        Product p = DOC.toObject( JacksonDocumentMapper.forClass( Product.class, "id", "count" ) );
+
+        assertEquals( "record_1", p.getId() );
+        assertEquals( 5, p.getCount() );
+        assertNull( p.getDesc() );
+        assertEquals( "First record", DOC.getString( "desc" ) );
+        assertEquals( 5, DOC.toObject( JacksonDocumentMapper.forClass( Product.class ) ).getCount() );
+    }
+}
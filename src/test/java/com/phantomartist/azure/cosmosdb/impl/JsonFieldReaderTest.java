@@ -0,0 +1,67 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Title: JsonFieldReaderTest
+ *
+ * Description: Tests field access over a JSON tree in isolation (no CosmosDB required).
+ */
+class JsonFieldReaderTest {
+
+    private static final JsonNode JSON = parse(
+        "{\"id\":\"record_1\",\"tags\":[{\"price\":1}],\"price\":{\"amount\":12.5,\"currency\":\"GBP\"},\"count\":7,\"desc\":null,\"isNew\":true}" );
+
+    private static JsonNode parse( final String json ) {
+        try {
+            return new ObjectMapper().readTree( json );
+        } catch ( IOException e ) {
+            throw new IllegalStateException( e );
+        }
+    }
+
+    /**
+     * Top-level and nested scalars are found, ignoring fields with the same name at other levels.
+     */
+    @Test
+    void testRead() {
+
+        assertEquals( "record_1", JsonFieldReader.read( JSON, new String[] { "id" } ) );
+        assertEquals( 7, ( (Number) JsonFieldReader.read( JSON, new String[] { "count" } ) ).intValue() );
+        assertEquals( 12.5, ( (Number) JsonFieldReader.read( JSON, new String[] { "price", "amount" } ) ).doubleValue() );
+        assertEquals( "GBP", JsonFieldReader.read( JSON, new String[] { "price", "currency" } ) );
+        assertNull( JsonFieldReader.read( JSON, new String[] { "desc" } ) );
+        assertEquals( Boolean.TRUE, JsonFieldReader.read( JSON, new String[] { "isNew" } ) );
+    }
+
+    /**
+     * Absent fields, and paths through non-objects, are reported as missing.
+     */
+    @Test
+    void testMissing() {
+
+        assertSame( JsonFieldReader.MISSING, JsonFieldReader.read( JSON, new String[] { "nope" } ) );
+        assertSame( JsonFieldReader.MISSING, JsonFieldReader.read( JSON, new String[] { "price", "nope" } ) );
+        assertSame( JsonFieldReader.MISSING, JsonFieldReader.read( JSON, new String[] { "count", "nope" } ) );
+    }
+
+    /**
+     * Objects and arrays are not scalar values.
+     */
+    @Test
+    void testNotScalar() {
+
+        assertThrows( IllegalArgumentException.class, () -> JsonFieldReader.read( JSON, new String[] { "price" } ) );
+        assertThrows( IllegalArgumentException.class, () -> JsonFieldReader.read( JSON, new String[] { "tags" } ) );
+    }
+}
@@ -0,0 +1,238 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.SchedulerConfig;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * Title: LaneSchedulerTest
+ *
+ * Description: Tests the lane limits and the latency-driven backoff of background and bulk lanes,
+ * against a manual clock (no CosmosDB required).
+ */
+class LaneSchedulerTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    /**
+     * Requests over the limit wait without blocking, and start in order as earlier ones end.
+     */
+    @Test
+    void testGateQueuesInOrder() {
+
+        LaneScheduler.Gate gate = new LaneScheduler.Gate( 2 );
+        List<Integer> started = new ArrayList<>();
+        for ( int i = 0; i < 5; i++ ) {
+            int request = i;
+            gate.submit( () -> started.add( request ) );
+        }
+        assertEquals( 2, started.size() );
+        assertEquals( 2, gate.getInFlight() );
+        assertEquals( 3, gate.getWaiting() );
+
+        gate.release();
+        assertEquals( 3, started.size() );
+        gate.release();
+        gate.release();
+        assertEquals( 5, started.size() );
+        assertEquals( 2, gate.getInFlight() );
+        assertEquals( 0, gate.getWaiting() );
+        for ( int i = 0; i < 5; i++ ) {
+            assertEquals( i, (int) started.get( i ) );
+        }
+    }
+
+    /**
+     * A request that ends as soon as it starts lets the next one start without recursing.
+     */
+    @Test
+    void testGateRequestEndingAtOnce() {
+
+        LaneScheduler.Gate gate = new LaneScheduler.Gate( 1 );
+        List<Integer> started = new ArrayList<>();
+        for ( int i = 0; i < 10_000; i++ ) {
+            int request = i;
+            gate.submit( () -> {
+                started.add( request );
+                gate.release();
+            });
+        }
+        assertEquals( 10_000, started.size() );
+        assertEquals( 0, gate.getInFlight() );
+    }
+
+    /**
+     * Background and bulk lanes halve their limits while interactive p99 is over target, and recover by one per window.
+     */
+    @Test
+    void testBackoffOnLatency() {
+
+        AtomicLong now = new AtomicLong();
+        SchedulerConfig config = new SchedulerConfig()
+            .setMaxConcurrency( Lane.BACKGROUND, 8 )
+            .setMaxConcurrency( Lane.BULK, 16 )
+            .setLatencyTarget( 50, TimeUnit.MILLISECONDS );
+        LaneScheduler scheduler = new LaneScheduler( config, now::get );
+
+        for ( int i = 0; i < 100; i++ ) {
+            scheduler.recordLatency( 200 * MILLI ); // All over target
+        }
+        scheduler.onRequestEnd(); // Window not over yet
+        assertEquals( 8, scheduler.getGate( Lane.BACKGROUND ).getLimit() );
+
+        now.addAndGet( LaneScheduler.WINDOW_NANOS );
+        scheduler.onRequestEnd();
+        assertEquals( 4, scheduler.getGate( Lane.BACKGROUND ).getLimit() );
+        assertEquals( 8, scheduler.getGate( Lane.BULK ).getLimit() );
+        assertEquals( Integer.MAX_VALUE, scheduler.getGate( Lane.INTERACTIVE ).getLimit() );
+
+        for ( int i = 0; i < 100; i++ ) {
+            scheduler.recordLatency( 10 * MILLI );
+        }
+        now.addAndGet( LaneScheduler.WINDOW_NANOS );
+        scheduler.onRequestEnd();
+        assertEquals( 5, scheduler.getGate( Lane.BACKGROUND ).getLimit() );
+        assertEquals( 9, scheduler.getGate( Lane.BULK ).getLimit() );
+
+        for ( int i = 0; i < 10; i++ ) {
+            now.addAndGet( LaneScheduler.WINDOW_NANOS ); // No interactive requests, so nothing is over target
+            scheduler.onRequestEnd();
+        }
+        assertEquals( 8, scheduler.getGate( Lane.BACKGROUND ).getLimit() );
+        assertEquals( 16, scheduler.getGate( Lane.BULK ).getLimit() );
+    }
+
+    /**
+     * A limit raised by recovery starts requests that were waiting.
+     */
+    @Test
+    void testRecoveryStartsWaiting() {
+
+        LaneScheduler.Gate gate = new LaneScheduler.Gate( 4 );
+        gate.adapt( true );
+        gate.adapt( true );
+        assertEquals( 1, gate.getLimit() );
+
+        List<Integer> started = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ ) {
+            int request = i;
+            gate.submit( () -> started.add( request ) );
+        }
+        assertEquals( 1, started.size() );
+        gate.adapt( false );
+        assertEquals( 2, started.size() );
+    }
+
+    /**
+     * A paged request holds a place only while a page is being fetched, so a consumer that stops asking
+     * for pages does not hold up the lane.
+     */
+    @Test
+    void testPagesReleasePlaceWhileConsumed() {
+
+        LaneScheduler scheduler = new LaneScheduler( new SchedulerConfig().setMaxConcurrency( Lane.BACKGROUND, 1 ) );
+        List<String> received = new ArrayList<>();
+        PageConsumer consumer = new PageConsumer( received );
+        scheduler.schedulePages( Lane.BACKGROUND, Observable.from( Arrays.asList( "a", "b", "c" ) ), () -> 1 ).subscribe( consumer );
+
+        consumer.more( 1 );
+        assertEquals( Arrays.asList( "a" ), received );
+        assertEquals( 0, scheduler.getGate( Lane.BACKGROUND ).getInFlight() );
+
+        // Another request of the lane runs while the first consumer sits on its page
+        assertEquals( "x", scheduler.schedule( Lane.BACKGROUND, Observable.just( "x" ) ).toBlocking().single() );
+
+        consumer.more( 2 );
+        assertEquals( Arrays.asList( "a", "b", "c" ), received );
+        assertEquals( 0, scheduler.getGate( Lane.BACKGROUND ).getInFlight() );
+    }
+
+    /**
+     * Pages are asked for as many at a time as the request fetches at once, and a subscriber that wants
+     * every page asks for them all under one place.
+     */
+    @Test
+    void testPagesFetchedInBatches() {
+
+        LaneScheduler scheduler = new LaneScheduler( new SchedulerConfig().setMaxConcurrency( Lane.BACKGROUND, 1 ) );
+        List<Long> requests = new ArrayList<>();
+        Observable<String> pages = Observable.from( Arrays.asList( "a", "b", "c", "d", "e" ) ).doOnRequest( n -> {
+            if ( n > 0 ) {
+                requests.add( n );
+            }
+        });
+
+        List<String> received = new ArrayList<>();
+        PageConsumer consumer = new PageConsumer( received );
+        scheduler.schedulePages( Lane.BACKGROUND, pages, () -> 2 ).subscribe( consumer );
+        consumer.more( 5 );
+        assertEquals( Arrays.asList( "a", "b", "c", "d", "e" ), received );
+        assertEquals( Arrays.asList( 2L, 2L, 1L ), requests );
+        assertEquals( 0, scheduler.getGate( Lane.BACKGROUND ).getInFlight() );
+
+        requests.clear();
+        assertEquals( 5, scheduler.schedulePages( Lane.BACKGROUND, pages, () -> 2 ).toList().toBlocking().single().size() );
+        assertEquals( Arrays.asList( Long.MAX_VALUE ), requests );
+        assertEquals( 0, scheduler.getGate( Lane.BACKGROUND ).getInFlight() );
+    }
+
+    /**
+     * Lanes without a limit or latency measurement are not wrapped at all.
+     */
+    @Test
+    void testUnlimitedLaneNotWrapped() {
+
+        LaneScheduler scheduler = new LaneScheduler( new SchedulerConfig() );
+        Observable<String> request = Observable.just( "x" );
+        assertSame( request, scheduler.schedule( Lane.INTERACTIVE, request ) );
+        assertSame( request, scheduler.schedulePages( Lane.INTERACTIVE, request, () -> 1 ) );
+    }
+
+    /**
+     * Takes pages only when told to.
+     */
+    private static final class PageConsumer extends Subscriber<String> {
+
+        private final List<String> received;
+
+        PageConsumer( final List<String> received ) {
+            this.received = received;
+        }
+
+        @Override
+        public void onStart() {
+            request( 0 );
+        }
+
+        void more( final long n ) {
+            request( n );
+        }
+
+        @Override
+        public void onNext( final String page ) {
+            received.add( page );
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            throw new AssertionError( e );
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+    }
+}
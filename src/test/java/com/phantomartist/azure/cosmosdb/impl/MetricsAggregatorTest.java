@@ -0,0 +1,117 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.OperationMetrics;
+import com.phantomartist.azure.cosmosdb.OperationStats;
+import com.phantomartist.azure.cosmosdb.OperationType;
+
+/**
+ * Title: MetricsAggregatorTest
+ *
+ * Description: Tests the histogram, operation recorder and metrics aggregator in isolation (no CosmosDB required).
+ */
+class MetricsAggregatorTest {
+
+    /**
+     * Every value falls within the bounds of its bucket, and buckets are within about 3% of their values.
+     */
+    @Test
+    void testHistogramBuckets() {
+
+        for ( long value : new long[] { 0, 1, 31, 32, 33, 63, 64, 100, 1000, 123456789L, Long.MAX_VALUE } ) {
+            int index = Histogram.indexOf( value );
+            assertTrue( Histogram.lowestValueOf( index ) <= value, "Lowest of " + value );
+            assertTrue( Histogram.highestValueOf( index ) >= value, "Highest of " + value );
+            assertTrue( Histogram.highestValueOf( index ) - Histogram.lowestValueOf( index ) <= Math.max( 1, value / 32 ), "Width of " + value );
+        }
+        assertEquals( 100, Histogram.lowestValueOf( Histogram.indexOf( 100 ) ) );
+    }
+
+    /**
+     * Percentiles of a uniform distribution are reported to within the bucket precision.
+     */
+    @Test
+    void testHistogramPercentiles() {
+
+        Histogram histogram = new Histogram();
+        for ( long i = 1; i <= 10000; i++ ) {
+            histogram.record( i );
+        }
+
+        assertEquals( 10000, histogram.getCount() );
+        assertEquals( 10000, histogram.getMax() );
+        assertEquals( 5000, histogram.getValueAtPercentile( 50 ), 5000 * 0.04 );
+        assertEquals( 9900, histogram.getValueAtPercentile( 99 ), 9900 * 0.04 );
+        assertEquals( 10000, histogram.getValueAtPercentile( 100 ) );
+        assertEquals( 0, new Histogram().getValueAtPercentile( 50 ) );
+    }
+
+    /**
+     * The aggregator totals operations by type, and reset starts afresh.
+     */
+    @Test
+    void testAggregator() {
+
+        MetricsAggregator aggregator = new MetricsAggregator();
+        aggregator.onOperation( metrics( OperationType.QUERY, 10, 2.5, 5, true ) );
+        aggregator.onOperation( metrics( OperationType.QUERY, 30, 3.5, 7, false ) );
+        aggregator.onOperation( metrics( OperationType.UPSERT, 5, 10, 1, true ) );
+
+        OperationStats query = aggregator.getStats( OperationType.QUERY );
+        assertEquals( 2, query.getCount() );
+        assertEquals( 1, query.getFailures() );
+        assertEquals( 6.0, query.getRequestCharge(), 0.001 );
+        assertEquals( 12, query.getItems() );
+        assertEquals( 30.0, query.getMaxMillis(), 0.001 );
+        assertEquals( 10.0, query.getP50Millis(), 10 * 0.04 );
+        assertEquals( 1, aggregator.getStats( OperationType.UPSERT ).getCount() );
+        assertEquals( 0, aggregator.getStats( OperationType.DELETE ).getCount() );
+
+        aggregator.reset();
+        assertEquals( 0, aggregator.getStats( OperationType.QUERY ).getCount() );
+    }
+
+    /**
+     * A recorder reports once, and does not report an operation that had no response from the database.
+     */
+    @Test
+    void testRecorder() {
+
+        List<OperationMetrics> reported = new ArrayList<>();
+
+        OperationRecorder recorder = OperationRecorder.start( reported::add, OperationType.QUERY, "coll" );
+        recorder.page( 3, 1.5 );
+        recorder.page( 2, 1.0 );
+        recorder.retries( 1 );
+        recorder.complete();
+        recorder.fail( new RuntimeException() );
+
+        assertEquals( 1, reported.size() );
+        OperationMetrics metrics = reported.get( 0 );
+        assertTrue( metrics.isSuccess() );
+        assertEquals( 5, metrics.getItemCount() );
+        assertEquals( 2, metrics.getPageCount() );
+        assertEquals( 2.5, metrics.getRequestCharge(), 0.001 );
+        assertEquals( 1, metrics.getRetries() );
+
+        OperationRecorder.start( reported::add, OperationType.READ, "coll" ).complete(); // Served from cache
+        assertEquals( 1, reported.size() );
+
+        OperationRecorder.start( reported::add, OperationType.READ, "coll" ).fail( new RuntimeException() );
+        assertEquals( 2, reported.size() );
+        assertFalse( reported.get( 1 ).isSuccess() );
+    }
+
+    private static OperationMetrics metrics( final OperationType type, final long latencyMillis, final double charge, final long items, final boolean isSuccess ) {
+        return new OperationMetrics( type, "coll", TimeUnit.MILLISECONDS.toNanos( latencyMillis ), charge, items, 1, 0, isSuccess ? 200 : 500, isSuccess );
+    }
+}
@@ -0,0 +1,37 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Title: PartitionBreakdownTest
+ *
+ * Description: Tests the per-partition query tally in isolation (no CosmosDB required).
+ */
+class PartitionBreakdownTest {
+
+    /**
+     * Pages are tallied per partition key range, in range id order.
+     */
+    @Test
+    void testTallyByPartition() {
+
+        PartitionBreakdown breakdown = new PartitionBreakdown();
+        breakdown.record( "1", 10, 2.5 );
+        breakdown.record( "0", 5, 1.0 );
+        breakdown.record( "1", 3, 0.5 );
+
+        assertEquals( 
+            "partition [0] pages [1] docs [5] cost [1.0] RU, partition [1] pages [2] docs [13] cost [3.0] RU", 
+            breakdown.toString() );
+    }
+
+    /**
+     * Nothing read, nothing reported.
+     */
+    @Test
+    void testEmpty() {
+        assertEquals( "", new PartitionBreakdown().toString() );
+    }
+}
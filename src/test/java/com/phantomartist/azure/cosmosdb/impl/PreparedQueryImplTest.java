@@ -0,0 +1,48 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.PreparedQuery;
+
+/**
+ * Title: PreparedQueryImplTest
+ *
+ * Description: Tests prepared query templates in isolation (no CosmosDB required).
+ */
+class PreparedQueryImplTest {
+
+    private static final String LINK = "/dbs/mydb/colls/product";
+    private static final String SQL = "SELECT * FROM product WHERE product.id = @id AND product.count > @count";
+
+    /**
+     * Parameter names are checked once, when the template is prepared.
+     */
+    @Test
+    void testValidation() {
+
+        PreparedQuery prepared = new PreparedQueryImpl( null, LINK, SQL, new String[] { "@id", "@count" }, ClientContext.DEFAULT );
+        assertEquals( Arrays.asList( "@id", "@count" ), prepared.getParamNames() );
+
+        assertThrows( IllegalArgumentException.class, () -> new PreparedQueryImpl( null, LINK, SQL, new String[] { "id" }, ClientContext.DEFAULT ) );
+        assertThrows( IllegalArgumentException.class, () -> new PreparedQueryImpl( null, LINK, SQL, new String[] { "@id", "@id" }, ClientContext.DEFAULT ) );
+        assertThrows( IllegalArgumentException.class, () -> new PreparedQueryImpl( null, LINK, SQL, new String[] { "@desc" }, ClientContext.DEFAULT ) );
+    }
+
+    /**
+     * Every bind gets its own query, and the number of values must match the parameters.
+     */
+    @Test
+    void testBind() {
+
+        PreparedQuery prepared = new PreparedQueryImpl( null, LINK, SQL, new String[] { "@id", "@count" }, ClientContext.DEFAULT );
+
+        assertNotSame( prepared.bind( "record_1", 1 ), prepared.bind( "record_1", 1 ) );
+        assertThrows( IllegalArgumentException.class, () -> prepared.bind( "record_1" ) );
+    }
+}
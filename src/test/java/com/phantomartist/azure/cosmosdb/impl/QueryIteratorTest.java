@@ -0,0 +1,130 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.DBTimeoutException;
+import com.phantomartist.azure.cosmosdb.Document;
+
+import rx.Observable;
+
+/**
+ * Title: QueryIteratorTest
+ *
+ * Description: Tests the pull-based query iterator in isolation (no CosmosDB required).
+ */
+class QueryIteratorTest {
+
+    private static final long TIMEOUT_MILLIS = 5000;
+
+    /**
+     * Pages are only pulled from the source once the previous page has been drained.
+     */
+    @Test
+    void testPagesPulledOnDemand() {
+
+        final AtomicInteger emitted = new AtomicInteger();
+        Observable<List<Document>> pages = Observable.from( Arrays.asList(
+                page( "a", "b" ),
+                page( "c" ),
+                page( "d" ) ) )
+            .doOnNext( page -> emitted.incrementAndGet() );
+
+        QueryIterator it = new QueryIterator( pages, TIMEOUT_MILLIS );
+        assertEquals( 0, emitted.get() ); // Nothing fetched until asked
+
+        assertEquals( "a", it.next().getId() );
+        assertEquals( "b", it.next().getId() );
+        assertEquals( 1, emitted.get() );
+
+        assertEquals( "c", it.next().getId() );
+        assertEquals( 2, emitted.get() );
+
+        assertEquals( "d", it.next().getId() );
+        assertFalse( it.hasNext() );
+        assertEquals( 3, emitted.get() );
+    }
+
+    /**
+     * Empty pages are skipped rather than ending the iteration.
+     */
+    @Test
+    void testEmptyPagesSkipped() {
+
+        QueryIterator it = new QueryIterator(
+            Observable.from( Arrays.asList( page(), page( "a" ), page() ) ),
+            TIMEOUT_MILLIS );
+
+        assertTrue( it.hasNext() );
+        assertEquals( "a", it.next().getId() );
+        assertFalse( it.hasNext() );
+    }
+
+    /**
+     * A query failure surfaces from hasNext() once the pages before it have been consumed.
+     */
+    @Test
+    void testErrorPropagated() {
+
+        QueryIterator it = new QueryIterator(
+            Observable.just( page( "a" ) ).concatWith( Observable.error( new IllegalStateException( "boom" ) ) ),
+            TIMEOUT_MILLIS );
+
+        assertEquals( "a", it.next().getId() );
+        RuntimeException e = assertThrows( RuntimeException.class, it::hasNext );
+        assertEquals( "boom", e.getCause().getMessage() );
+    }
+
+    /**
+     * Closing the iterator stops further pages being pulled.
+     */
+    @Test
+    void testCloseStopsPulling() {
+
+        final AtomicInteger emitted = new AtomicInteger();
+        QueryIterator it = new QueryIterator(
+            Observable.from( Arrays.asList( page( "a" ), page( "b" ) ) ).doOnNext( page -> emitted.incrementAndGet() ),
+            TIMEOUT_MILLIS );
+
+        assertEquals( "a", it.next().getId() );
+        it.close();
+
+        assertFalse( it.hasNext() );
+        assertEquals( 1, emitted.get() );
+    }
+
+    /**
+     * The query's deadline passing surfaces as a DBTimeoutException rather than a general failure.
+     */
+    @Test
+    void testDeadlinePropagated() {
+
+        QueryIterator it = new QueryIterator(
+            Observable.just( page( "a" ) ).concatWith( Observable.error( new DBTimeoutException( "query", 50 ) ) ),
+            TIMEOUT_MILLIS );
+
+        assertEquals( "a", it.next().getId() );
+        assertThrows( DBTimeoutException.class, it::hasNext );
+    }
+
+    private static List<Document> page( final String... ids ) {
+
+        if ( ids.length == 0 ) {
+            return Collections.emptyList();
+        }
+        Document[] docs = new Document[ids.length];
+        for ( int i = 0; i < ids.length; i++ ) {
+            docs[i] = DocumentUtil.fromJson( "{\"id\":\"" + ids[i] + "\"}" );
+        }
+        return Arrays.asList( docs );
+    }
+}
@@ -0,0 +1,137 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.phantomartist.azure.cosmosdb.Document;
+
+import rx.Observable;
+
+/**
+ * Title: QueryPublisherTest
+ *
+ * Description: Tests the Reactive Streams query publisher in isolation (no CosmosDB required).
+ */
+class QueryPublisherTest {
+
+    /**
+     * Pages are only fetched when the subscriber's demand cannot be met from the current page.
+     */
+    @Test
+    void testDemandDrivesPageFetches() {
+
+        final AtomicInteger fetched = new AtomicInteger();
+        Observable<List<Document>> pages = Observable.from( Arrays.asList( page( "a", "b" ), page(), page( "c" ) ) )
+            .doOnNext( page -> fetched.incrementAndGet() );
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new QueryPublisher( pages ).subscribe( subscriber );
+        assertEquals( 0, fetched.get() ); // Nothing until requested
+
+        subscriber.subscription.request( 1 );
+        assertEquals( Arrays.asList( "a" ), subscriber.ids );
+        assertEquals( 1, fetched.get() );
+
+        subscriber.subscription.request( 1 );
+        assertEquals( Arrays.asList( "a", "b" ), subscriber.ids );
+        assertEquals( 1, fetched.get() ); // Served from the buffered page
+
+        subscriber.subscription.request( 10 );
+        assertEquals( Arrays.asList( "a", "b", "c" ), subscriber.ids );
+        assertEquals( 3, fetched.get() );
+        assertTrue( subscriber.isComplete );
+    }
+
+    /**
+     * Cancelling stops any more pages being fetched.
+     */
+    @Test
+    void testCancelStopsFetching() {
+
+        final AtomicInteger fetched = new AtomicInteger();
+        Observable<List<Document>> pages = Observable.from( Arrays.asList( page( "a" ), page( "b" ) ) )
+            .doOnNext( page -> fetched.incrementAndGet() );
+
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        new QueryPublisher( pages ).subscribe( subscriber );
+        subscriber.subscription.request( 1 );
+        subscriber.subscription.cancel();
+        subscriber.subscription.request( 1 );
+
+        assertEquals( Arrays.asList( "a" ), subscriber.ids );
+        assertEquals( 1, fetched.get() );
+        assertFalse( subscriber.isComplete );
+    }
+
+    /**
+     * A publisher adapted to an Observable keeps its backpressure.
+     */
+    @Test
+    void testAdaptedPublisherIsBackpressured() {
+
+        final AtomicInteger fetched = new AtomicInteger();
+        Observable<List<Document>> pages = Observable.from( Arrays.asList( page( "a" ), page( "b" ), page( "c" ) ) )
+            .doOnNext( page -> fetched.incrementAndGet() );
+
+        Document first = PublisherAdapter.toObservable( new QueryPublisher( pages ) )
+            .take( 1 )
+            .toBlocking()
+            .single();
+
+        assertEquals( "a", first.getId() );
+        assertEquals( 1, fetched.get() );
+    }
+
+    private static List<Document> page( final String... ids ) {
+
+        if ( ids.length == 0 ) {
+            return Collections.emptyList();
+        }
+        Document[] docs = new Document[ids.length];
+        for ( int i = 0; i < ids.length; i++ ) {
+            docs[i] = DocumentUtil.fromJson( "{\"id\":\"" + ids[i] + "\"}" );
+        }
+        return Arrays.asList( docs );
+    }
+
+    /**
+     * Records what it is given, and requests nothing by itself.
+     */
+    private static final class RecordingSubscriber implements Subscriber<Document> {
+
+        private final List<String> ids = new ArrayList<>();
+        private Subscription subscription;
+        private boolean isComplete;
+
+        @Override
+        public void onSubscribe( final Subscription s ) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext( final Document doc ) {
+            ids.add( doc.getId() );
+        }
+
+        @Override
+        public void onError( final Throwable e ) {
+            throw new AssertionError( e );
+        }
+
+        @Override
+        public void onComplete() {
+            isComplete = true;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.OperationMetrics;
+import com.phantomartist.azure.cosmosdb.OperationType;
+import com.phantomartist.azure.cosmosdb.QueryStats;
+
+/**
+ * Title: QueryStatsRegistryTest
+ *
+ * Description: Tests query fingerprinting and the per-shape statistics in isolation (no CosmosDB required).
+ */
+class QueryStatsRegistryTest {
+
+    /**
+     * Queries differing only in their values and layout share a fingerprint.
+     */
+    @Test
+    void testFingerprint() {
+
+        assertEquals( "SELECT * FROM c WHERE c.id = ? AND c.price > ?",
+            SqlUtil.fingerprint( " SELECT *  FROM c\n WHERE c.id = 'a b'  AND c.price > 10.5 " ) );
+        assertEquals( SqlUtil.fingerprint( "SELECT * FROM c WHERE c.name = \"it's\"" ), SqlUtil.fingerprint( "SELECT * FROM c WHERE c.name = 'x'" ) );
+        assertEquals( "SELECT * FROM c WHERE c.qty = -? OR c.ratio < ?", SqlUtil.fingerprint( "SELECT * FROM c WHERE c.qty = -3 OR c.ratio < 1.5e-3" ) );
+        assertEquals( "SELECT TOP ? * FROM c WHERE c.id = @id", SqlUtil.fingerprint( "SELECT TOP 10 * FROM c WHERE c.id = @id" ) );
+        assertEquals( "SELECT * FROM c WHERE c.id IN (?)", SqlUtil.fingerprint( "SELECT * FROM c WHERE c.id IN ('a', 'b', 'c')" ) );
+        assertEquals( "SELECT * FROM c WHERE c.id IN (?)", SqlUtil.fingerprint( "SELECT * FROM c WHERE c.id in (@id0,@id1)" ) );
+        assertEquals( "SELECT c.field2, c.v1 FROM c", SqlUtil.fingerprint( "SELECT c.field2, c.v1 FROM c" ) );
+    }
+
+    /**
+     * Executions are totalled by fingerprint and ranked worst first.
+     */
+    @Test
+    void testTopQueries() {
+
+        QueryStatsRegistry registry = new QueryStatsRegistry( 10 );
+        registry.record( "cheap", false, metrics( 10, 1.0, 1, true ) );
+        registry.record( "cheap", false, metrics( 10, 1.0, 1, true ) );
+        registry.record( "cheap", false, metrics( 10, 1.0, 1, true ) );
+        registry.record( "costly", true, metrics( 50, 100.0, 20, true ) );
+        registry.record( "costly", false, metrics( 150, 50.0, 0, false ) );
+
+        List<QueryStats> top = registry.getTop( 1, QueryStats.Order.REQUEST_CHARGE );
+        assertEquals( 1, top.size() );
+        QueryStats costly = top.get( 0 );
+        assertEquals( "costly", costly.getFingerprint() );
+        assertEquals( 2, costly.getCalls() );
+        assertEquals( 1, costly.getFailures() );
+        assertEquals( 1, costly.getCrossPartitionCalls() );
+        assertEquals( 1, costly.getSinglePartitionCalls() );
+        assertEquals( 150.0, costly.getRequestCharge(), 0.001 );
+        assertEquals( 75.0, costly.getMeanRequestCharge(), 0.001 );
+        assertEquals( 100.0, costly.getMeanLatencyMillis(), 0.001 );
+        assertEquals( 20, costly.getDocuments() );
+
+        assertEquals( "cheap", registry.getTop( 5, QueryStats.Order.CALLS ).get( 0 ).getFingerprint() );
+        assertEquals( 2, registry.getTop( 5, QueryStats.Order.P99_LATENCY ).size() );
+
+        registry.reset();
+        assertTrue( registry.getTop( 5, QueryStats.Order.CALLS ).isEmpty() );
+    }
+
+    /**
+     * Shapes beyond the limit are counted together, and the listener passes metrics on.
+     */
+    @Test
+    void testLimitAndListener() {
+
+        List<OperationMetrics> passedOn = new ArrayList<>();
+        QueryStatsRegistry registry = new QueryStatsRegistry( 1 );
+        registry.listener( "first", false, passedOn::add ).onOperation( metrics( 1, 1.0, 1, true ) );
+        registry.listener( "second", false, null ).onOperation( metrics( 1, 1.0, 1, true ) );
+        registry.listener( "third", false, null ).onOperation( metrics( 1, 1.0, 1, true ) );
+
+        List<QueryStats> top = registry.getTop( 5, QueryStats.Order.CALLS );
+        assertEquals( 2, top.size() );
+        assertEquals( QueryStatsRegistry.OTHER, top.get( 0 ).getFingerprint() );
+        assertEquals( 2, top.get( 0 ).getCalls() );
+        assertEquals( 1, passedOn.size() );
+    }
+
+    private static OperationMetrics metrics( final long latencyMillis, final double charge, final long documents, final boolean isSuccess ) {
+        return new OperationMetrics( OperationType.QUERY, "coll", TimeUnit.MILLISECONDS.toNanos( latencyMillis ), charge, documents, 1, 0, isSuccess ? 200 : 500, isSuccess );
+    }
+}
@@ -0,0 +1,153 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Lane;
+import com.phantomartist.azure.cosmosdb.RateLimitConfig;
+import com.phantomartist.azure.cosmosdb.SchedulerConfig;
+
+import rx.Observable;
+
+/**
+ * Title: RateLimiterTest
+ *
+ * Description: Tests the RU token bucket and rate limiter in isolation, against a manual clock (no CosmosDB required).
+ */
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos( 1 );
+
+    /**
+     * A full bucket pays at once, then later operations wait for the debt to be paid off.
+     */
+    @Test
+    void testReserve() {
+
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket( 100, SECOND, false, now::get );
+
+        assertEquals( 0, bucket.reserve( 50 ) );
+        assertEquals( 0, bucket.reserve( 40 ) );
+        assertEquals( SECOND / 2, bucket.reserve( 60 ), 1000 ); // 150 RU in debt at 100 RU/s, less a 1s burst
+
+        now.addAndGet( 2 * SECOND ); // Refilled
+        assertEquals( 0, bucket.reserve( 1000 ) ); // A full bucket pays for anything
+        assertEquals( 10 * SECOND, bucket.reserve( 100 ), 1000 );
+    }
+
+    /**
+     * Bulk operations leave the headroom for interactive ones, and take nothing while waiting.
+     */
+    @Test
+    void testTryAcquireLeavesHeadroom() {
+
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket( 100, SECOND, false, now::get );
+
+        assertEquals( 0, bucket.tryAcquire( 50, 0.5 ) );
+        assertEquals( SECOND / 10, bucket.tryAcquire( 10, 0.5 ), 1000 ); // Would eat into the headroom
+        assertEquals( 0, bucket.reserve( 40 ) ); // Interactive operations still go straight through
+
+        now.addAndGet( SECOND / 2 );
+        assertEquals( 0, bucket.tryAcquire( 10, 0.5 ) );
+    }
+
+    /**
+     * Actual charges replace the estimate, but never leave the bucket fuller than full.
+     */
+    @Test
+    void testAdjust() {
+
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket( 100, SECOND, false, now::get );
+
+        bucket.reserve( 100 );
+        bucket.adjust( 50 ); // Cost more than expected
+        assertEquals( SECOND / 2, bucket.reserve( 0 ), 1000 );
+
+        bucket.adjust( -1000 ); // Refund of more than was taken
+        bucket.reserve( 100 );
+        assertEquals( 0, bucket.reserve( 0 ) ); // The refund did not carry over as credit
+    }
+
+    /**
+     * Throttling halves the rate, which then recovers over 30 seconds.
+     */
+    @Test
+    void testAdaptive() {
+
+        AtomicLong now = new AtomicLong();
+        TokenBucket bucket = new TokenBucket( 100, SECOND, true, now::get );
+
+        bucket.onThrottled();
+        assertEquals( 50, bucket.getRequestUnitsPerSecond(), 0.001 );
+        bucket.onThrottled(); // In the same burst, so ignored
+        assertEquals( 50, bucket.getRequestUnitsPerSecond(), 0.001 );
+
+        now.addAndGet( 15 * SECOND / 2 );
+        assertEquals( 75, bucket.getRequestUnitsPerSecond(), 0.001 );
+        now.addAndGet( 60 * SECOND );
+        assertEquals( 100, bucket.getRequestUnitsPerSecond(), 0.001 );
+
+        TokenBucket fixed = new TokenBucket( 100, SECOND, false, now::get );
+        fixed.onThrottled();
+        assertEquals( 100, fixed.getRequestUnitsPerSecond(), 0.001 );
+    }
+
+    /**
+     * The cost of an operation is learned as a moving average.
+     */
+    @Test
+    void testLearn() {
+
+        TokenBucket bucket = new TokenBucket( 100, SECOND, false );
+
+        assertEquals( TokenBucket.DEFAULT_ESTIMATE, bucket.getEstimate( "Upsert" ), 0.001 );
+        bucket.learn( "Upsert", 10 );
+        assertEquals( 10, bucket.getEstimate( "Upsert" ), 0.001 );
+        bucket.learn( "Upsert", 20 );
+        assertEquals( 12, bucket.getEstimate( "Upsert" ), 0.001 );
+    }
+
+    /**
+     * Collections without a budget are not paced, and a collection's own budget overrides the default.
+     */
+    @Test
+    void testBudgets() {
+
+        RateLimiter unlimited = new RateLimiter( new RateLimitConfig().setRequestUnitsPerSecond( "/dbs/db/colls/a", 400 ) );
+        Observable<String> request = Observable.just( "x" );
+        assertSame( request, unlimited.pace( "/dbs/db/colls/b", "Read", Lane.INTERACTIVE, request, s -> 1 ) );
+        assertNull( unlimited.getBucket( "/dbs/db/colls/b" ) );
+        assertEquals( 400, unlimited.getBucket( "/dbs/db/colls/a" ).getRequestUnitsPerSecond(), 0.001 );
+
+        RateLimiter limited = new RateLimiter( new RateLimitConfig().setRequestUnitsPerSecond( 1000 ) );
+        assertNotNull( limited.getBucket( "/dbs/db/colls/b" ) );
+        assertSame( limited.getBucket( "/dbs/db/colls/b" ), limited.getBucket( "/dbs/db/colls/b" ) );
+    }
+
+    /**
+     * A lane with a share of the budget has a bucket of its own, filled at its share of the collection's rate.
+     */
+    @Test
+    void testLaneShares() {
+
+        RateLimiter limiter = new RateLimiter( new RateLimitConfig().setRequestUnitsPerSecond( 1000 ),
+            new SchedulerConfig().setRequestUnitShare( Lane.BACKGROUND, 0.2 ) );
+        TokenBucket bucket = limiter.getBucket( "/dbs/db/colls/a" );
+
+        assertNull( limiter.getLaneBucket( "/dbs/db/colls/a", Lane.INTERACTIVE, bucket ) );
+        assertNull( limiter.getLaneBucket( "/dbs/db/colls/a", Lane.BULK, bucket ) );
+        TokenBucket background = limiter.getLaneBucket( "/dbs/db/colls/a", Lane.BACKGROUND, bucket );
+        assertEquals( 200, background.getRequestUnitsPerSecond(), 0.001 );
+        assertSame( background, limiter.getLaneBucket( "/dbs/db/colls/a", Lane.BACKGROUND, bucket ) );
+    }
+}
@@ -0,0 +1,139 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.phantomartist.azure.cosmosdb.Document;
+import com.phantomartist.azure.cosmosdb.DocumentMapper;
+import com.phantomartist.azure.cosmosdb.ResultSet;
+
+/**
+ * Title: ResultSetImplTest
+ *
+ * Description: Tests the lazy result set views in isolation (no CosmosDB required).
+ */
+class ResultSetImplTest {
+
+    /**
+     * Documents are only converted when an element is requested, and only once per view.
+     */
+    @Test
+    void testLazyMemoisedConversion() {
+
+        CountingDocument a = new CountingDocument( "a" );
+        CountingDocument b = new CountingDocument( "b" );
+        ResultSet<String> rs = new ResultSetImpl<>( Arrays.asList( Arrays.asList( a, b ) ), String.class );
+
+        assertEquals( 2, rs.getResults().size() );
+        assertEquals( 0, a.conversions.get() + b.conversions.get() );
+
+        String first = rs.getResults().get( 0 );
+        assertSame( first, rs.getSingleResult() );
+        assertEquals( 1, a.conversions.get() );
+        assertEquals( 0, b.conversions.get() );
+
+        assertEquals( "{\"id\":\"b\"}", rs.getResultsAsJson().get( 1 ) );
+        rs.getResultsAsJson().get( 1 );
+        assertEquals( 1, b.conversions.get() );
+    }
+
+    /**
+     * Elements are indexed across page boundaries, including empty pages.
+     */
+    @Test
+    void testIndexAcrossPages() {
+
+        List<List<Document>> pages = new ArrayList<>();
+        pages.add( Collections.emptyList() );
+        pages.add( Arrays.asList( new CountingDocument( "a" ), new CountingDocument( "b" ) ) );
+        pages.add( Collections.emptyList() );
+        pages.add( Arrays.asList( new CountingDocument( "c" ) ) );
+
+        ResultSet<String> rs = new ResultSetImpl<>( pages, String.class );
+
+        assertEquals( Arrays.asList( "a", "b", "c" ), rs.getResults() );
+    }
+
+    /**
+     * Single results are null when nothing matched.
+     */
+    @Test
+    void testEmpty() {
+
+        ResultSet<String> rs = new ResultSetImpl<>( Collections.emptyList(), String.class );
+
+        assertEquals( 0, rs.getResults().size() );
+        assertNull( rs.getSingleResult() );
+        assertNull( rs.getSingleResultAsJson() );
+        assertNull( rs.getSingleResultAsMap() );
+    }
+
+    /**
+     * Document that counts its conversions. toObject returns the id.
+     */
+    private static final class CountingDocument implements Document {
+
+        private final String id;
+        private final AtomicInteger conversions = new AtomicInteger();
+
+        CountingDocument( final String id ) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public String getSelfLink() {
+            return null;
+        }
+
+        @Override
+        public String getETag() {
+            return null;
+        }
+
+        @Override
+        public String getString( final String path ) {
+            return null;
+        }
+
+        @Override
+        public Long getLong( final String path ) {
+            return null;
+        }
+
+        @Override
+        public Double getDouble( final String path ) {
+            return null;
+        }
+
+        @Override
+        public String toJson() {
+            conversions.incrementAndGet();
+            return "{\"id\":\"" + id + "\"}";
+        }
+
+        @Override
+        public <T> T toObject( final Class<T> c ) {
+            conversions.incrementAndGet();
+            return c.cast( new String( id ) ); // New instance per call
+        }
+
+        @Override
+        public <T> T toObject( final DocumentMapper<T> mapper ) {
+            return mapper.map( this );
+        }
+    }
+}
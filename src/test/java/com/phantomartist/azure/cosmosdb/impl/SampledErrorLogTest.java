@@ -0,0 +1,130 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+
+import com.microsoft.azure.cosmosdb.rx.AsyncDocumentClient;
+
+import rx.Observable;
+
+/**
+ * Title: SampledErrorLogTest
+ *
+ * Description: Tests the rate limiting of error logging, and that suppressed errors and disabled
+ * debug logging never format their arguments (no CosmosDB required).
+ */
+class SampledErrorLogTest {
+
+    /**
+     * Only a fixed number of errors are logged per interval, and the rest are counted.
+     */
+    @Test
+    void testSampling() {
+
+        AtomicLong now = new AtomicLong();
+        SampledErrorLog errors = new SampledErrorLog( NOPLogger.NOP_LOGGER, 2, 1000, now::get );
+
+        assertTrue( errors.isLogged() );
+        assertTrue( errors.isLogged() );
+        assertFalse( errors.isLogged() );
+        assertFalse( errors.isLogged() );
+        assertEquals( 2, errors.getSuppressed() );
+
+        now.set( 999 );
+        assertFalse( errors.isLogged() );
+
+        now.set( 1000 ); // A new interval
+        assertTrue( errors.isLogged() );
+        assertEquals( 0, errors.getSuppressed() ); // Reported with the error just logged
+        assertTrue( errors.isLogged() );
+        assertFalse( errors.isLogged() );
+    }
+
+    /**
+     * Benchmark: with DEBUG off, upserts that fail once the interval's errors have been logged never format
+     * the document, so each costs the same however large the document is.
+     */
+    @Test
+    void testNoFormattingWhenNotLogged() {
+
+        assumeFalse( LoggerFactory.getLogger( StatementImpl.class ).isDebugEnabled() );
+        com.sun.management.ThreadMXBean threads = threadMXBean();
+        assumeTrue( threads != null && threads.isThreadAllocatedMemoryEnabled() );
+
+        StatementImpl statement = new StatementImpl( failingClient(), "/dbs/mydb/colls/product" );
+        LargeDoc doc = new LargeDoc();
+        AtomicLong failed = new AtomicLong();
+        for ( int i = 0; i < SampledErrorLog.DEFAULT_MAX_PER_INTERVAL; i++ ) {
+            statement.upsert( doc, e -> failed.incrementAndGet() ); // Uses up the interval's budget
+        }
+        doc.formatted.set( 0 );
+
+        int calls = 10_000;
+        long before = threads.getThreadAllocatedBytes( Thread.currentThread().getId() );
+        for ( int i = 0; i < calls; i++ ) {
+            statement.upsert( doc, e -> failed.incrementAndGet() );
+        }
+        long perCall = ( threads.getThreadAllocatedBytes( Thread.currentThread().getId() ) - before ) / calls;
+
+        assertEquals( SampledErrorLog.DEFAULT_MAX_PER_INTERVAL + calls, failed.get() );
+        assertEquals( 0, doc.formatted.get() );
+        assertTrue( perCall < LargeDoc.SIZE / 4, "Allocated [" + perCall + "] bytes per call" ); // Far less than one copy of the doc
+    }
+
+    /**
+     * @return AsyncDocumentClient a client whose upserts all fail at once
+     */
+    private static AsyncDocumentClient failingClient() {
+
+        final RuntimeException unavailable = new IllegalStateException( "Unavailable" );
+        return (AsyncDocumentClient) Proxy.newProxyInstance(
+            AsyncDocumentClient.class.getClassLoader(),
+            new Class<?>[] { AsyncDocumentClient.class },
+            ( proxy, method, args ) -> {
+                if ( !method.getName().equals( "upsertDocument" ) ) {
+                    throw new UnsupportedOperationException( method.getName() );
+                }
+                return Observable.error( unavailable );
+            });
+    }
+
+    /**
+     * A document that counts how often it is formatted, and is expensive to format.
+     */
+    private static final class LargeDoc {
+
+        private static final int SIZE = 256 * 1024;
+
+        private final char[] body = new char[SIZE];
+        private final AtomicInteger formatted = new AtomicInteger();
+
+        LargeDoc() {
+            Arrays.fill( body, 'x' );
+        }
+
+        @Override
+        public String toString() {
+            formatted.incrementAndGet();
+            return new String( body );
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean threadMXBean() {
+
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        return threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+    }
+}
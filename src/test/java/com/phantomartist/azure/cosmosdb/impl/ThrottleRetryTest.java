@@ -0,0 +1,66 @@
+package com.phantomartist.azure.cosmosdb.impl;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.junit.jupiter.api.Test;
+
+import com.microsoft.azure.cosmosdb.DocumentClientException;
+import com.phantomartist.azure.cosmosdb.ClientOptions;
+import com.phantomartist.azure.cosmosdb.RateLimitConfig;
+
+/**
+ * Title: ThrottleRetryTest
+ *
+ * Description: Tests when throttled requests are retried by this library (no CosmosDB required).
+ */
+class ThrottleRetryTest {
+
+    /**
+     * Throttled requests are retried after the suggested interval, within the attempts and wait allowed.
+     */
+    @Test
+    void testRetryDelay() {
+
+        ThrottleRetry retry = new ThrottleRetry( 3, 250 );
+        DocumentClientException throttled = new DocumentClientException( ExceptionUtil.THROTTLED );
+
+        assertEquals( ThrottleRetry.DEFAULT_RETRY_AFTER_MILLIS, retry.getRetryDelayMillis( throttled, 1, 0 ) );
+        assertEquals( ThrottleRetry.DEFAULT_RETRY_AFTER_MILLIS, retry.getRetryDelayMillis( new RuntimeException( throttled ), 2, 100 ) );
+        assertEquals( -1, retry.getRetryDelayMillis( throttled, 3, 200 ) ); // Would wait too long
+        assertEquals( -1, retry.getRetryDelayMillis( throttled, 4, 0 ) ); // Too many attempts
+        assertEquals( -1, retry.getRetryDelayMillis( new DocumentClientException( ExceptionUtil.NOT_FOUND ), 1, 0 ) );
+        assertEquals( -1, retry.getRetryDelayMillis( new IllegalStateException(), 1, 0 ) );
+    }
+
+    /**
+     * The Azure client retries throttled requests unless the library is asked to.
+     */
+    @Test
+    void testEnabledByOptions() {
+
+        assertEquals( null, new ClientContext( new ClientOptions() ).getThrottleRetry() );
+
+        ThrottleRetry retry = new ClientContext( new ClientOptions()
+            .setClientSideThrottleRetries( true )
+            .setMaxRetryAttemptsOnThrottledRequests( 2 )
+            .setMaxRetryWaitTimeInSeconds( 1 ) ).getThrottleRetry();
+        DocumentClientException throttled = new DocumentClientException( ExceptionUtil.THROTTLED );
+        assertEquals( ThrottleRetry.DEFAULT_RETRY_AFTER_MILLIS, retry.getRetryDelayMillis( throttled, 2, 900 ) );
+        assertEquals( -1, retry.getRetryDelayMillis( throttled, 2, 901 ) );
+        assertEquals( -1, retry.getRetryDelayMillis( throttled, 3, 0 ) );
+    }
+
+    /**
+     * An adaptive rate limit sees every throttle, so throttled requests are retried by the library.
+     */
+    @Test
+    void testEnabledByAdaptiveRateLimit() {
+
+        assertNotNull( new ClientContext( new ClientOptions()
+            .setRateLimit( new RateLimitConfig().setRequestUnitsPerSecond( 100 ) ) ).getThrottleRetry() );
+        assertNull( new ClientContext( new ClientOptions()
+            .setRateLimit( new RateLimitConfig().setRequestUnitsPerSecond( 100 ).setAdaptive( false ) ) ).getThrottleRetry() );
+    }
+}